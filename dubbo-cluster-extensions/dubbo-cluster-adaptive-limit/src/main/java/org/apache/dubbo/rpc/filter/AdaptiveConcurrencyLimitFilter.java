@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.filter;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.common.extension.Activate;
+import org.apache.dubbo.rpc.Filter;
+import org.apache.dubbo.rpc.Invocation;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcException;
+import org.apache.dubbo.rpc.RpcStatus;
+import org.apache.dubbo.rpc.support.RpcUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.dubbo.common.constants.CommonConstants.CONSUMER;
+import static org.apache.dubbo.rpc.Constants.ACTIVES_KEY;
+
+/**
+ * <p>
+ * AdaptiveConcurrencyLimitFilter limits the concurrent calls of a consumer to each provider method, like
+ * {@link ActiveLimitFilter}, but the limit is not static: it is derived from the observed round trip times by
+ * {@link Gradient2Limit}. When a provider slows down (GC, brownout) its limit drops and the excess calls are
+ * rejected, or queued for up to `adaptive.limit.queue.timeout` milliseconds, before they reach it.
+ * <p>
+ * The in-flight calls are counted with the same {@link RpcStatus} active counters the load balances read.
+ * It does nothing for methods with a static `actives` limit, which is then enforced by {@link ActiveLimitFilter}.
+ */
+@Activate(group = CONSUMER, value = AdaptiveConcurrencyLimitFilter.ADAPTIVE_LIMIT_KEY)
+public class AdaptiveConcurrencyLimitFilter implements Filter, Filter.Listener {
+
+    public static final String ADAPTIVE_LIMIT_KEY = "adaptive.limit";
+
+    public static final String ADAPTIVE_LIMIT_INITIAL = "adaptive.limit.initial";
+
+    public static final String ADAPTIVE_LIMIT_MIN = "adaptive.limit.min";
+
+    public static final String ADAPTIVE_LIMIT_MAX = "adaptive.limit.max";
+
+    public static final String ADAPTIVE_LIMIT_QUEUE_TIMEOUT = "adaptive.limit.queue.timeout";
+
+    private static final String ADAPTIVE_LIMIT_FILTER_LIMIT = "adaptive_limit_filter_limit";
+
+    private static final String ADAPTIVE_LIMIT_FILTER_START_TIME = "adaptive_limit_filter_start_time";
+
+    @Override
+    public Result invoke(Invoker<?> invoker, Invocation invocation) throws RpcException {
+        // failover retries reuse the invocation, only the attempt counted here may end the count
+        invocation.getAttributes().remove(ADAPTIVE_LIMIT_FILTER_LIMIT);
+        invocation.getAttributes().remove(ADAPTIVE_LIMIT_FILTER_START_TIME);
+
+        URL url = invoker.getUrl();
+        String methodName = RpcUtils.getMethodName(invocation);
+        if (!url.getMethodParameter(methodName, ADAPTIVE_LIMIT_KEY, false)
+            || url.getMethodParameter(methodName, ACTIVES_KEY, 0) > 0) {
+            return invoker.invoke(invocation);
+        }
+
+        RpcStatus rpcStatus = RpcStatus.getStatus(url, methodName);
+        Gradient2Limit limit = getLimit(rpcStatus, url, methodName);
+        if (!RpcStatus.beginCount(url, methodName, limit.getLimit())) {
+            long timeout = url.getMethodParameter(methodName, ADAPTIVE_LIMIT_QUEUE_TIMEOUT, 0);
+            long start = System.currentTimeMillis();
+            long remain = timeout;
+            synchronized (rpcStatus) {
+                while (!RpcStatus.beginCount(url, methodName, limit.getLimit())) {
+                    if (remain <= 0) {
+                        throw new RpcException(RpcException.LIMIT_EXCEEDED_EXCEPTION,
+                            "Adaptive concurrency limit exceeded in client-side for service:  "
+                                + invoker.getInterface().getName() + ", method: " + methodName
+                                + ", waited: " + (System.currentTimeMillis() - start) + ". concurrent invokes: "
+                                + rpcStatus.getActive() + ". current concurrent invoke limit: " + limit.getLimit());
+                    }
+                    try {
+                        rpcStatus.wait(remain);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                    remain = timeout - (System.currentTimeMillis() - start);
+                }
+            }
+        }
+
+        invocation.put(ADAPTIVE_LIMIT_FILTER_LIMIT, limit);
+        invocation.put(ADAPTIVE_LIMIT_FILTER_START_TIME, System.nanoTime());
+        return invoker.invoke(invocation);
+    }
+
+    @Override
+    public void onResponse(Result appResponse, Invoker<?> invoker, Invocation invocation) {
+        onFinish(invoker, invocation, true);
+    }
+
+    @Override
+    public void onError(Throwable t, Invoker<?> invoker, Invocation invocation) {
+        if (t instanceof RpcException && ((RpcException) t).isLimitExceed()) {
+            // rejected before the count began
+            return;
+        }
+        onFinish(invoker, invocation, false);
+    }
+
+    private void onFinish(Invoker<?> invoker, Invocation invocation, boolean succeeded) {
+        Object limit = invocation.get(ADAPTIVE_LIMIT_FILTER_LIMIT);
+        if (!(limit instanceof Gradient2Limit)) {
+            // not counted by this filter
+            return;
+        }
+        URL url = invoker.getUrl();
+        String methodName = RpcUtils.getMethodName(invocation);
+        RpcStatus rpcStatus = RpcStatus.getStatus(url, methodName);
+        long rtt = System.nanoTime() - (Long) invocation.get(ADAPTIVE_LIMIT_FILTER_START_TIME);
+        ((Gradient2Limit) limit).onSample(rtt, rpcStatus.getActive());
+        RpcStatus.endCount(url, methodName, TimeUnit.NANOSECONDS.toMillis(rtt), succeeded);
+
+        if (url.getMethodParameter(methodName, ADAPTIVE_LIMIT_QUEUE_TIMEOUT, 0) > 0) {
+            synchronized (rpcStatus) {
+                rpcStatus.notifyAll();
+            }
+        }
+    }
+
+    private Gradient2Limit getLimit(RpcStatus rpcStatus, URL url, String methodName) {
+        Object limit = rpcStatus.get(ADAPTIVE_LIMIT_FILTER_LIMIT);
+        if (limit == null) {
+            synchronized (rpcStatus) {
+                limit = rpcStatus.get(ADAPTIVE_LIMIT_FILTER_LIMIT);
+                if (limit == null) {
+                    limit = new Gradient2Limit(
+                        url.getMethodParameter(methodName, ADAPTIVE_LIMIT_INITIAL, 20),
+                        url.getMethodParameter(methodName, ADAPTIVE_LIMIT_MIN, 4),
+                        url.getMethodParameter(methodName, ADAPTIVE_LIMIT_MAX, 200));
+                    rpcStatus.set(ADAPTIVE_LIMIT_FILTER_LIMIT, limit);
+                }
+            }
+        }
+        return (Gradient2Limit) limit;
+    }
+}
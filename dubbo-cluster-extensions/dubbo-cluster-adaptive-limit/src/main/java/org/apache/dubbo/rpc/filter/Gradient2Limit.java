@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.filter;
+
+/**
+ * <p>
+ * Concurrency limit derived from the gradient between the long term and the current round trip time,
+ * following Netflix's Gradient2 limit.
+ * While the current RTT stays close to the long term RTT the limit grows by a queue allowance of sqrt(limit),
+ * when the current RTT rises above it (the provider starts queueing) the limit shrinks proportionally, by at most half
+ * per sample. The long term RTT is an exponential average over the last ~600 samples, it is pulled down when it
+ * drifts far above the current RTT so that a recovered provider gets its capacity back quickly.
+ * <p>
+ * Inspiration drawn from:
+ * https://github.com/Netflix/concurrency-limits/blob/master/concurrency-limits-core/src/main/java/com/netflix
+ * /concurrency/limits/limit/Gradient2Limit.java
+ */
+public class Gradient2Limit {
+
+    // how much the current RTT may exceed the long term RTT before the limit is reduced
+    private static final double TOLERANCE = 1.5;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final int LONG_WINDOW = 600;
+
+    private static final int WARMUP_SAMPLES = 10;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private double estimatedLimit;
+
+    private double longRtt;
+
+    private int samples;
+
+    private volatile int limit;
+
+    public Gradient2Limit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.estimatedLimit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param rtt      round trip time of a finished call, in any unit as long as it is always the same
+     * @param inflight calls in flight when this one finished, itself included
+     */
+    public synchronized void onSample(long rtt, int inflight) {
+        if (rtt <= 0) {
+            rtt = 1;
+        }
+        double shortRtt = rtt;
+        if (samples < WARMUP_SAMPLES) {
+            samples++;
+            longRtt += (shortRtt - longRtt) / samples;
+        } else {
+            longRtt += (shortRtt - longRtt) * 2 / (LONG_WINDOW + 1);
+        }
+
+        // protect against the long term RTT drifting up, e.g. after a brownout
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        // the caller does not use the limit, no evidence that it can grow
+        if (inflight < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.filter;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.rpc.AppResponse;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcException;
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.apache.dubbo.rpc.RpcStatus;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class AdaptiveConcurrencyLimitFilterTest {
+
+    private final AdaptiveConcurrencyLimitFilter filter = new AdaptiveConcurrencyLimitFilter();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRejectAboveLimit() {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/org.apache.dubbo.DemoService?adaptive.limit=true"
+            + "&adaptive.limit.initial=2&adaptive.limit.min=1");
+        Invoker<Object> invoker = mock(Invoker.class);
+        given(invoker.getUrl()).willReturn(url);
+        given(invoker.getInterface()).willReturn(Object.class);
+        given(invoker.invoke(any())).willReturn(new AppResponse());
+
+        RpcInvocation first = new RpcInvocation();
+        first.setMethodName("sayHello");
+        RpcInvocation second = new RpcInvocation();
+        second.setMethodName("sayHello");
+        RpcInvocation third = new RpcInvocation();
+        third.setMethodName("sayHello");
+
+        Result result = filter.invoke(invoker, first);
+        filter.invoke(invoker, second);
+        RpcStatus rpcStatus = RpcStatus.getStatus(url, "sayHello");
+        Assertions.assertEquals(2, rpcStatus.getActive());
+
+        RpcException exception = Assertions.assertThrows(RpcException.class, () -> filter.invoke(invoker, third));
+        Assertions.assertTrue(exception.isLimitExceed());
+        filter.onError(exception, invoker, third);
+        Assertions.assertEquals(2, rpcStatus.getActive());
+
+        filter.onResponse(result, invoker, first);
+        filter.onError(new RpcException(), invoker, second);
+        Assertions.assertEquals(0, rpcStatus.getActive());
+        Assertions.assertEquals(1, rpcStatus.getSucceeded());
+        Assertions.assertEquals(1, rpcStatus.getFailed());
+
+        filter.invoke(invoker, third);
+        filter.onResponse(result, invoker, third);
+        Assertions.assertEquals(0, rpcStatus.getActive());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailoverReusesInvocation() {
+        URL limitedUrl = URL.valueOf("dubbo://127.0.0.3:20880/org.apache.dubbo.DemoService?adaptive.limit=true"
+            + "&adaptive.limit.initial=1&adaptive.limit.min=1");
+        Invoker<Object> limited = mock(Invoker.class);
+        given(limited.getUrl()).willReturn(limitedUrl);
+        given(limited.getInterface()).willReturn(Object.class);
+        given(limited.invoke(any())).willReturn(new AppResponse());
+        URL plainUrl = URL.valueOf("dubbo://127.0.0.4:20880/org.apache.dubbo.DemoService");
+        Invoker<Object> plain = mock(Invoker.class);
+        given(plain.getUrl()).willReturn(plainUrl);
+        given(plain.invoke(any())).willReturn(new AppResponse());
+
+        RpcInvocation invocation = new RpcInvocation();
+        invocation.setMethodName("sayHello");
+        RpcStatus limitedStatus = RpcStatus.getStatus(limitedUrl, "sayHello");
+        RpcStatus plainStatus = RpcStatus.getStatus(plainUrl, "sayHello");
+
+        // first attempt fails and the retry goes to an invoker without adaptive limit
+        filter.invoke(limited, invocation);
+        filter.onError(new RpcException(), limited, invocation);
+        Result result = filter.invoke(plain, invocation);
+        filter.onResponse(result, plain, invocation);
+        Assertions.assertEquals(0, limitedStatus.getActive());
+        Assertions.assertEquals(0, plainStatus.getActive());
+        Assertions.assertEquals(0, plainStatus.getTotal());
+
+        // the retry is rejected, the count of the first attempt must not end twice
+        RpcInvocation busy = new RpcInvocation();
+        busy.setMethodName("sayHello");
+        filter.invoke(limited, busy);
+        filter.invoke(plain, invocation);
+        filter.onResponse(result, plain, invocation);
+        RpcException exception = Assertions.assertThrows(RpcException.class, () -> filter.invoke(limited, invocation));
+        filter.onError(exception, limited, invocation);
+        Assertions.assertEquals(1, limitedStatus.getActive());
+
+        filter.onResponse(result, limited, busy);
+        Assertions.assertEquals(0, limitedStatus.getActive());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSkipWithStaticActives() {
+        URL url = URL.valueOf("dubbo://127.0.0.2:20880/org.apache.dubbo.DemoService?adaptive.limit=true"
+            + "&adaptive.limit.initial=1&adaptive.limit.min=1&actives=10");
+        Invoker<Object> invoker = mock(Invoker.class);
+        given(invoker.getUrl()).willReturn(url);
+        given(invoker.invoke(any())).willReturn(new AppResponse());
+
+        for (int i = 0; i < 3; i++) {
+            RpcInvocation invocation = new RpcInvocation();
+            invocation.setMethodName("sayHello");
+            filter.invoke(invoker, invocation);
+        }
+        Assertions.assertEquals(0, RpcStatus.getStatus(url, "sayHello").getActive());
+    }
+}
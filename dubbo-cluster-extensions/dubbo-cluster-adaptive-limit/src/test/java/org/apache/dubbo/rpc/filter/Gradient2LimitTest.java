@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.filter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class Gradient2LimitTest {
+
+    @Test
+    void testGrowWhileRttIsStable() {
+        Gradient2Limit limit = new Gradient2Limit(10, 2, 100);
+        for (int i = 0; i < 200; i++) {
+            limit.onSample(10, limit.getLimit());
+        }
+        Assertions.assertEquals(100, limit.getLimit());
+    }
+
+    @Test
+    void testShrinkWhenRttRises() {
+        Gradient2Limit limit = new Gradient2Limit(50, 2, 100);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(10, limit.getLimit());
+        }
+        int before = limit.getLimit();
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(100, limit.getLimit());
+        }
+        Assertions.assertTrue(limit.getLimit() < before / 2, "limit " + limit.getLimit() + " before " + before);
+
+        for (int i = 0; i < 200; i++) {
+            limit.onSample(100, limit.getLimit());
+        }
+        Assertions.assertTrue(limit.getLimit() >= 2);
+    }
+
+    @Test
+    void testNoGrowthWhenAppLimited() {
+        Gradient2Limit limit = new Gradient2Limit(20, 2, 100);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(10, 1);
+        }
+        Assertions.assertEquals(20, limit.getLimit());
+    }
+}
@@ -17,44 +17,87 @@
 package org.apache.dubbo.rpc.cluster.support;
 
 
+import org.apache.dubbo.common.URL;
 import org.apache.dubbo.common.logger.Logger;
 import org.apache.dubbo.common.logger.LoggerFactory;
-import org.apache.dubbo.common.threadlocal.NamedInternalThreadFactory;
-import org.apache.dubbo.common.utils.JsonUtils;
+import org.apache.dubbo.common.threadpool.manager.FrameworkExecutorRepository;
+import org.apache.dubbo.common.utils.StringUtils;
 import org.apache.dubbo.rpc.AppResponse;
+import org.apache.dubbo.rpc.AsyncRpcResult;
+import org.apache.dubbo.rpc.InvokeMode;
 import org.apache.dubbo.rpc.Invocation;
 import org.apache.dubbo.rpc.Invoker;
 import org.apache.dubbo.rpc.Result;
 import org.apache.dubbo.rpc.RpcContext;
 import org.apache.dubbo.rpc.RpcException;
+import org.apache.dubbo.rpc.RpcInvocation;
 import org.apache.dubbo.rpc.cluster.Directory;
 import org.apache.dubbo.rpc.cluster.LoadBalance;
+import org.apache.dubbo.rpc.support.RpcUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 
 /**
  * BroadcastCluster2Invoker
  * <p>
- * sed for collecting all service provider results when in broadcast2 mode
+ * sed for collecting all service provider results when in broadcast2 mode, they are attached to the result
+ * as {@link BroadcastResults}
+ * <p>
+ * Every provider is invoked asynchronously on the caller thread and the responses are combined when the last
+ * one arrives, so no thread is parked per provider. Only a synchronous caller waits for the combined result.
+ * With {@code broadcast.quorum} the call completes as soon as that many providers have answered successfully,
+ * with {@code broadcast.deadline} it completes once the deadline has passed; providers that have not answered
+ * by then are reported as {@link BroadcastResult.Status#PENDING} or {@link BroadcastResult.Status#TIMEOUT}.
  */
 public class BroadcastCluster1Invoker<T> extends AbstractClusterInvoker<T> {
 
     private static final Logger logger = LoggerFactory.getLogger(BroadcastCluster1Invoker.class);
 
-    private static final String BROADCAST_RESULTS_KEY = "broadcast.results";
+    // number (e.g. 3) or percentage (e.g. 60%) of providers that must answer successfully
+    private static final String BROADCAST_QUORUM_KEY = "broadcast.quorum";
+
+    // milliseconds after which the broadcast completes with the answers received so far
+    private static final String BROADCAST_DEADLINE_KEY = "broadcast.deadline";
+
+    // whether the results are also put into the server context as a JSON string, for callers not on the typed API.
+    // Off by default, the string would be encoded on every call.
+    private static final String BROADCAST_RESULTS_JSON_KEY = "broadcast.results.json";
 
-    private final ExecutorService executor = Executors.newCachedThreadPool(
-        new NamedInternalThreadFactory("broadcast_cluster1", true));
+    private final ScheduledExecutorService scheduler;
 
     public BroadcastCluster1Invoker(Directory<T> directory) {
         super(directory);
+        checkQuorum(getUrl());
+        this.scheduler = directory.getUrl().getOrDefaultFrameworkModel().getBeanFactory()
+            .getBean(FrameworkExecutorRepository.class).getSharedScheduledExecutor();
+    }
+
+    /**
+     * Fails the reference on a malformed {@code broadcast.quorum}, service or method level, instead of failing
+     * every call.
+     */
+    private static void checkQuorum(URL url) {
+        if (url == null) {
+            return;
+        }
+        Map<String, String> quorums = url.getParameters(
+            key -> key.equals(BROADCAST_QUORUM_KEY) || key.endsWith("." + BROADCAST_QUORUM_KEY));
+        for (Map.Entry<String, String> entry : quorums.entrySet()) {
+            if (StringUtils.isNotEmpty(entry.getValue())) {
+                parseQuorum(entry.getValue(), 1);
+            }
+        }
     }
 
     @Override
@@ -62,108 +105,243 @@ public class BroadcastCluster1Invoker<T> extends AbstractClusterInvoker<T> {
     public Result doInvoke(final Invocation invocation, List<Invoker<T>> invokers, LoadBalance loadbalance) throws RpcException {
         checkInvokers(invokers, invocation);
         RpcContext.getContext().setInvokers((List) invokers);
-        InvokeResult res = invoke(invokers, invocation);
-        if (hasException(res.exception)) {
-            return createResult(invocation, res.exception, res.resultList);
-        }
-        Object value = res.resultList.stream().map(it -> it.getData()).findFirst().orElse(null);
-        return createResult(invocation, value, res.resultList);
-    }
-
-
-    private InvokeResult invoke(List<Invoker<T>> invokers, final Invocation invocation) {
-        List<BroadcastResult> resultList = new ArrayList<>(invokers.size());
-        List<Callable<BroadcastResult>> tasks = getCallables(invokers, invocation);
 
+        String methodName = RpcUtils.getMethodName(invocation);
+        BroadcastCall call;
         try {
-            List<Future<BroadcastResult>> futures = executor.invokeAll(tasks);
-            resultList = futures.stream().map(it -> {
-                try {
-                    return it.get();
-                } catch (Throwable e) {
-                    BroadcastResult br = new BroadcastResult();
-                    br.setException(getRpcException(e));
-                    br.setExceptionMsg(br.getException().getMessage());
-                    return br;
-                }
-            }).collect(Collectors.toList());
-        } catch (InterruptedException e) {
-            BroadcastResult br = new BroadcastResult();
-            br.setException(getRpcException(e));
-            br.setExceptionMsg(br.getException().getMessage());
-            resultList.add(br);
+            call = new BroadcastCall(invocation, invokers.toArray(new Invoker[0]),
+                getUrl().getMethodParameter(methodName, BROADCAST_QUORUM_KEY),
+                getUrl().getMethodParameter(methodName, BROADCAST_DEADLINE_KEY, 0L));
+        } catch (IllegalArgumentException e) {
+            // the quorum was overridden after the reference was built
+            throw new RpcException("Failed to broadcast " + methodName + ": " + e.getMessage(), e);
+        }
+        for (int i = 0; i < call.invokers.length; i++) {
+            int index = i;
+            invoke(call.invokers[i], invocation).thenAccept(br -> call.onResult(index, br));
         }
+        CompletableFuture<AppResponse> responseFuture = call.responseFuture;
 
-        return new InvokeResult(resultList.stream().map(BroadcastResult::getException)
-            .filter(it -> null != it).findFirst().orElse(null), resultList);
+        Result result = createResult(invocation, responseFuture,
+            getUrl().getMethodParameter(methodName, BROADCAST_RESULTS_JSON_KEY, false));
+        if (InvokeMode.SYNC == RpcUtils.getInvokeMode(getUrl(), invocation)) {
+            waitForResponse(responseFuture);
+        } else {
+            // the providers have each replaced the future, async callers must get the combined one
+            RpcContext.getServiceContext().setFuture(responseFuture.thenApply(response -> {
+                if (response.hasException()) {
+                    throw new CompletionException(response.getException());
+                }
+                return response.getValue();
+            }));
+        }
+        return result;
+    }
 
+    /**
+     * Invokes one provider in async mode, so the call returns as soon as the request is sent.
+     */
+    private CompletableFuture<BroadcastResult> invoke(Invoker<T> invoker, Invocation invocation) {
+        BroadcastResult br = new BroadcastResult(invoker.getUrl().getIp(), invoker.getUrl().getPort());
+        // each provider gets its own invocation, invokers write to it while it is in flight
+        RpcInvocation providerInvocation = new RpcInvocation(invocation);
+        providerInvocation.setInvokeMode(InvokeMode.ASYNC);
+        try {
+            Result result = invoker.invoke(providerInvocation);
+            if (result instanceof AsyncRpcResult) {
+                return ((AsyncRpcResult) result).getResponseFuture()
+                    .handle((appResponse, throwable) -> throwable == null
+                        ? onResponse(br, appResponse) : onException(br, throwable));
+            }
+            return CompletableFuture.completedFuture(onResponse(br, result));
+        } catch (Throwable ex) {
+            return CompletableFuture.completedFuture(onException(br, ex));
+        }
     }
 
-    private List<Callable<BroadcastResult>> getCallables(List<Invoker<T>> invokers, Invocation invocation) {
-        List<Callable<BroadcastResult>> tasks = invokers.stream().map(it -> (Callable<BroadcastResult>) () -> {
-            BroadcastResult br = new BroadcastResult(it.getUrl().getIp(), it.getUrl().getPort());
-            Result result = null;
-            try {
-                result = it.invoke(invocation);
-                if (null != result && result.hasException()) {
-                    Throwable resultException = result.getException();
-                    if (null != resultException) {
-                        RpcException exception = getRpcException(result.getException());
-                        br.setExceptionMsg(exception.getMessage());
-                        br.setException(exception);
-                        logger.warn(exception.getMessage(), exception);
-                    }
-                } else if (null != result) {
-                    br.setData(result.getValue());
-                    br.setResult(result);
-                }
-            } catch (Throwable ex) {
-                RpcException exception = getRpcException(result == null ? ex : result.getException());
+    private BroadcastResult onResponse(BroadcastResult br, Result result) {
+        if (null != result && result.hasException()) {
+            Throwable resultException = result.getException();
+            if (null != resultException) {
+                RpcException exception = getRpcException(resultException);
                 br.setExceptionMsg(exception.getMessage());
                 br.setException(exception);
+                br.setStatus(BroadcastResult.Status.FAILED);
                 logger.warn(exception.getMessage(), exception);
+                return br;
             }
-            return br;
-        }).collect(Collectors.toList());
-        return tasks;
+        } else if (null != result) {
+            br.setData(result.getValue());
+            br.setResult(result);
+        }
+        br.setStatus(BroadcastResult.Status.SUCCEEDED);
+        return br;
+    }
+
+    private BroadcastResult onException(BroadcastResult br, Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        RpcException exception = getRpcException(throwable);
+        br.setExceptionMsg(exception.getMessage());
+        br.setException(exception);
+        br.setStatus(BroadcastResult.Status.FAILED);
+        logger.warn(exception.getMessage(), exception);
+        return br;
     }
 
+    /**
+     * Collects the provider results of one broadcast and completes the response once all providers have
+     * answered, the quorum is reached or can no longer be reached, or the deadline has passed.
+     */
+    private class BroadcastCall {
+        private final Invocation invocation;
+
+        private final Invoker<T>[] invokers;
+
+        private final BroadcastResult[] results;
+
+        // number of successful answers the broadcast needs
+        private final int quorum;
+
+        // without an explicit quorum every provider is awaited, as failures do not end the broadcast early
+        private final boolean quorumConfigured;
 
-    private class InvokeResult {
-        public RpcException exception;
-        public List<BroadcastResult> resultList;
+        private final long deadline;
 
-        public InvokeResult(RpcException ex, List<BroadcastResult> resultList) {
-            this.exception = ex;
-            this.resultList = resultList;
+        private final AtomicInteger succeeded = new AtomicInteger();
+
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private final CompletableFuture<AppResponse> responseFuture = new CompletableFuture<>();
+
+        private volatile ScheduledFuture<?> deadlineFuture;
+
+        BroadcastCall(Invocation invocation, Invoker<T>[] invokers, String quorum, long deadline) {
+            this.invocation = invocation;
+            this.invokers = invokers;
+            this.results = new BroadcastResult[invokers.length];
+            this.quorumConfigured = StringUtils.isNotEmpty(quorum);
+            this.quorum = quorumConfigured ? parseQuorum(quorum, invokers.length) : invokers.length;
+            this.deadline = deadline;
+            if (deadline > 0) {
+                deadlineFuture = scheduler.schedule(() -> complete(BroadcastResult.Status.TIMEOUT),
+                    deadline, TimeUnit.MILLISECONDS);
+            }
         }
-    }
 
+        void onResult(int index, BroadcastResult br) {
+            synchronized (results) {
+                results[index] = br;
+            }
+            int success = br.getStatus() == BroadcastResult.Status.SUCCEEDED
+                ? succeeded.incrementAndGet() : succeeded.get();
+            int failure = br.getStatus() == BroadcastResult.Status.FAILED
+                ? failed.incrementAndGet() : failed.get();
+            if (success + failure == invokers.length
+                || (quorumConfigured && (success >= quorum || failure > invokers.length - quorum))) {
+                complete(BroadcastResult.Status.PENDING);
+            }
+        }
+
+        /**
+         * @param unansweredStatus how to report the providers that have not answered yet
+         */
+        private void complete(BroadcastResult.Status unansweredStatus) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> future = deadlineFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+
+            List<BroadcastResult> resultList = new ArrayList<>(results.length);
+            RpcException exception = null;
+            Object value = null;
+            boolean hasValue = false;
+            synchronized (results) {
+                for (int i = 0; i < results.length; i++) {
+                    BroadcastResult br = results[i];
+                    if (br == null) {
+                        br = new BroadcastResult(invokers[i].getUrl().getIp(), invokers[i].getUrl().getPort());
+                        br.setStatus(unansweredStatus);
+                    } else if (br.getStatus() == BroadcastResult.Status.SUCCEEDED && !hasValue) {
+                        value = br.getData();
+                        hasValue = true;
+                    } else if (exception == null) {
+                        exception = br.getException();
+                    }
+                    resultList.add(br);
+                }
+            }
 
-    private boolean hasException(RpcException exception) {
-        return null != exception;
+            AppResponse response = new AppResponse(invocation);
+            if (succeeded.get() >= quorum) {
+                response.setValue(value);
+            } else if (exception != null) {
+                response.setException(exception);
+            } else {
+                response.setException(new RpcException(RpcException.TIMEOUT_EXCEPTION, "Broadcast deadline of "
+                    + deadline + " ms exceeded, " + succeeded.get() + " of " + invokers.length
+                    + " providers answered successfully, the quorum is " + quorum));
+            }
+            response.setAttribute(BroadcastResults.BROADCAST_RESULTS_KEY, new BroadcastResults(getUrl(), resultList));
+            responseFuture.complete(response);
+        }
     }
 
-    private Result createResult(Invocation invocation, RpcException exception, List<BroadcastResult> resultList) {
-        AppResponse result = new AppResponse(invocation) {
-            @Override
-            public Result whenCompleteWithContext(BiConsumer<Result, Throwable> fn) {
-                RpcContext.getServerContext().setAttachment(BROADCAST_RESULTS_KEY, JsonUtils.toJson(resultList));
-                return new AppResponse();
+    /**
+     * @param quorum a provider count, or a percentage of the providers such as {@code 60%}
+     */
+    static int parseQuorum(String quorum, int providers) {
+        quorum = quorum.trim();
+        int count;
+        try {
+            if (quorum.endsWith("%")) {
+                double percentage = Double.parseDouble(quorum.substring(0, quorum.length() - 1).trim());
+                count = (int) Math.ceil(providers * percentage / 100);
+            } else {
+                count = Integer.parseInt(quorum);
             }
-        };
-        result.setException(exception);
-        return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Illegal " + BROADCAST_QUORUM_KEY + " value: " + quorum, e);
+        }
+        return Math.max(1, Math.min(providers, count));
+    }
+
+    private void waitForResponse(CompletableFuture<AppResponse> responseFuture) {
+        try {
+            responseFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw getRpcException(e);
+        } catch (ExecutionException e) {
+            throw getRpcException(e.getCause());
+        }
     }
 
-    private Result createResult(Invocation invocation, Object value, List<BroadcastResult> resultList) {
-        return new AppResponse(invocation) {
+    /**
+     * @param json whether to also put the results into the server context as a JSON string. Attachments travel on
+     *             the wire when the broadcast runs inside a provider, so only the string is put there.
+     */
+    private Result createResult(Invocation invocation, CompletableFuture<AppResponse> responseFuture, boolean json) {
+        if (!json) {
+            return new AsyncRpcResult(responseFuture, invocation);
+        }
+        return new AsyncRpcResult(responseFuture, invocation) {
             @Override
             public Result whenCompleteWithContext(BiConsumer<Result, Throwable> fn) {
-                RpcContext.getServerContext().setAttachment(BROADCAST_RESULTS_KEY, JsonUtils.toJson(resultList));
-                AppResponse res = new AppResponse();
-                res.setValue(value);
-                return res;
+                return super.whenCompleteWithContext((result, throwable) -> {
+                    fn.accept(result, throwable);
+                    BroadcastResults results = result == null ? null : BroadcastResults.of(result);
+                    if (results != null) {
+                        RpcContext.getServerContext().setAttachment(BroadcastResults.BROADCAST_RESULTS_KEY,
+                            results.toJson());
+                    }
+                });
             }
         };
     }
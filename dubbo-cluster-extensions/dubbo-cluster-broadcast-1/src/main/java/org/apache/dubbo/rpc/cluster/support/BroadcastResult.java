@@ -27,6 +27,17 @@ import java.io.Serializable;
  */
 public class BroadcastResult implements Serializable {
 
+    /**
+     * Outcome of the call to one provider at the time the broadcast completed.
+     */
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        // the broadcast reached its quorum before this provider answered
+        PENDING,
+        // the broadcast deadline passed before this provider answered
+        TIMEOUT
+    }
 
     private String ip;
 
@@ -36,6 +47,8 @@ public class BroadcastResult implements Serializable {
 
     private String exceptionMsg;
 
+    private Status status;
+
     private transient Result result;
 
     private transient RpcException exception;
@@ -73,6 +86,14 @@ public class BroadcastResult implements Serializable {
         this.exceptionMsg = exceptionMsg;
     }
 
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
     public int getPort() {
         return port;
     }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.support;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.common.serialize.ObjectInput;
+import org.apache.dubbo.common.serialize.ObjectOutput;
+import org.apache.dubbo.common.serialize.Serialization;
+import org.apache.dubbo.common.serialize.support.DefaultSerializationSelector;
+import org.apache.dubbo.common.utils.JsonUtils;
+import org.apache.dubbo.rpc.AppResponse;
+import org.apache.dubbo.rpc.AsyncRpcResult;
+import org.apache.dubbo.rpc.Result;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.apache.dubbo.remoting.Constants.SERIALIZATION_KEY;
+
+/**
+ * BroadcastResults
+ * <p>
+ * The results of all providers of one broadcast call, kept as a local attribute of the result under
+ * {@code broadcast.results}, so they never travel with the response. Nothing is encoded on the invocation path;
+ * {@link #toBytes()} encodes the results with the serialization of the consumer URL the first time they are
+ * actually needed in binary form, and {@link #toJson()} the first time the JSON string attachment is needed.
+ */
+public class BroadcastResults implements Serializable {
+
+    public static final String BROADCAST_RESULTS_KEY = "broadcast.results";
+
+    private static final byte NO_STATUS = -1;
+
+    private final List<BroadcastResult> results;
+
+    private final transient URL url;
+
+    private transient volatile byte[] bytes;
+
+    private transient volatile String json;
+
+    public BroadcastResults(URL url, List<BroadcastResult> results) {
+        this.url = url;
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    public List<BroadcastResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the results attached to the given broadcast result, or null if there are none
+     */
+    public static BroadcastResults of(Result result) {
+        if (result instanceof AsyncRpcResult) {
+            result = ((AsyncRpcResult) result).getAppResponse();
+        }
+        Object value = result instanceof AppResponse
+            ? ((AppResponse) result).getAttribute(BROADCAST_RESULTS_KEY) : null;
+        return value instanceof BroadcastResults ? (BroadcastResults) value : null;
+    }
+
+    /**
+     * Encodes the results as a JSON list with the status, address, exception message and data of every provider, as
+     * carried by the {@code broadcast.results} string attachment. The encoding is computed once and cached.
+     */
+    public String toJson() {
+        String encoded = json;
+        if (encoded == null) {
+            encoded = JsonUtils.toJson(results);
+            json = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Encodes status, address, exception message and data of every provider result. The encoding is
+     * computed once and cached.
+     */
+    public byte[] toBytes() throws IOException {
+        byte[] encoded = bytes;
+        if (encoded == null) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64 * (results.size() + 1));
+            ObjectOutput output = getSerialization(url).serialize(url, outputStream);
+            output.writeInt(results.size());
+            for (BroadcastResult result : results) {
+                output.writeByte(result.getStatus() == null ? NO_STATUS : (byte) result.getStatus().ordinal());
+                output.writeUTF(result.getIp());
+                output.writeInt(result.getPort());
+                output.writeUTF(result.getExceptionMsg());
+                output.writeObject(result.getData());
+            }
+            output.flushBuffer();
+            encoded = outputStream.toByteArray();
+            bytes = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes results encoded by {@link #toBytes()}, the URL must select the same serialization.
+     */
+    public static BroadcastResults fromBytes(URL url, byte[] bytes) throws IOException {
+        ObjectInput input = getSerialization(url).deserialize(url, new ByteArrayInputStream(bytes));
+        int size = input.readInt();
+        List<BroadcastResult> results = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                byte status = input.readByte();
+                BroadcastResult result = new BroadcastResult();
+                result.setStatus(status == NO_STATUS ? null : BroadcastResult.Status.values()[status]);
+                result.setIp(input.readUTF());
+                result.setPort(input.readInt());
+                result.setExceptionMsg(input.readUTF());
+                result.setData(input.readObject());
+                results.add(result);
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        return new BroadcastResults(url, results);
+    }
+
+    private static Serialization getSerialization(URL url) {
+        String name = url.getParameter(SERIALIZATION_KEY, DefaultSerializationSelector.getDefaultRemotingSerialization());
+        return url.getOrDefaultFrameworkModel().getExtensionLoader(Serialization.class).getExtension(name);
+    }
+}
@@ -18,20 +18,28 @@ package org.apache.dubbo.rpc.cluster.support;
 
 import org.apache.dubbo.common.URL;
 import org.apache.dubbo.rpc.AppResponse;
+import org.apache.dubbo.rpc.AsyncRpcResult;
+import org.apache.dubbo.rpc.InvokeMode;
 import org.apache.dubbo.rpc.Invocation;
 import org.apache.dubbo.rpc.Invoker;
 import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcContext;
 import org.apache.dubbo.rpc.RpcException;
 import org.apache.dubbo.rpc.RpcInvocation;
 import org.apache.dubbo.rpc.cluster.Directory;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.BDDMockito.given;
@@ -109,6 +117,149 @@ public class BroadcastCluster1InvokerTest {
         assertTrue(exception.getMessage().contains("java.lang.NullPointerException"));
     }
 
+    @Test
+    void testAsyncProviders() throws Exception {
+        AsyncMockInvoker asyncInvoker1 = new AsyncMockInvoker();
+        AsyncMockInvoker asyncInvoker2 = new AsyncMockInvoker();
+        given(dic.list(invocation)).willReturn(Arrays.asList(asyncInvoker1, asyncInvoker2));
+        invocation.setInvokeMode(InvokeMode.ASYNC);
+
+        // the caller returns before any provider has answered
+        Result result = clusterInvoker.invoke(invocation);
+        assertInstanceOf(AsyncRpcResult.class, result);
+        assertFalse(((AsyncRpcResult) result).getResponseFuture().isDone());
+
+        asyncInvoker1.complete("first");
+        assertFalse(((AsyncRpcResult) result).getResponseFuture().isDone());
+        asyncInvoker2.complete("second");
+
+        Result response = ((AsyncRpcResult) result).getResponseFuture().get();
+        assertEquals("first", response.getValue());
+        BroadcastResults results = BroadcastResults.of(response);
+        assertEquals(2, results.getResults().size());
+        assertEquals("second", results.getResults().get(1).getData());
+    }
+
+    @Test
+    void testQuorum() throws Exception {
+        URL quorumUrl = url.addParameter("broadcast.quorum", "50%");
+        given(dic.getUrl()).willReturn(quorumUrl);
+        given(dic.getConsumerUrl()).willReturn(quorumUrl);
+        clusterInvoker = new BroadcastCluster1Invoker(dic);
+
+        AsyncMockInvoker asyncInvoker1 = new AsyncMockInvoker();
+        AsyncMockInvoker asyncInvoker2 = new AsyncMockInvoker();
+        AsyncMockInvoker asyncInvoker3 = new AsyncMockInvoker();
+        AsyncMockInvoker asyncInvoker4 = new AsyncMockInvoker();
+        given(dic.list(invocation)).willReturn(Arrays.asList(asyncInvoker1, asyncInvoker2, asyncInvoker3, asyncInvoker4));
+        invocation.setInvokeMode(InvokeMode.ASYNC);
+
+        AsyncRpcResult result = (AsyncRpcResult) clusterInvoker.invoke(invocation);
+        asyncInvoker3.complete("third");
+        assertFalse(result.getResponseFuture().isDone());
+        asyncInvoker2.complete("second");
+
+        // half of the providers have answered, the others are reported as pending
+        assertTrue(result.getResponseFuture().isDone());
+        Result response = result.getResponseFuture().get();
+        assertEquals("second", response.getValue());
+        BroadcastResults results = BroadcastResults.of(response);
+        assertEquals(BroadcastResult.Status.PENDING, results.getResults().get(0).getStatus());
+        assertEquals(BroadcastResult.Status.SUCCEEDED, results.getResults().get(1).getStatus());
+        assertEquals(BroadcastResult.Status.SUCCEEDED, results.getResults().get(2).getStatus());
+        assertEquals(BroadcastResult.Status.PENDING, results.getResults().get(3).getStatus());
+    }
+
+    @Test
+    void testDeadline() throws Exception {
+        URL deadlineUrl = url.addParameter("broadcast.deadline", 100);
+        given(dic.getUrl()).willReturn(deadlineUrl);
+        given(dic.getConsumerUrl()).willReturn(deadlineUrl);
+        clusterInvoker = new BroadcastCluster1Invoker(dic);
+
+        AsyncMockInvoker asyncInvoker1 = new AsyncMockInvoker();
+        AsyncMockInvoker asyncInvoker2 = new AsyncMockInvoker();
+        given(dic.list(invocation)).willReturn(Arrays.asList(asyncInvoker1, asyncInvoker2));
+
+        asyncInvoker1.complete("first");
+        // a sync caller is released by the deadline
+        Throwable exception = clusterInvoker.invoke(invocation).getException();
+        assertInstanceOf(RpcException.class, exception);
+        assertTrue(((RpcException) exception).isTimeout());
+    }
+
+    @Test
+    void testResultsToBytes() throws Exception {
+        given(dic.list(invocation)).willReturn(Arrays.asList(invoker1, invoker2));
+        invoker2.invokeThrowEx();
+        Result result = ((AsyncRpcResult) clusterInvoker.invoke(invocation)).getResponseFuture().get();
+
+        BroadcastResults results = BroadcastResults.of(result);
+        byte[] bytes = results.toBytes();
+        assertSame(bytes, results.toBytes());
+
+        BroadcastResults decoded = BroadcastResults.fromBytes(url, bytes);
+        assertEquals(2, decoded.getResults().size());
+        assertEquals("sucess", decoded.getResults().get(0).getData());
+        assertEquals(BroadcastResult.Status.SUCCEEDED, decoded.getResults().get(0).getStatus());
+        assertEquals(BroadcastResult.Status.FAILED, decoded.getResults().get(1).getStatus());
+        assertTrue(decoded.getResults().get(1).getExceptionMsg().contains("java.lang.NullPointerException"));
+    }
+
+    @Test
+    void testResultsInContext() throws Exception {
+        given(dic.list(invocation)).willReturn(Arrays.asList(invoker1, invoker2));
+        RpcContext.getServerContext().removeAttachment("broadcast.results");
+        Result result = clusterInvoker.invoke(invocation);
+        result.whenCompleteWithContext((r, t) -> {});
+        // no JSON unless asked for
+        assertNull(RpcContext.getServerContext().getAttachment("broadcast.results"));
+        assertEquals(2, BroadcastResults.of(result).getResults().size());
+
+        URL jsonUrl = url.addParameter("broadcast.results.json", true);
+        given(dic.getUrl()).willReturn(jsonUrl);
+        given(dic.getConsumerUrl()).willReturn(jsonUrl);
+        clusterInvoker = new BroadcastCluster1Invoker(dic);
+        result = clusterInvoker.invoke(invocation);
+        result.whenCompleteWithContext((r, t) -> {});
+
+        // the response carries no typed object on the wire, the context keeps the JSON string
+        Result response = ((AsyncRpcResult) result).getResponseFuture().get();
+        assertNull(response.getObjectAttachment("broadcast.results"));
+        String json = RpcContext.getServerContext().getAttachment("broadcast.results");
+        assertTrue(json.contains("sucess"));
+        assertTrue(json.contains("SUCCEEDED"));
+        assertSame(json, BroadcastResults.of(result).toJson());
+        RpcContext.getServerContext().removeAttachment("broadcast.results");
+    }
+
+    @Test
+    void testParseQuorum() {
+        assertEquals(3, BroadcastCluster1Invoker.parseQuorum("3", 10));
+        assertEquals(6, BroadcastCluster1Invoker.parseQuorum("51%", 10));
+        assertEquals(10, BroadcastCluster1Invoker.parseQuorum("20", 10));
+        assertEquals(1, BroadcastCluster1Invoker.parseQuorum("0", 10));
+        assertThrows(IllegalArgumentException.class, () -> BroadcastCluster1Invoker.parseQuorum("half", 10));
+    }
+
+    @Test
+    void testMalformedQuorum() {
+        URL quorumUrl = url.addParameter("test.broadcast.quorum", "half");
+        given(dic.getUrl()).willReturn(quorumUrl);
+        given(dic.getConsumerUrl()).willReturn(quorumUrl);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new BroadcastCluster1Invoker(dic));
+        assertTrue(e.getMessage().contains("broadcast.quorum"));
+
+        // overridden after the invoker was built, the call fails with an RpcException
+        given(dic.getUrl()).willReturn(url);
+        given(dic.getConsumerUrl()).willReturn(url);
+        clusterInvoker = new BroadcastCluster1Invoker(dic);
+        given(dic.getConsumerUrl()).willReturn(url.addParameter("broadcast.quorum", "half"));
+        given(dic.list(invocation)).willReturn(Arrays.asList(invoker1, invoker2));
+        RpcException rpcException = assertThrows(RpcException.class, () -> clusterInvoker.invoke(invocation));
+        assertTrue(rpcException.getMessage().contains("broadcast.quorum"));
+    }
+
     @Test
     void testNoProvider() {
         given(dic.list(invocation)).willReturn(Collections.emptyList());
@@ -160,3 +311,17 @@ class MockInvoker implements Invoker<DemoService> {
         return invoked;
     }
 }
+
+class AsyncMockInvoker extends MockInvoker {
+    private final CompletableFuture<AppResponse> future = new CompletableFuture<>();
+
+    @Override
+    public Result invoke(Invocation invocation) throws RpcException {
+        super.invoke(invocation);
+        return new AsyncRpcResult(future, invocation);
+    }
+
+    public void complete(Object value) {
+        future.complete(new AppResponse(value));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the hedged requests at a percentage of the requests.
+ * <p>
+ * Every request earns that percentage of a hedge, and a hedge can only be sent once a whole one has been earned.
+ * Unused hedges are saved up to {@link #MAX_HEDGES}, so a burst of slow responses after a quiet period is hedged,
+ * while a provider that is slow for everyone cannot double the load on the cluster.
+ */
+class HedgingBudget {
+
+    // tokens of one hedge, a fraction of a hedge is earned per request
+    private static final long HEDGE = 1000;
+
+    private static final long MAX_HEDGES = 10;
+
+    private static final long MAX_TOKENS = MAX_HEDGES * HEDGE;
+
+    private final long tokensPerRequest;
+
+    private final AtomicLong tokens = new AtomicLong();
+
+    /**
+     * @param percentage the percentage of the requests that may be hedged, between 0 and 100
+     */
+    HedgingBudget(double percentage) {
+        this.tokensPerRequest = Math.round(Math.max(0, Math.min(100, percentage)) * HEDGE / 100);
+    }
+
+    void onRequest() {
+        if (tokensPerRequest == 0) {
+            return;
+        }
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= MAX_TOKENS) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(MAX_TOKENS, current + tokensPerRequest)));
+    }
+
+    /**
+     * @return whether a hedge may be sent, in which case it has been taken from the budget
+     */
+    boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < HEDGE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - HEDGE));
+        return true;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.support;
+
+import org.apache.dubbo.common.logger.Logger;
+import org.apache.dubbo.common.logger.LoggerFactory;
+import org.apache.dubbo.common.threadpool.manager.FrameworkExecutorRepository;
+import org.apache.dubbo.rpc.AppResponse;
+import org.apache.dubbo.rpc.AsyncRpcResult;
+import org.apache.dubbo.rpc.InvokeMode;
+import org.apache.dubbo.rpc.Invocation;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcContext;
+import org.apache.dubbo.rpc.RpcException;
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.apache.dubbo.rpc.cluster.Directory;
+import org.apache.dubbo.rpc.cluster.LoadBalance;
+import org.apache.dubbo.rpc.support.RpcUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HedgingClusterInvoker
+ * <p>
+ * Sends the request to one provider, and when it has not answered within the hedge delay sends a backup request
+ * to a second provider. The first response wins and the other request is cancelled. A failure only ends the call
+ * when no other request is outstanding.
+ * <p>
+ * The hedge delay is a percentile of the recent latencies of the method ({@code hedging.percentile}, 95 by
+ * default), or a fixed number of milliseconds ({@code hedging.delay}). Hedges are capped at a percentage of the
+ * requests ({@code hedging.budget}, 10 by default), so a slow cluster is not flooded with backup requests.
+ */
+public class HedgingClusterInvoker<T> extends AbstractClusterInvoker<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgingClusterInvoker.class);
+
+    // latency percentile of the method after which a backup request is sent
+    private static final String HEDGING_PERCENTILE_KEY = "hedging.percentile";
+
+    private static final double DEFAULT_HEDGING_PERCENTILE = 95;
+
+    // fixed milliseconds after which a backup request is sent, replaces the percentile
+    private static final String HEDGING_DELAY_KEY = "hedging.delay";
+
+    // percentage of the requests that may be hedged
+    private static final String HEDGING_BUDGET_KEY = "hedging.budget";
+
+    private static final double DEFAULT_HEDGING_BUDGET = 10;
+
+    private final ConcurrentMap<String, LatencyPercentile> latencies = new ConcurrentHashMap<>();
+
+    private final HedgingBudget budget;
+
+    // only triggers the hedges, they are sent on the executor
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService executor;
+
+    public HedgingClusterInvoker(Directory<T> directory) {
+        super(directory);
+        this.budget = new HedgingBudget(getUrl().getParameter(HEDGING_BUDGET_KEY, DEFAULT_HEDGING_BUDGET));
+        FrameworkExecutorRepository executorRepository = directory.getUrl().getOrDefaultFrameworkModel()
+            .getBeanFactory().getBean(FrameworkExecutorRepository.class);
+        this.scheduler = executorRepository.getSharedScheduledExecutor();
+        this.executor = executorRepository.getSharedExecutor();
+    }
+
+    @Override
+    public Result doInvoke(final Invocation invocation, List<Invoker<T>> invokers, LoadBalance loadbalance) throws RpcException {
+        checkInvokers(invokers, invocation);
+        String methodName = RpcUtils.getMethodName(invocation);
+        LatencyPercentile latency = latencies.computeIfAbsent(methodName, method ->
+            new LatencyPercentile(getUrl().getMethodParameter(method, HEDGING_PERCENTILE_KEY, DEFAULT_HEDGING_PERCENTILE)));
+        budget.onRequest();
+
+        Invoker<T> primary = select(loadbalance, invocation, invokers, null);
+        HedgedCall call = new HedgedCall(invocation, latency);
+        call.send(primary);
+        if (invokers.size() > 1) {
+            long delay = getHedgeDelay(methodName, latency);
+            if (delay >= 0) {
+                call.schedule(() -> sendHedge(call, primary, invokers, loadbalance), delay);
+            }
+        }
+        CompletableFuture<AppResponse> responseFuture = call.responseFuture;
+
+        Result result = new AsyncRpcResult(responseFuture, invocation);
+        if (InvokeMode.SYNC == RpcUtils.getInvokeMode(getUrl(), invocation)) {
+            waitForResponse(responseFuture);
+        } else {
+            // the primary request has replaced the future, async callers must get the one of the winner
+            RpcContext.getServiceContext().setFuture(responseFuture.thenApply(response -> {
+                if (response.hasException()) {
+                    throw new CompletionException(response.getException());
+                }
+                return response.getValue();
+            }));
+        }
+        return result;
+    }
+
+    /**
+     * @return the hedge delay in nanoseconds, or -1 when the method has no delay yet
+     */
+    private long getHedgeDelay(String methodName, LatencyPercentile latency) {
+        long delay = getUrl().getMethodParameter(methodName, HEDGING_DELAY_KEY, -1L);
+        if (delay >= 0) {
+            return TimeUnit.MILLISECONDS.toNanos(delay);
+        }
+        return latency.get();
+    }
+
+    /**
+     * Hands the backup request over to the executor, runs on the scheduler.
+     */
+    private void sendHedge(HedgedCall call, Invoker<T> primary, List<Invoker<T>> invokers, LoadBalance loadbalance) {
+        if (call.responseFuture.isDone()) {
+            return;
+        }
+        try {
+            executor.execute(() -> hedge(call, primary, invokers, loadbalance));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Failed to send the hedged request of " + RpcUtils.getMethodName(call.invocation)
+                + " to " + getInterface().getName() + ", waiting for the first one: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends the backup request, runs on the executor.
+     */
+    private void hedge(HedgedCall call, Invoker<T> primary, List<Invoker<T>> invokers, LoadBalance loadbalance) {
+        if (call.responseFuture.isDone()) {
+            return;
+        }
+        try {
+            Invoker<T> backup = select(loadbalance, call.invocation, invokers, Collections.singletonList(primary));
+            // the budget is only spent on a hedge that is actually sent
+            if (backup != null && backup != primary && budget.tryAcquire()) {
+                call.send(backup);
+            }
+        } catch (Throwable t) {
+            logger.warn("Failed to send the hedged request of " + RpcUtils.getMethodName(call.invocation)
+                + " to " + getInterface().getName() + ", waiting for the first one: " + t.getMessage(), t);
+        } finally {
+            // requests leave their futures in the context of the sending thread
+            RpcContext.removeContext();
+        }
+    }
+
+    /**
+     * The requests of one call to the cluster, completes the response with the first one that answers.
+     */
+    private class HedgedCall {
+        private final Invocation invocation;
+
+        private final LatencyPercentile latency;
+
+        private final CompletableFuture<AppResponse> responseFuture = new CompletableFuture<>();
+
+        // guarded by this
+        private final List<Attempt> attempts = new ArrayList<>(2);
+
+        // guarded by this
+        private int outstanding;
+
+        private volatile ScheduledFuture<?> hedgeFuture;
+
+        HedgedCall(Invocation invocation, LatencyPercentile latency) {
+            this.invocation = invocation;
+            this.latency = latency;
+        }
+
+        void schedule(Runnable hedge, long delayNanos) {
+            if (responseFuture.isDone()) {
+                return;
+            }
+            hedgeFuture = scheduler.schedule(hedge, delayNanos, TimeUnit.NANOSECONDS);
+            if (responseFuture.isDone()) {
+                hedgeFuture.cancel(false);
+            }
+        }
+
+        /**
+         * Invokes one provider in async mode, so the call returns as soon as the request is sent.
+         */
+        void send(Invoker<T> invoker) {
+            // each request gets its own invocation, invokers write to it while it is in flight
+            RpcInvocation attemptInvocation = new RpcInvocation(invocation);
+            attemptInvocation.setInvokeMode(InvokeMode.ASYNC);
+            Attempt attempt = new Attempt();
+            CompletableFuture<AppResponse> future;
+            try {
+                Result result = invoker.invoke(attemptInvocation);
+                future = result instanceof AsyncRpcResult
+                    ? ((AsyncRpcResult) result).getResponseFuture()
+                    : CompletableFuture.completedFuture(toAppResponse(result));
+            } catch (Throwable t) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(t);
+            }
+            attempt.future = future;
+            synchronized (this) {
+                if (responseFuture.isDone()) {
+                    future.cancel(true);
+                    return;
+                }
+                attempts.add(attempt);
+                outstanding++;
+            }
+            future.whenComplete((response, throwable) -> onComplete(attempt, response, throwable));
+        }
+
+        private void onComplete(Attempt attempt, AppResponse response, Throwable throwable) {
+            long elapsed = System.nanoTime() - attempt.start;
+            List<Attempt> losers;
+            synchronized (this) {
+                if (responseFuture.isDone()) {
+                    return;
+                }
+                outstanding--;
+                if (throwable != null && outstanding > 0) {
+                    // the other request may still answer
+                    return;
+                }
+                losers = new ArrayList<>(attempts);
+                losers.remove(attempt);
+                // completed inside the lock, so no request is added or left behind after it
+                if (throwable == null) {
+                    responseFuture.complete(response);
+                } else {
+                    AppResponse failure = new AppResponse(invocation);
+                    failure.setException(getRpcException(throwable));
+                    responseFuture.complete(failure);
+                }
+            }
+            if (response != null) {
+                latency.record(elapsed);
+            }
+
+            ScheduledFuture<?> hedge = hedgeFuture;
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+            long now = System.nanoTime();
+            for (Attempt loser : losers) {
+                if (loser.future.cancel(true)) {
+                    // took at least this long, leaving it out would make the percentile look better than it is
+                    latency.record(now - loser.start);
+                }
+            }
+        }
+    }
+
+    private static class Attempt {
+        private final long start = System.nanoTime();
+
+        private CompletableFuture<AppResponse> future;
+    }
+
+    private AppResponse toAppResponse(Result result) {
+        if (result instanceof AppResponse) {
+            return (AppResponse) result;
+        }
+        AppResponse response = new AppResponse();
+        if (result.hasException()) {
+            response.setException(result.getException());
+        } else {
+            response.setValue(result.getValue());
+        }
+        response.setObjectAttachments(result.getObjectAttachments());
+        return response;
+    }
+
+    private void waitForResponse(CompletableFuture<AppResponse> responseFuture) {
+        try {
+            responseFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw getRpcException(e);
+        } catch (ExecutionException e) {
+            throw getRpcException(e.getCause());
+        }
+    }
+
+    // For ut only
+    HedgingBudget getBudget() {
+        return budget;
+    }
+
+    private RpcException getRpcException(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        if (throwable instanceof RpcException) {
+            return (RpcException) throwable;
+        }
+        return new RpcException(throwable.getMessage(), throwable);
+    }
+}
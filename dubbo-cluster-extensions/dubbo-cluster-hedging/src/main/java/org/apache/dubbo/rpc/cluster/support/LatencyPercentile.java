@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.support;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency percentile over the most recent responses of one method.
+ * <p>
+ * Samples are written into a ring of the last {@link #WINDOW} latencies, and the percentile is recomputed from a
+ * sorted copy every {@link #RECOMPUTE_INTERVAL} samples, so reading it costs a volatile read.
+ */
+class LatencyPercentile {
+
+    private static final int WINDOW = 1024;
+
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    // no percentile is reported before this many samples, a few early responses say little about the tail
+    private static final int MIN_SAMPLES = 2 * RECOMPUTE_INTERVAL;
+
+    private final double percentile;
+
+    private final AtomicLongArray samples = new AtomicLongArray(WINDOW);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile long value = -1;
+
+    /**
+     * @param percentile the percentile to track, between 0 and 100
+     */
+    LatencyPercentile(double percentile) {
+        this.percentile = Math.max(0, Math.min(100, percentile));
+    }
+
+    void record(long nanos) {
+        long n = count.getAndIncrement() + 1;
+        samples.set((int) ((n - 1) & (WINDOW - 1)), nanos);
+        if (n >= MIN_SAMPLES && n % RECOMPUTE_INTERVAL == 0) {
+            recompute((int) Math.min(n, WINDOW));
+        }
+    }
+
+    /**
+     * @return the percentile in nanoseconds, or -1 until enough samples have been recorded
+     */
+    long get() {
+        return value;
+    }
+
+    private void recompute(int size) {
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * size) - 1;
+        value = sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+}
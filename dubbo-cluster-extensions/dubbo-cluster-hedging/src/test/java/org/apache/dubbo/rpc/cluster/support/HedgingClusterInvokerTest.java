@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.support;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.rpc.AppResponse;
+import org.apache.dubbo.rpc.AsyncRpcResult;
+import org.apache.dubbo.rpc.InvokeMode;
+import org.apache.dubbo.rpc.Invocation;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcException;
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.apache.dubbo.rpc.cluster.Directory;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @see HedgingClusterInvoker
+ */
+public class HedgingClusterInvokerTest {
+    private URL url;
+    private Directory<DemoService> dic;
+    private RpcInvocation invocation;
+
+    private AsyncMockInvoker invoker1;
+    private AsyncMockInvoker invoker2;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dic = mock(Directory.class);
+
+        invoker1 = new AsyncMockInvoker();
+        invoker2 = new AsyncMockInvoker();
+
+        url = URL.valueOf("test://127.0.0.1:8080/test");
+        given(dic.getInterface()).willReturn(DemoService.class);
+
+        invocation = new RpcInvocation();
+        invocation.setMethodName("test");
+        invocation.setInvokeMode(InvokeMode.ASYNC);
+        given(dic.list(invocation)).willReturn(Arrays.asList(invoker1, invoker2));
+    }
+
+    private HedgingClusterInvoker<DemoService> createClusterInvoker(URL url) {
+        given(dic.getUrl()).willReturn(url);
+        given(dic.getConsumerUrl()).willReturn(url);
+        return new HedgingClusterInvoker<>(dic);
+    }
+
+    @Test
+    void testHedgeWins() throws Exception {
+        HedgingClusterInvoker<DemoService> clusterInvoker = createClusterInvoker(
+            url.addParameter("hedging.delay", 10).addParameter("hedging.budget", 100));
+
+        AsyncRpcResult result = (AsyncRpcResult) clusterInvoker.invoke(invocation);
+        AsyncMockInvoker primary = invoker1.isInvoked() ? invoker1 : invoker2;
+        AsyncMockInvoker backup = primary == invoker1 ? invoker2 : invoker1;
+        assertFalse(backup.isInvoked());
+
+        // the primary has not answered within the delay
+        awaitInvoked(backup);
+        backup.complete("backup");
+
+        Result response = result.getResponseFuture().get(1, TimeUnit.SECONDS);
+        assertEquals("backup", response.getValue());
+        assertTrue(primary.isCancelled());
+    }
+
+    @Test
+    void testPrimaryWins() throws Exception {
+        HedgingClusterInvoker<DemoService> clusterInvoker = createClusterInvoker(
+            url.addParameter("hedging.delay", 10).addParameter("hedging.budget", 100));
+
+        AsyncRpcResult result = (AsyncRpcResult) clusterInvoker.invoke(invocation);
+        AsyncMockInvoker primary = invoker1.isInvoked() ? invoker1 : invoker2;
+        AsyncMockInvoker backup = primary == invoker1 ? invoker2 : invoker1;
+        awaitInvoked(backup);
+        primary.complete("primary");
+
+        assertEquals("primary", result.getResponseFuture().get(1, TimeUnit.SECONDS).getValue());
+        assertTrue(backup.isCancelled());
+    }
+
+    @Test
+    void testNoHedgeWhenAnswered() throws Exception {
+        HedgingClusterInvoker<DemoService> clusterInvoker = createClusterInvoker(
+            url.addParameter("hedging.delay", 10).addParameter("hedging.budget", 100));
+        invoker1.complete("first");
+        invoker2.complete("second");
+
+        AsyncRpcResult result = (AsyncRpcResult) clusterInvoker.invoke(invocation);
+        assertTrue(result.getResponseFuture().isDone());
+        Thread.sleep(50);
+        assertTrue(invoker1.isInvoked() != invoker2.isInvoked());
+    }
+
+    @Test
+    void testBudget() throws Exception {
+        HedgingClusterInvoker<DemoService> clusterInvoker = createClusterInvoker(
+            url.addParameter("hedging.delay", 0).addParameter("hedging.budget", 0));
+
+        clusterInvoker.invoke(invocation);
+        Thread.sleep(50);
+        // the budget does not allow any hedge
+        assertTrue(invoker1.isInvoked() != invoker2.isInvoked());
+    }
+
+    @Test
+    void testBudgetKeptWithoutBackup() throws Exception {
+        HedgingClusterInvoker<DemoService> clusterInvoker = createClusterInvoker(
+            url.addParameter("hedging.delay", 0).addParameter("hedging.budget", 100));
+        RpcInvocation single = new RpcInvocation();
+        single.setMethodName("test");
+        single.setInvokeMode(InvokeMode.ASYNC);
+        given(dic.list(single)).willReturn(Arrays.asList(invoker1, invoker1));
+
+        clusterInvoker.invoke(single);
+        Thread.sleep(50);
+        assertFalse(invoker2.isInvoked());
+        // no other provider to hedge to, the earned hedge is left in the budget
+        assertTrue(clusterInvoker.getBudget().tryAcquire());
+        assertFalse(clusterInvoker.getBudget().tryAcquire());
+    }
+
+    @Test
+    void testFailureWaitsForOtherRequest() throws Exception {
+        HedgingClusterInvoker<DemoService> clusterInvoker = createClusterInvoker(
+            url.addParameter("hedging.delay", 10).addParameter("hedging.budget", 100));
+
+        AsyncRpcResult result = (AsyncRpcResult) clusterInvoker.invoke(invocation);
+        AsyncMockInvoker primary = invoker1.isInvoked() ? invoker1 : invoker2;
+        AsyncMockInvoker backup = primary == invoker1 ? invoker2 : invoker1;
+        awaitInvoked(backup);
+
+        primary.fail(new RpcException("mocked java.lang.NullPointerException"));
+        assertFalse(result.getResponseFuture().isDone());
+        backup.complete("backup");
+        assertEquals("backup", result.getResponseFuture().get(1, TimeUnit.SECONDS).getValue());
+    }
+
+    @Test
+    void testFailure() {
+        HedgingClusterInvoker<DemoService> clusterInvoker = createClusterInvoker(url);
+        invoker1.fail(new RpcException("mocked java.lang.NullPointerException"));
+        invoker2.fail(new RpcException("mocked java.lang.NullPointerException"));
+        invocation.setInvokeMode(InvokeMode.SYNC);
+
+        Throwable exception = clusterInvoker.invoke(invocation).getException();
+        assertInstanceOf(RpcException.class, exception);
+        assertTrue(exception.getMessage().contains("java.lang.NullPointerException"));
+    }
+
+    @Test
+    void testLatencyPercentile() {
+        LatencyPercentile latency = new LatencyPercentile(95);
+        for (int i = 1; i < 128; i++) {
+            latency.record(i);
+        }
+        // not enough samples yet
+        assertEquals(-1, latency.get());
+        latency.record(128);
+        assertEquals(122, latency.get());
+
+        for (int i = 129; i <= 1024; i++) {
+            latency.record(i);
+        }
+        assertEquals(973, latency.get());
+    }
+
+    @Test
+    void testHedgingBudget() {
+        HedgingBudget budget = new HedgingBudget(10);
+        for (int i = 0; i < 9; i++) {
+            budget.onRequest();
+        }
+        assertFalse(budget.tryAcquire());
+        budget.onRequest();
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+
+        // unused hedges are saved up to a limit
+        for (int i = 0; i < 1000; i++) {
+            budget.onRequest();
+        }
+        int hedges = 0;
+        while (budget.tryAcquire()) {
+            hedges++;
+        }
+        assertEquals(10, hedges);
+    }
+
+    private static void awaitInvoked(AsyncMockInvoker invoker) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!invoker.isInvoked() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(invoker.isInvoked());
+    }
+}
+
+class AsyncMockInvoker implements Invoker<DemoService> {
+    private final URL url = URL.valueOf("test://127.0.0.1:8080/test");
+    private final CompletableFuture<AppResponse> future = new CompletableFuture<>();
+    private volatile boolean invoked = false;
+
+    @Override
+    public URL getUrl() {
+        return url;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public void destroy() {}
+
+    @Override
+    public Class<DemoService> getInterface() {
+        return DemoService.class;
+    }
+
+    @Override
+    public Result invoke(Invocation invocation) throws RpcException {
+        invoked = true;
+        return new AsyncRpcResult(future, invocation);
+    }
+
+    public void complete(Object value) {
+        future.complete(new AppResponse(value));
+    }
+
+    public void fail(Throwable throwable) {
+        future.completeExceptionally(throwable);
+    }
+
+    public boolean isInvoked() {
+        return invoked;
+    }
+
+    public boolean isCancelled() {
+        return future.isCancelled();
+    }
+}
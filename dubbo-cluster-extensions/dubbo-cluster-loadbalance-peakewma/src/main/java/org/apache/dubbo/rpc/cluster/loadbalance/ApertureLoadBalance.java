@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.loadbalance;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.common.utils.CollectionUtils;
+import org.apache.dubbo.common.utils.ConfigUtils;
+import org.apache.dubbo.common.utils.NetUtils;
+import org.apache.dubbo.rpc.Invocation;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.RpcStatus;
+import org.apache.dubbo.rpc.cluster.router.state.BitList;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * ApertureLoadBalance lets each consumer talk to a subset (the aperture) of the providers instead of the
+ * full mesh, which bounds the number of busy connections when there are many consumers and many providers.
+ * Providers are placed on a ring ordered by address, so every consumer sees the same ring, and each
+ * consumer starts its aperture at its own coordinate on that ring. Within the aperture two random
+ * providers are compared and the one with fewer active requests is chosen.
+ * <p>
+ * By default the coordinate is a hash of the consumer's host and pid, which places the apertures at random:
+ * the load only evens out over many consumers, and with a few consumers some providers may be in no aperture
+ * while others are in several. Consumers that know their index among the consumers of the service, set with
+ * `aperture.consumerIndex` and `aperture.consumerCount`, start their apertures at evenly spaced coordinates
+ * instead, so that apertures of at least providers / consumers cover every provider.
+ * The aperture widens when the average load of the selected providers exceeds `aperture.highLoad`
+ * and narrows when it drops below `aperture.lowLoad`, but never below `aperture.min` providers.
+ * <p>
+ * Inspiration drawn from:
+ * https://github.com/twitter/finagle/blob/develop
+ * /finagle-core/src/main/scala/com/twitter/finagle/loadbalancer/aperture/Aperture.scala
+ */
+public class ApertureLoadBalance extends AbstractLoadBalance {
+
+    public static final String NAME = "aperture";
+
+    public static final String APERTURE_MIN = "aperture.min";
+
+    public static final String APERTURE_LOW_LOAD = "aperture.lowLoad";
+
+    public static final String APERTURE_HIGH_LOAD = "aperture.highLoad";
+
+    public static final String APERTURE_CONSUMER_INDEX = "aperture.consumerIndex";
+
+    public static final String APERTURE_CONSUMER_COUNT = "aperture.consumerCount";
+
+    private static final int DEFAULT_APERTURE_MIN = 12;
+
+    private static final double DEFAULT_LOW_LOAD = 0.875;
+
+    private static final double DEFAULT_HIGH_LOAD = 2.0;
+
+    // weight of the latest sample in the smoothed load
+    private static final double LOAD_SMOOTHING = 0.1;
+
+    // identifies this consumer process, so consumers without an index start their apertures at random places
+    private static final String LOCAL_IDENTITY = NetUtils.getLocalHost() + ":" + ConfigUtils.getPid();
+
+    // service key -> provider rings of the directories referring that service
+    private final Map<String, ServiceRings> rings = CollectionUtils.newConcurrentHashMap();
+
+    /**
+     * Rings of one service. Every directory referring the service publishes its own origin list, so one ring
+     * is held per list and selecting from one directory does not rebuild the ring of another one. Invokers
+     * belong to a single directory, so a new list replaces the rings sharing invokers with it, and rings whose
+     * list has been dropped by its directory are pruned.
+     */
+    private static final class ServiceRings {
+        private volatile Ring[] entries = new Ring[0];
+
+        /**
+         * @param first the first invoker of a list no ring is built from, which is looked up instead
+         */
+        Ring find(List<?> source, Invoker<?> first) {
+            for (Ring ring : entries) {
+                if (ring.isBuiltFrom(source) || (first != null && ring.positions.containsKey(first))) {
+                    return ring;
+                }
+            }
+            return null;
+        }
+
+        synchronized Ring rebuild(List<?> source, double coordinate, int minAperture) {
+            Ring[] current = entries;
+            Ring previous = null;
+            List<Ring> kept = new ArrayList<>(current.length + 1);
+            for (Ring ring : current) {
+                if (ring.sharesInvokers(source)) {
+                    previous = previous == null ? ring : previous;
+                } else if (!ring.isReleased()) {
+                    kept.add(ring);
+                }
+            }
+            Ring ring = new Ring(source, coordinate, minAperture, previous);
+            kept.add(0, ring);
+            entries = kept.toArray(new Ring[0]);
+            return ring;
+        }
+    }
+
+    /**
+     * Providers of one service ordered by address, together with this consumer's position on the ring
+     * and its current aperture. Instances are immutable once published except for the aperture and load,
+     * a changed invoker list produces a new ring which carries both over.
+     */
+    protected static class Ring {
+        // weak, so that the ring of a list its directory has dropped can be pruned
+        private final WeakReference<List<?>> source;
+
+        private final Invoker<?>[] invokers;
+
+        // ring position -> index of the invoker in the list the ring is built from
+        private final int[] sourceIndexes;
+
+        private final RpcStatus[] statuses;
+
+        private final Map<Invoker<?>, Integer> positions;
+
+        private final int offset;
+
+        private final AtomicInteger aperture;
+
+        // smoothed active requests per selected provider, racy updates are fine for a load estimate
+        private volatile double load;
+
+        Ring(List<?> source, double coordinate, int minAperture, Ring previous) {
+            this.source = new WeakReference<>(source);
+            Invoker<?>[] unsorted = source.toArray(new Invoker<?>[0]);
+            Integer[] order = new Integer[unsorted.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> unsorted[i].getUrl().getAddress()));
+            this.invokers = new Invoker<?>[unsorted.length];
+            this.sourceIndexes = new int[unsorted.length];
+            this.statuses = new RpcStatus[unsorted.length];
+            this.positions = new IdentityHashMap<>(unsorted.length);
+            for (int i = 0; i < unsorted.length; i++) {
+                invokers[i] = unsorted[order[i]];
+                sourceIndexes[i] = order[i];
+                statuses[i] = RpcStatus.getStatus(invokers[i].getUrl());
+                positions.put(invokers[i], i);
+            }
+            this.offset = (int) (coordinate * invokers.length);
+            this.aperture = new AtomicInteger(previous == null ? minAperture : previous.aperture.get());
+            this.load = previous == null ? 0 : previous.load;
+        }
+
+        boolean isBuiltFrom(List<?> source) {
+            return this.source.get() == source;
+        }
+
+        boolean isReleased() {
+            return source.get() == null;
+        }
+
+        boolean sharesInvokers(List<?> list) {
+            for (Object invoker : list) {
+                if (positions.containsKey(invoker)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int size() {
+            return invokers.length;
+        }
+
+        boolean inAperture(int position, int width) {
+            return (position - offset + invokers.length) % invokers.length < width;
+        }
+
+        int getAperture(int minAperture) {
+            return Math.max(1, Math.min(invokers.length, Math.max(minAperture, aperture.get())));
+        }
+
+        /**
+         * Folds a load sample into the smoothed load and moves the aperture by one provider when the load
+         * is out of the [lowLoad, highLoad] band.
+         */
+        void adjust(double sample, int minAperture, double lowLoad, double highLoad) {
+            double current = load + (sample - load) * LOAD_SMOOTHING;
+            load = current;
+            int width = aperture.get();
+            if (current > highLoad && width < invokers.length) {
+                aperture.compareAndSet(width, width + 1);
+            } else if (current < lowLoad && width > minAperture) {
+                aperture.compareAndSet(width, width - 1);
+            }
+        }
+
+    }
+
+    /**
+     * @return the coordinate in [0, 1) this consumer starts its aperture at, evenly spaced by the consumer index
+     * if one is configured, random otherwise
+     */
+    static double coordinate(URL url, String serviceKey) {
+        int count = url.getParameter(APERTURE_CONSUMER_COUNT, 0);
+        if (count > 0) {
+            return Math.floorMod(url.getParameter(APERTURE_CONSUMER_INDEX, 0), count) / (double) count;
+        }
+        return coordinate(LOCAL_IDENTITY + serviceKey);
+    }
+
+    /**
+     * Maps a string to a stable coordinate in [0, 1), mixing the bits so that similar identities
+     * (e.g. consecutive pids on one host) still land far apart on the ring.
+     */
+    static double coordinate(String identity) {
+        int h = identity.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) / (double) (1L << 31);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> Invoker<T> doSelect(List<Invoker<T>> invokers, URL url, Invocation invocation) {
+        String methodName = invocation.getMethodName();
+        URL invokerUrl = invokers.get(0).getUrl();
+        String serviceKey = invokerUrl.getServiceKey();
+        int minAperture = invokerUrl.getMethodParameter(methodName, APERTURE_MIN, DEFAULT_APERTURE_MIN);
+        double lowLoad = invokerUrl.getMethodParameter(methodName, APERTURE_LOW_LOAD, DEFAULT_LOW_LOAD);
+        double highLoad = invokerUrl.getMethodParameter(methodName, APERTURE_HIGH_LOAD, DEFAULT_HIGH_LOAD);
+
+        List<?> source = getSource(invokers);
+        Ring ring = getRing(invokers, source, invokerUrl, serviceKey, minAperture, false);
+        if (!ring.isBuiltFrom(source) && countListed(invokers, ring, ring.getAperture(minAperture)) < 0) {
+            ring = getRing(invokers, source, invokerUrl, serviceKey, minAperture, true);
+        }
+        int width = ring.getAperture(minAperture);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        int first;
+        int second;
+        if (ring.isBuiltFrom(source) && invokers.size() == ring.size()) {
+            // pick two distinct positions inside the aperture
+            int a = random.nextInt(width);
+            int b = nextOther(random, width, a);
+            first = (ring.offset + a) % ring.size();
+            second = (ring.offset + b) % ring.size();
+        } else if (ring.isBuiltFrom(source) && source != invokers) {
+            // routers have filtered the directory's origin list, test ring positions against the routed bits
+            BitList<?> routed = (BitList<?>) invokers;
+            int span = width;
+            int count = countRouted(routed, ring, width);
+            if (count == 0) {
+                span = ring.size();
+                count = routed.size();
+            }
+            int a = random.nextInt(count);
+            first = nthRouted(routed, ring, span, a);
+            second = nthRouted(routed, ring, span, nextOther(random, count, a));
+        } else {
+            int count = countListed(invokers, ring, width);
+            boolean inside = count > 0;
+            if (!inside) {
+                count = invokers.size();
+            }
+            int a = random.nextInt(count);
+            first = nthListed(invokers, ring, width, inside, a);
+            second = nthListed(invokers, ring, width, inside, nextOther(random, count, a));
+        }
+
+        int firstActive = ring.statuses[first].getActive();
+        int secondActive = ring.statuses[second].getActive();
+        ring.adjust((firstActive + secondActive) / 2.0, minAperture, lowLoad, highLoad);
+
+        int selected;
+        if (firstActive == secondActive) {
+            selected = random.nextBoolean() ? first : second;
+        } else {
+            selected = firstActive < secondActive ? first : second;
+        }
+        return (Invoker<T>) ring.invokers[selected];
+    }
+
+    /**
+     * @return a random index in [0, bound) other than {@code taken}, or {@code taken} if it is the only one
+     */
+    private static int nextOther(ThreadLocalRandom random, int bound, int taken) {
+        if (bound == 1) {
+            return taken;
+        }
+        int other = random.nextInt(bound - 1);
+        return other >= taken ? other + 1 : other;
+    }
+
+    /**
+     * @return the number of routed providers inside the aperture
+     */
+    private static int countRouted(BitList<?> routed, Ring ring, int width) {
+        int count = 0;
+        for (int i = 0; i < width; i++) {
+            if (routed.indexExist(ring.sourceIndexes[(ring.offset + i) % ring.size()])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the ring position of the n-th routed provider among the {@code span} ones starting at the aperture
+     */
+    private static int nthRouted(BitList<?> routed, Ring ring, int span, int n) {
+        for (int i = 0; i < span; i++) {
+            int position = (ring.offset + i) % ring.size();
+            if (routed.indexExist(ring.sourceIndexes[position]) && n-- == 0) {
+                return position;
+            }
+        }
+        throw new IllegalStateException("Routed providers changed during selection");
+    }
+
+    /**
+     * Selection from a list the ring is not built from, e.g. one with a tail list, looks every invoker up.
+     *
+     * @return the number of listed providers inside the aperture, or -1 if one of them is not on the ring
+     */
+    private static <T> int countListed(List<Invoker<T>> invokers, Ring ring, int width) {
+        int count = 0;
+        for (Invoker<T> invoker : invokers) {
+            Integer position = ring.positions.get(invoker);
+            if (position == null) {
+                return -1;
+            }
+            if (ring.inAperture(position, width)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the ring position of the n-th listed provider, counting only the ones inside the aperture if
+     * {@code inside} is set
+     */
+    private static <T> int nthListed(List<Invoker<T>> invokers, Ring ring, int width, boolean inside, int n) {
+        for (Invoker<T> invoker : invokers) {
+            int position = ring.positions.get(invoker);
+            if ((!inside || ring.inAperture(position, width)) && n-- == 0) {
+                return position;
+            }
+        }
+        throw new IllegalStateException("Listed providers changed during selection");
+    }
+
+    /**
+     * @return the directory's origin list for a {@link BitList}, or the given list itself
+     */
+    private static <T> List<?> getSource(List<Invoker<T>> invokers) {
+        if (invokers instanceof BitList && !((BitList<Invoker<T>>) invokers).hasMoreElementInTailList()) {
+            return ((BitList<Invoker<T>>) invokers).getOriginList();
+        }
+        return invokers;
+    }
+
+    private <T> Ring getRing(List<Invoker<T>> invokers, List<?> source, URL url, String serviceKey, int minAperture,
+                             boolean rebuild) {
+        String key = serviceKey == null ? "" : serviceKey;
+        ServiceRings serviceRings = rings.computeIfAbsent(key, k -> new ServiceRings());
+        Ring ring = rebuild ? null : serviceRings.find(source, source == invokers ? invokers.get(0) : null);
+        if (ring == null) {
+            ring = serviceRings.rebuild(source, coordinate(url, key), minAperture);
+        }
+        return ring;
+    }
+
+    /**
+     * @return the current aperture of the given service, or 0 if it has not been selected yet
+     */
+    public int getAperture(String serviceKey) {
+        ServiceRings serviceRings = rings.get(serviceKey);
+        Ring[] entries = serviceRings == null ? new Ring[0] : serviceRings.entries;
+        return entries.length == 0 ? 0 : entries[0].aperture.get();
+    }
+}
@@ -21,14 +21,17 @@ import org.apache.dubbo.common.utils.CollectionUtils;
 import org.apache.dubbo.rpc.Invocation;
 import org.apache.dubbo.rpc.Invoker;
 import org.apache.dubbo.rpc.RpcStatus;
+import org.apache.dubbo.rpc.cluster.router.state.BitList;
 import org.apache.dubbo.rpc.model.ApplicationModel;
 import org.apache.dubbo.rpc.model.ScopeModelAware;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>
@@ -38,6 +41,8 @@ import java.util.concurrent.locks.ReentrantLock;
  * supplied `decayTime`.
  * if there are multiple invokers and the same cost,then randomly called,which doesn't care
  * about weight.
+ * With `peakewma.p2c=true` only two random invokers are compared per selection (power of two choices),
+ * the same way Finagle combines P2C with Peak EWMA.
  * <p>
  * Inspiration drawn from:
  * https://github.com/twitter/finagle/blob/1bc837c4feafc0096e43c0e98516a8e1c50c4421
@@ -49,6 +54,14 @@ public class PeakEwmaLoadBalance extends AbstractLoadBalance implements ScopeMod
 
     private static final String PEAK_EWMA_DECAY_TIME = "peakEwmaDecayTime";
 
+    private static final String PEAK_EWMA_METRIC_IDLE_TIME = "peakEwmaMetricIdleTime";
+
+    // select between two random invokers instead of scanning all of them
+    public static final String PEAK_EWMA_P2C = "peakewma.p2c";
+
+    // random origin list positions tried per choice before falling back to positional access
+    private static final int P2C_SAMPLE_TRIES = 16;
+
     private static final double PENALTY = Long.MAX_VALUE >> 16;
 
     //double precision
@@ -57,92 +70,367 @@ public class PeakEwmaLoadBalance extends AbstractLoadBalance implements ScopeMod
     // The mean lifetime of `cost`, it reaches its half-life after decayTime*ln(2).
     private static double decayTime;
 
+    // Metrics of a service method that has not been selected for this long are evicted.
+    private long metricIdleTime = 600_000;
+
     @Override
     public void setApplicationModel(ApplicationModel applicationModel) {
         decayTime = applicationModel.getModelEnvironment().getConfiguration().getInt(PEAK_EWMA_DECAY_TIME, 10_000);
+        metricIdleTime = applicationModel.getModelEnvironment().getConfiguration().getInt(PEAK_EWMA_METRIC_IDLE_TIME, 600_000);
     }
 
-    private Map<RpcStatus, Metric> methodMap = CollectionUtils.newConcurrentHashMap();
+    // service key -> method name -> metrics of the invokers currently known for that method
+    private final Map<String, Map<String, MethodMetrics>> methodMap = CollectionUtils.newConcurrentHashMap();
 
-    protected static class Metric {
-        // last timestamp in Millis we observed an runningTime
-        private volatile long lastUpdateTime;
+    private final AtomicLong nextSweepTime = new AtomicLong(System.currentTimeMillis());
 
-        // ewma of rtt, sensitive to peaks.
-        private volatile double cost;
+    /**
+     * Metrics of one service method. Every directory referring the service publishes its own origin list, so
+     * one {@link InvokerMetrics} is held per list: a directory selecting does not rebuild the metrics of another
+     * one. Invokers belong to a single directory, so a new list replaces the held ones sharing invokers with it.
+     */
+    private static final class MethodMetrics {
+        private volatile InvokerMetrics[] entries = new InvokerMetrics[0];
+
+        /**
+         * @param first the first invoker of a plain invoker list, which is looked up instead of the list itself
+         */
+        InvokerMetrics find(List<?> source, Invoker<?> first) {
+            for (InvokerMetrics invokerMetrics : entries) {
+                if (invokerMetrics.isBuiltFrom(source) || (first != null && invokerMetrics.getMetric(first) != null)) {
+                    return invokerMetrics;
+                }
+            }
+            return null;
+        }
+
+        synchronized InvokerMetrics rebuild(List<?> source, String methodName) {
+            InvokerMetrics[] current = entries;
+            boolean[] replaced = new boolean[current.length];
+            InvokerMetrics invokerMetrics = new InvokerMetrics(source, methodName, current, replaced);
+            List<InvokerMetrics> kept = new ArrayList<>(current.length + 1);
+            kept.add(invokerMetrics);
+            for (int i = 0; i < current.length; i++) {
+                if (!replaced[i]) {
+                    kept.add(current[i]);
+                }
+            }
+            entries = kept.toArray(new InvokerMetrics[0]);
+            return invokerMetrics;
+        }
+
+        synchronized boolean sweep(long expireTime) {
+            InvokerMetrics[] current = entries;
+            List<InvokerMetrics> kept = new ArrayList<>(current.length);
+            for (InvokerMetrics invokerMetrics : current) {
+                if (invokerMetrics.lastSelectTime >= expireTime) {
+                    kept.add(invokerMetrics);
+                }
+            }
+            if (kept.size() != current.length) {
+                entries = kept.toArray(new InvokerMetrics[0]);
+            }
+            return kept.isEmpty();
+        }
+
+        int size() {
+            int size = 0;
+            for (InvokerMetrics invokerMetrics : entries) {
+                size += invokerMetrics.size();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Per-method metrics of one invoker list, indexed by the invoker's position in the directory's
+     * {@link BitList} origin list (or in the given list when the caller does not pass a {@link BitList}).
+     * Instances are immutable once published, a changed invoker list produces a new instance which
+     * carries over the metrics of the invokers that are still present, so metrics of invokers removed
+     * by a directory notification are dropped together with the old instance.
+     */
+    protected static class InvokerMetrics {
+        private final List<?> source;
+
+        private volatile long lastSelectTime = System.currentTimeMillis();
 
+        private final Map<Invoker<?>, Integer> positions;
+
+        private final Invoker<?>[] invokers;
+
+        private final Metric[] metrics;
+
+        InvokerMetrics(List<?> source, String methodName, InvokerMetrics[] previous, boolean[] replaced) {
+            this.source = source;
+            this.positions = new IdentityHashMap<>(source.size());
+            this.invokers = new Invoker<?>[source.size()];
+            this.metrics = new Metric[source.size()];
+            int i = 0;
+            for (Object element : source) {
+                Invoker<?> invoker = (Invoker<?>) element;
+                Metric metric = null;
+                for (int j = 0; j < previous.length && metric == null; j++) {
+                    metric = previous[j].getMetric(invoker);
+                    if (metric != null) {
+                        replaced[j] = true;
+                    }
+                }
+                if (metric == null) {
+                    metric = new Metric(RpcStatus.getStatus(invoker.getUrl(), methodName));
+                }
+                positions.put(invoker, i);
+                invokers[i] = invoker;
+                metrics[i++] = metric;
+            }
+        }
+
+        boolean isBuiltFrom(List<?> source) {
+            return this.source == source;
+        }
+
+        Metric getMetric(Invoker<?> invoker) {
+            Integer position = positions.get(invoker);
+            return position == null ? null : metrics[position];
+        }
+
+        int size() {
+            return metrics.length;
+        }
+    }
+
+    protected static class Metric {
         // calculate running time And active num
-        private RpcStatus rpcStatus;
-        private long invokeOffset;
-        private long invokeElapsedOffset;
+        private final RpcStatus rpcStatus;
 
-        //lock for get and set cost
-        ReentrantLock ewmaLock = new ReentrantLock();
+        private final AtomicReference<Observation> observation;
 
         public Metric(RpcStatus rpcStatus) {
             this.rpcStatus = rpcStatus;
-            this.lastUpdateTime = System.currentTimeMillis();
-            this.cost = 0.0;
-            this.invokeOffset = 0;
-            this.invokeElapsedOffset = 0;
+            this.observation = new AtomicReference<>(new Observation(System.currentTimeMillis(), 0.0,
+                rpcStatus.getSucceeded(), rpcStatus.getSucceededElapsed()));
         }
 
-        private void observe() {
+        private Observation observe(Observation last) {
+            long succeeded = rpcStatus.getSucceeded();
+            long succeededElapsed = rpcStatus.getSucceededElapsed();
+            final long currentTime = System.currentTimeMillis();
+            if (currentTime == last.lastUpdateTime && succeeded == last.invokeOffset) {
+                return last;
+            }
+
             double rtt = 0;
-            long succeed = this.rpcStatus.getSucceeded() - this.invokeOffset;
+            long succeed = succeeded - last.invokeOffset;
             if (succeed != 0) {
-                rtt = (this.rpcStatus.getSucceededElapsed() * 1.0 - this.invokeElapsedOffset) / succeed;
+                rtt = (succeededElapsed * 1.0 - last.invokeElapsedOffset) / succeed;
             }
 
-            final long currentTime = System.currentTimeMillis();
-            long td = Math.max(currentTime - lastUpdateTime, 0);
+            long td = Math.max(currentTime - last.lastUpdateTime, 0);
             double w = Math.exp(-td / decayTime);
-            if (rtt > cost) {
-                cost = rtt;
-            } else {
-                cost = cost * w + rtt * (1.0 - w);
-            }
-
-            lastUpdateTime = currentTime;
-            invokeOffset = rpcStatus.getTotal();
-            invokeElapsedOffset = rpcStatus.getTotalElapsed();
+            double cost = rtt > last.cost ? rtt : last.cost * w + rtt * (1.0 - w);
+            return new Observation(currentTime, cost, succeeded, succeededElapsed);
         }
 
         private double getCost() {
-            ewmaLock.lock();
-            observe();
+            Observation last = observation.get();
+            Observation current = observe(last);
+            if (current != last && !observation.compareAndSet(last, current)) {
+                // another thread has just folded in the same samples, use its result instead of retrying
+                current = observation.get();
+            }
             int active = rpcStatus.getActive();
-            ewmaLock.unlock();
 
-            double costTemp = cost;
+            double costTemp = current.cost;
 
             //If we don't have any latency history, we penalize the host on the first probe.
             return (costTemp < ZERO_COST && active != 0) ? PENALTY + active : costTemp * (active + 1);
         }
     }
 
+    /**
+     * Immutable EWMA state, swapped atomically so that concurrent selections never block each other.
+     */
+    private static final class Observation {
+        // last timestamp in Millis we observed an runningTime
+        private final long lastUpdateTime;
+
+        // ewma of rtt, sensitive to peaks.
+        private final double cost;
+
+        private final long invokeOffset;
+
+        private final long invokeElapsedOffset;
+
+        private Observation(long lastUpdateTime, double cost, long invokeOffset, long invokeElapsedOffset) {
+            this.lastUpdateTime = lastUpdateTime;
+            this.cost = cost;
+            this.invokeOffset = invokeOffset;
+            this.invokeElapsedOffset = invokeElapsedOffset;
+        }
+    }
+
     @Override
     protected <T> Invoker<T> doSelect(List<Invoker<T>> invokers, URL url, Invocation invocation) {
-        int length = invokers.size();
-        double minResponse = Double.MAX_VALUE;
+        String methodName = invocation.getMethodName();
+        List<?> source = getSource(invokers);
+        InvokerMetrics invokerMetrics = getInvokerMetrics(invokers, source, methodName, false);
+        if (invokers.get(0).getUrl().getMethodParameter(methodName, PEAK_EWMA_P2C, false)) {
+            return selectByP2c(invokers, source, methodName, invokerMetrics);
+        }
 
-        List<Integer> selectInvokerIndexList = new ArrayList<>(invokers.size());
-        for (int i = 0; i < length; i++) {
-            Invoker<T> invoker = invokers.get(i);
-            RpcStatus rpcStatus = RpcStatus.getStatus(invoker.getUrl(), invocation.getMethodName());
-            Metric metric = methodMap.computeIfAbsent(rpcStatus, Metric::new);
+        double minResponse = Double.MAX_VALUE;
+        Invoker<T> selected = null;
+        int sameCostCount = 0;
+        // iterate instead of get(i), positional access on a BitList walks its bit set
+        for (Invoker<T> invoker : invokers) {
+            Metric metric = invokerMetrics.getMetric(invoker);
+            if (metric == null) {
+                invokerMetrics = getInvokerMetrics(invokers, source, methodName, true);
+                metric = invokerMetrics.getMetric(invoker);
+            }
 
             // calculate the estimated response time from the product of active connections and succeeded average elapsed time.
             double estimateResponse = metric.getCost();
             if (estimateResponse < minResponse) {
-                selectInvokerIndexList.clear();
-                selectInvokerIndexList.add(i);
+                selected = invoker;
+                sameCostCount = 1;
                 minResponse = estimateResponse;
-            } else if (estimateResponse == minResponse) {
-                selectInvokerIndexList.add(i);
+            } else if (estimateResponse == minResponse
+                && ThreadLocalRandom.current().nextInt(++sameCostCount) == 0) {
+                // reservoir sampling keeps the choice uniform among invokers of the same cost
+                selected = invoker;
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * Power of two choices: compare two distinct random invokers and pick the one with the lower cost,
+     * which keeps selection O(1) however large the invoker list is.
+     * <p>
+     * A routed {@link BitList} is sampled by position in its origin list, positional access on the
+     * {@link BitList} itself walks its bit set.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Invoker<T> selectByP2c(List<Invoker<T>> invokers, List<?> source, String methodName,
+                                       InvokerMetrics invokerMetrics) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (source != invokers) {
+            BitList<Invoker<T>> routed = (BitList<Invoker<T>>) invokers;
+            int first = sampleIndex(routed, invokerMetrics.size(), -1, random);
+            int second = first < 0 ? -1 : sampleIndex(routed, invokerMetrics.size(), first, random);
+            if (second >= 0) {
+                return (Invoker<T>) choose(invokerMetrics.invokers[first], invokerMetrics.metrics[first],
+                    invokerMetrics.invokers[second], invokerMetrics.metrics[second], random);
             }
+            // too few of the origin invokers are routed to hit them by sampling
         }
 
-        return invokers.get(selectInvokerIndexList.get(ThreadLocalRandom.current().nextInt(selectInvokerIndexList.size())));
+        int length = invokers.size();
+        int first = random.nextInt(length);
+        int second = random.nextInt(length - 1);
+        if (second >= first) {
+            second++;
+        }
+        Invoker<T> firstInvoker = invokers.get(first);
+        Invoker<T> secondInvoker = invokers.get(second);
+
+        Metric firstMetric = invokerMetrics.getMetric(firstInvoker);
+        Metric secondMetric = invokerMetrics.getMetric(secondInvoker);
+        if (firstMetric == null || secondMetric == null) {
+            invokerMetrics = getInvokerMetrics(invokers, source, methodName, true);
+            firstMetric = invokerMetrics.getMetric(firstInvoker);
+            secondMetric = invokerMetrics.getMetric(secondInvoker);
+        }
+        return (Invoker<T>) choose(firstInvoker, firstMetric, secondInvoker, secondMetric, random);
+    }
+
+    /**
+     * @return a random origin list position routed in {@code invokers} other than {@code exclude},
+     * or -1 if none was hit within {@link #P2C_SAMPLE_TRIES} tries
+     */
+    private static int sampleIndex(BitList<?> invokers, int originSize, int exclude, ThreadLocalRandom random) {
+        for (int i = 0; i < P2C_SAMPLE_TRIES; i++) {
+            int index = random.nextInt(originSize);
+            if (index != exclude && invokers.indexExist(index)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static Invoker<?> choose(Invoker<?> firstInvoker, Metric firstMetric,
+                                     Invoker<?> secondInvoker, Metric secondMetric, ThreadLocalRandom random) {
+        double firstCost = firstMetric.getCost();
+        double secondCost = secondMetric.getCost();
+        if (firstCost == secondCost) {
+            return random.nextBoolean() ? firstInvoker : secondInvoker;
+        }
+        return firstCost < secondCost ? firstInvoker : secondInvoker;
+    }
+
+    /**
+     * @return the directory's origin list for a {@link BitList}, or the given list itself
+     */
+    private static <T> List<?> getSource(List<Invoker<T>> invokers) {
+        if (invokers instanceof BitList && !((BitList<Invoker<T>>) invokers).hasMoreElementInTailList()) {
+            return ((BitList<Invoker<T>>) invokers).getOriginList();
+        }
+        return invokers;
+    }
+
+    /**
+     * Metrics are rebuilt when the directory publishes a new origin list, or on demand when a plain
+     * (non {@link BitList}) invoker list contains an invoker that has not been indexed yet.
+     */
+    private <T> InvokerMetrics getInvokerMetrics(List<Invoker<T>> invokers, List<?> source, String methodName,
+                                                 boolean rebuild) {
+        long now = System.currentTimeMillis();
+        sweepIdleMetrics(now);
+
+        String serviceKey = invokers.get(0).getUrl().getServiceKey();
+        Map<String, MethodMetrics> serviceMetrics = methodMap.computeIfAbsent(serviceKey == null ? "" : serviceKey,
+            k -> CollectionUtils.newConcurrentHashMap());
+        MethodMetrics methodMetrics = serviceMetrics.computeIfAbsent(methodName, k -> new MethodMetrics());
+        InvokerMetrics invokerMetrics = rebuild ? null
+            : methodMetrics.find(source, source == invokers ? invokers.get(0) : null);
+        if (invokerMetrics == null) {
+            invokerMetrics = methodMetrics.rebuild(source, methodName);
+        } else if (invokerMetrics.lastSelectTime != now) {
+            invokerMetrics.lastSelectTime = now;
+        }
+        return invokerMetrics;
+    }
+
+    /**
+     * Evicts the metrics of service methods that have not been selected within {@code metricIdleTime}.
+     * Runs at most once per half idle period, on whichever selecting thread claims the sweep.
+     */
+    private void sweepIdleMetrics(long now) {
+        long sweepTime = nextSweepTime.get();
+        if (now < sweepTime || !nextSweepTime.compareAndSet(sweepTime, now + Math.max(metricIdleTime / 2, 1))) {
+            return;
+        }
+        long expireTime = now - metricIdleTime;
+        for (Map.Entry<String, Map<String, MethodMetrics>> entry : methodMap.entrySet()) {
+            Map<String, MethodMetrics> serviceMetrics = entry.getValue();
+            serviceMetrics.entrySet().removeIf(methodEntry -> methodEntry.getValue().sweep(expireTime));
+            if (serviceMetrics.isEmpty()) {
+                methodMap.remove(entry.getKey(), serviceMetrics);
+            }
+        }
+    }
+
+    /**
+     * @return the number of invoker metrics currently held, across all services and methods
+     */
+    public int getMetricCount() {
+        int count = 0;
+        for (Map<String, MethodMetrics> serviceMetrics : methodMap.values()) {
+            for (MethodMetrics methodMetrics : serviceMetrics.values()) {
+                count += methodMetrics.size();
+            }
+        }
+        return count;
     }
 }
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.loadbalance;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.apache.dubbo.rpc.RpcStatus;
+import org.apache.dubbo.rpc.cluster.router.state.BitList;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * ApertureLoadBalanceTest
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class ApertureLoadBalanceTest {
+
+    private static final int PROVIDER_NUM = 20;
+
+    private final List<Invoker<ApertureLoadBalanceTest>> invokers = new ArrayList<>();
+
+    private RpcInvocation invocation;
+
+    @BeforeEach
+    public void setUp() {
+        invocation = new RpcInvocation();
+        invocation.setMethodName("aperture");
+        for (int i = 0; i < PROVIDER_NUM; i++) {
+            Invoker<ApertureLoadBalanceTest> invoker = mock(Invoker.class, Mockito.withSettings().stubOnly());
+            given(invoker.isAvailable()).willReturn(true);
+            given(invoker.getInterface()).willReturn(ApertureLoadBalanceTest.class);
+            given(invoker.getUrl()).willReturn(
+                URL.valueOf("aperture://127.0.0." + (i + 1) + ":20880/ApertureService?aperture.min=3"));
+            invokers.add(invoker);
+        }
+    }
+
+    @Test
+    public void testSelectInsideAperture() {
+        ApertureLoadBalance lb = new ApertureLoadBalance();
+        BitList<Invoker<ApertureLoadBalanceTest>> bitList = new BitList<>(invokers);
+
+        Set<Invoker<ApertureLoadBalanceTest>> selected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            selected.add(lb.select(bitList, null, invocation));
+        }
+        Assertions.assertEquals(3, selected.size());
+        Assertions.assertEquals(3, lb.getAperture("ApertureService"));
+
+        // the aperture is deterministic, a new instance of the same consumer picks the same subset
+        ApertureLoadBalance another = new ApertureLoadBalance();
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(selected.contains(another.select(bitList, null, invocation)));
+        }
+    }
+
+    @Test
+    public void testWidenUnderLoad() {
+        ApertureLoadBalance lb = new ApertureLoadBalance();
+        BitList<Invoker<ApertureLoadBalanceTest>> bitList = new BitList<>(invokers);
+        for (Invoker<ApertureLoadBalanceTest> invoker : invokers) {
+            for (int i = 0; i < 5; i++) {
+                RpcStatus.beginCount(invoker.getUrl(), invocation.getMethodName());
+            }
+        }
+        try {
+            for (int i = 0; i < 1000; i++) {
+                lb.select(bitList, null, invocation);
+            }
+            Assertions.assertEquals(PROVIDER_NUM, lb.getAperture("ApertureService"));
+        } finally {
+            for (Invoker<ApertureLoadBalanceTest> invoker : invokers) {
+                for (int i = 0; i < 5; i++) {
+                    RpcStatus.endCount(invoker.getUrl(), invocation.getMethodName(), 1, true);
+                }
+            }
+        }
+
+        // load is gone, the aperture narrows back to the minimum
+        for (int i = 0; i < 1000; i++) {
+            lb.select(bitList, null, invocation);
+        }
+        Assertions.assertEquals(3, lb.getAperture("ApertureService"));
+    }
+
+    @Test
+    public void testSelectFromRoutedBitList() {
+        ApertureLoadBalance lb = new ApertureLoadBalance();
+        BitList<Invoker<ApertureLoadBalanceTest>> bitList = new BitList<>(invokers);
+        Set<Invoker<ApertureLoadBalanceTest>> aperture = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            aperture.add(lb.select(bitList, null, invocation));
+        }
+
+        // routers filter the whole aperture out, the remaining providers are used
+        BitList<Invoker<ApertureLoadBalanceTest>> routed = bitList.clone();
+        routed.removeAll(aperture);
+        for (int i = 0; i < 100; i++) {
+            Invoker<ApertureLoadBalanceTest> selected = lb.select(routed, null, invocation);
+            Assertions.assertFalse(aperture.contains(selected));
+        }
+    }
+
+    @Test
+    public void testSelectFromPartlyRoutedAperture() {
+        ApertureLoadBalance lb = new ApertureLoadBalance();
+        BitList<Invoker<ApertureLoadBalanceTest>> bitList = new BitList<>(invokers);
+        Set<Invoker<ApertureLoadBalanceTest>> aperture = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            aperture.add(lb.select(bitList, null, invocation));
+        }
+
+        // one provider of the aperture routed out, the two others are still used
+        Invoker<ApertureLoadBalanceTest> removed = aperture.iterator().next();
+        BitList<Invoker<ApertureLoadBalanceTest>> routed = bitList.clone();
+        routed.remove(removed);
+        Set<Invoker<ApertureLoadBalanceTest>> selected = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            selected.add(lb.select(routed, null, invocation));
+        }
+        aperture.remove(removed);
+        Assertions.assertEquals(aperture, selected);
+    }
+
+    @Test
+    public void testDirectoriesOfSameServiceKeepRings() {
+        ApertureLoadBalance lb = new ApertureLoadBalance();
+        List<Invoker<ApertureLoadBalanceTest>> others = new ArrayList<>();
+        for (int i = 0; i < PROVIDER_NUM; i++) {
+            Invoker<ApertureLoadBalanceTest> invoker = mock(Invoker.class);
+            given(invoker.getUrl()).willReturn(
+                URL.valueOf("aperture://127.0.0." + (i + 1) + ":20880/ApertureService?aperture.min=3"));
+            others.add(invoker);
+        }
+        // two references of the same service, each directory holds its own invokers
+        BitList<Invoker<ApertureLoadBalanceTest>> directory1 = new BitList<>(others);
+        BitList<Invoker<ApertureLoadBalanceTest>> directory2 = new BitList<>(invokers);
+
+        lb.select(directory1, null, invocation);
+        lb.select(directory2, null, invocation);
+        Invoker<ApertureLoadBalanceTest> last = others.get(PROVIDER_NUM - 1);
+        int urlLookups = Mockito.mockingDetails(last).getInvocations().size();
+        for (int i = 0; i < 100; i++) {
+            lb.select(directory1, null, invocation);
+            lb.select(directory2, null, invocation);
+        }
+        // building a ring reads the url of every provider, so the ring of directory1 was not rebuilt
+        Assertions.assertEquals(urlLookups, Mockito.mockingDetails(last).getInvocations().size());
+    }
+
+    @Test
+    public void testConsumerIndexCoversEveryProvider() {
+        int consumers = 4;
+        Set<String> covered = new HashSet<>();
+        for (int index = 0; index < consumers; index++) {
+            List<Invoker<ApertureLoadBalanceTest>> providers = new ArrayList<>();
+            for (int i = 0; i < PROVIDER_NUM; i++) {
+                Invoker<ApertureLoadBalanceTest> invoker = mock(Invoker.class, Mockito.withSettings().stubOnly());
+                given(invoker.getUrl()).willReturn(URL.valueOf("aperture://127.0.0." + (i + 1)
+                    + ":20880/ApertureService?aperture.min=5&aperture.consumerCount=" + consumers
+                    + "&aperture.consumerIndex=" + index));
+                providers.add(invoker);
+            }
+            ApertureLoadBalance lb = new ApertureLoadBalance();
+            BitList<Invoker<ApertureLoadBalanceTest>> bitList = new BitList<>(providers);
+            Set<String> selected = new HashSet<>();
+            for (int i = 0; i < 1000; i++) {
+                selected.add(lb.select(bitList, null, invocation).getUrl().getAddress());
+            }
+            // consumer n talks to providers [5n, 5n + 5) of the ring, which is ordered by address
+            List<String> ring = new ArrayList<>();
+            for (Invoker<ApertureLoadBalanceTest> invoker : providers) {
+                ring.add(invoker.getUrl().getAddress());
+            }
+            Collections.sort(ring);
+            Assertions.assertEquals(new HashSet<>(ring.subList(index * 5, index * 5 + 5)), selected);
+            covered.addAll(selected);
+        }
+        Assertions.assertEquals(PROVIDER_NUM, covered.size());
+    }
+
+    @Test
+    public void testRandomApertureCoverage() {
+        int consumers = 200;
+        int width = 4;
+        int[] coverage = new int[PROVIDER_NUM];
+        for (int c = 0; c < consumers; c++) {
+            String identity = "10.0." + (c / 100) + "." + (c % 100) + ":" + (1000 + c) + "ApertureService";
+            int offset = (int) (ApertureLoadBalance.coordinate(identity) * PROVIDER_NUM);
+            for (int i = 0; i < width; i++) {
+                coverage[(offset + i) % PROVIDER_NUM]++;
+            }
+        }
+        // every provider is in some aperture, and none is far from the mean of consumers * width / providers
+        int mean = consumers * width / PROVIDER_NUM;
+        for (int count : coverage) {
+            Assertions.assertTrue(count >= mean / 2 && count <= mean * 2, "coverage " + count + ", mean " + mean);
+        }
+    }
+}
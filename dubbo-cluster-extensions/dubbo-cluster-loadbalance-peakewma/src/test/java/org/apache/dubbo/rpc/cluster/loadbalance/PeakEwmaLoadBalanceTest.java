@@ -16,14 +16,19 @@
  */
 package org.apache.dubbo.rpc.cluster.loadbalance;
 
+import org.apache.dubbo.common.URL;
 import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.RpcInvocation;
 import org.apache.dubbo.rpc.RpcStatus;
+import org.apache.dubbo.rpc.cluster.router.state.BitList;
 import org.apache.dubbo.rpc.model.ApplicationModel;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -33,6 +38,9 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
 /**
  * PeakEwmaLoadBalanceTest
  */
@@ -76,6 +84,134 @@ public class PeakEwmaLoadBalanceTest extends LoadBalanceBaseTest {
         Assertions.assertTrue(sumInvoker1.get() <= INVOKE_NUM);
     }
 
+    @Test
+    public void testSelectFromRoutedBitList() {
+        PeakEwmaLoadBalance lb = new PeakEwmaLoadBalance();
+        lb.setApplicationModel(ApplicationModel.defaultModel());
+
+        BitList<Invoker<LoadBalanceBaseTest>> all = new BitList<>(weightInvokersSR);
+        BitList<Invoker<LoadBalanceBaseTest>> routed = all.clone();
+        routed.remove(weightInvoker1);
+
+        for (int i = 0; i < 100; i++) {
+            Invoker<LoadBalanceBaseTest> selected = lb.select(routed, null, weightTestInvocation);
+            Assertions.assertNotSame(weightInvoker1, selected);
+        }
+        // the full list shares the same origin list, all invokers are still selectable
+        Assertions.assertNotNull(lb.select(all, null, weightTestInvocation));
+    }
+
+    @Test
+    public void testP2cAvoidsBusyInvoker() {
+        PeakEwmaLoadBalance lb = new PeakEwmaLoadBalance();
+        lb.setApplicationModel(ApplicationModel.defaultModel());
+
+        Invoker<LoadBalanceBaseTest> idle = mockInvoker("p2c1://127.0.0.1:21/DemoService?peakewma.p2c=true");
+        Invoker<LoadBalanceBaseTest> busy = mockInvoker("p2c2://127.0.0.1:22/DemoService?peakewma.p2c=true");
+        // busy has in-flight calls but no latency history, so it is penalized
+        RpcStatus.beginCount(busy.getUrl(), weightTestInvocation.getMethodName());
+        RpcStatus.beginCount(busy.getUrl(), weightTestInvocation.getMethodName());
+
+        List<Invoker<LoadBalanceBaseTest>> invokers = Arrays.asList(idle, busy);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertSame(idle, lb.select(invokers, null, weightTestInvocation));
+        }
+    }
+
+    @Test
+    public void testP2cSelectsFromRoutedBitList() {
+        PeakEwmaLoadBalance lb = new PeakEwmaLoadBalance();
+        lb.setApplicationModel(ApplicationModel.defaultModel());
+
+        List<Invoker<LoadBalanceBaseTest>> origin = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            origin.add(mockInvoker("p2cr" + i + "://127.0.0.1:" + (1000 + i) + "/DemoService?peakewma.p2c=true"));
+        }
+        BitList<Invoker<LoadBalanceBaseTest>> all = new BitList<>(origin);
+
+        // half of the invokers routed, reached by sampling origin list positions
+        BitList<Invoker<LoadBalanceBaseTest>> half = all.clone();
+        half.removeIf(invoker -> origin.indexOf(invoker) % 2 == 1);
+        for (int i = 0; i < 200; i++) {
+            Assertions.assertTrue(origin.indexOf(lb.select(half, null, weightTestInvocation)) % 2 == 0);
+        }
+
+        // only two invokers routed, too sparse to sample
+        BitList<Invoker<LoadBalanceBaseTest>> two = all.clone();
+        two.removeIf(invoker -> invoker != origin.get(3) && invoker != origin.get(97));
+        for (int i = 0; i < 200; i++) {
+            Invoker<LoadBalanceBaseTest> selected = lb.select(two, null, weightTestInvocation);
+            Assertions.assertTrue(selected == origin.get(3) || selected == origin.get(97));
+        }
+        Assertions.assertEquals(100, lb.getMetricCount());
+    }
+
+    @Test
+    public void testEvictMetrics() throws InterruptedException {
+        System.setProperty("peakEwmaMetricIdleTime", "100");
+        try {
+            PeakEwmaLoadBalance lb = new PeakEwmaLoadBalance();
+            lb.setApplicationModel(ApplicationModel.defaultModel());
+
+            lb.select(new BitList<>(weightInvokersSR), null, weightTestInvocation);
+            Assertions.assertEquals(3, lb.getMetricCount());
+
+            // directory notified without invoker5
+            BitList<Invoker<LoadBalanceBaseTest>> notified = new BitList<>(Arrays.asList(weightInvoker1, weightInvoker2));
+            lb.select(notified, null, weightTestInvocation);
+            Assertions.assertEquals(2, lb.getMetricCount());
+
+            TimeUnit.MILLISECONDS.sleep(200);
+            RpcInvocation otherInvocation = new RpcInvocation();
+            otherInvocation.setMethodName("other");
+            lb.select(notified, null, otherInvocation);
+            // metrics of the idle method are swept, only the ones of "other" are left
+            Assertions.assertEquals(2, lb.getMetricCount());
+            lb.select(notified, null, weightTestInvocation);
+            Assertions.assertEquals(4, lb.getMetricCount());
+        } finally {
+            System.clearProperty("peakEwmaMetricIdleTime");
+        }
+    }
+
+    @Test
+    public void testDirectoriesOfSameServiceKeepMetrics() {
+        PeakEwmaLoadBalance lb = new PeakEwmaLoadBalance();
+        lb.setApplicationModel(ApplicationModel.defaultModel());
+
+        String slowUrl = "dirs1://127.0.0.1:31/DemoService";
+        String fastUrl = "dirs2://127.0.0.1:32/DemoService";
+        // two references of the same service, each directory holds its own invokers
+        Invoker<LoadBalanceBaseTest> slow = mockInvoker(slowUrl);
+        Invoker<LoadBalanceBaseTest> fast = mockInvoker(fastUrl);
+        BitList<Invoker<LoadBalanceBaseTest>> directory1 = new BitList<>(Arrays.asList(slow, fast));
+        BitList<Invoker<LoadBalanceBaseTest>> directory2 =
+            new BitList<>(Arrays.asList(mockInvoker(slowUrl), mockInvoker(fastUrl)));
+
+        lb.select(directory1, null, weightTestInvocation);
+        lb.select(directory2, null, weightTestInvocation);
+        String methodName = weightTestInvocation.getMethodName();
+        RpcStatus.beginCount(slow.getUrl(), methodName);
+        RpcStatus.endCount(slow.getUrl(), methodName, 1_000, true);
+        RpcStatus.beginCount(fast.getUrl(), methodName);
+        RpcStatus.endCount(fast.getUrl(), methodName, 1, true);
+
+        for (int i = 0; i < 50; i++) {
+            // selecting from the other directory must not reset the latency history of the first one
+            lb.select(directory2, null, weightTestInvocation);
+            Assertions.assertSame(fast, lb.select(directory1, null, weightTestInvocation));
+        }
+        Assertions.assertEquals(4, lb.getMetricCount());
+    }
+
+    private Invoker<LoadBalanceBaseTest> mockInvoker(String url) {
+        Invoker<LoadBalanceBaseTest> invoker = mock(Invoker.class, Mockito.withSettings().stubOnly());
+        given(invoker.isAvailable()).willReturn(true);
+        given(invoker.getInterface()).willReturn(LoadBalanceBaseTest.class);
+        given(invoker.getUrl()).willReturn(URL.valueOf(url));
+        return invoker;
+    }
+
     private Callable<Boolean> getTask(boolean needShake) {
         PeakEwmaLoadBalance lb = new PeakEwmaLoadBalance();
         lb.setApplicationModel(ApplicationModel.defaultModel());
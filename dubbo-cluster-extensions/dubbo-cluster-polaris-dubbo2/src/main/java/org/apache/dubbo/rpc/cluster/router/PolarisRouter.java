@@ -37,10 +37,14 @@ import org.apache.dubbo.rpc.RpcException;
 import org.apache.dubbo.rpc.cluster.Constants;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PolarisRouter extends AbstractRouter {
 
@@ -52,6 +56,10 @@ public class PolarisRouter extends AbstractRouter {
 
     private final QueryParser parser;
 
+    private volatile InstanceSnapshot instanceSnapshot = InstanceSnapshot.EMPTY;
+
+    private volatile RouteLabels routeLabels = RouteLabels.EMPTY;
+
     public PolarisRouter(URL url) {
         super(url);
         LOGGER.info(String.format("[POLARIS] init service router, url is %s, parameters are %s", url,
@@ -63,6 +71,22 @@ public class PolarisRouter extends AbstractRouter {
         this.parser = QueryParser.load();
     }
 
+    @Override
+    public <T> void notify(List<Invoker<T>> invokers) {
+        if (null == polarisOperator) {
+            return;
+        }
+        if (null == invokers || invokers.isEmpty()) {
+            // drop the wrappers of the providers gone
+            instanceSnapshot = InstanceSnapshot.EMPTY;
+            return;
+        }
+        if (invokers.get(0) instanceof Instance) {
+            return;
+        }
+        instanceSnapshot = new InstanceSnapshot(invokers, instanceSnapshot, getNamespace());
+    }
+
     @Override
     public <T> List<Invoker<T>> route(List<Invoker<T>> invokers, URL url, Invocation invocation) throws RpcException {
         if (null == invokers || invokers.size() == 0) {
@@ -75,42 +99,165 @@ public class PolarisRouter extends AbstractRouter {
         if (invokers.get(0) instanceof Instance) {
             instances = (List<Instance>) ((List<?>) invokers);
         } else {
-            instances = new ArrayList<>();
-            for (Invoker<T> invoker : invokers) {
-                instances.add(new InstanceInvoker<>(invoker, polarisOperator.getPolarisConfig().getNamespace()));
-            }
+            instances = getInstances(invokers);
         }
 
         String service = url.getServiceInterface();
         ServiceRule serviceRule = polarisOperator.getServiceRule(service, EventType.ROUTING);
-        Object ruleObject = serviceRule.getRule();
-        Set<RouteArgument> arguments = new HashSet<>();
-        if (null != ruleObject) {
-            RoutingProto.Routing routing = (RoutingProto.Routing) ruleObject;
-            Set<String> routeLabels = routeRuleHandler.getRouteLabels(routing);
+        RouteLabels labels = getRouteLabels(serviceRule.getRule());
+        // the arguments are copied by the operator, so the shared path argument set is handed over as is
+        Set<RouteArgument> arguments = labels.path
+            ? labels.getPathArguments(invocation.getMethodName()) : Collections.emptySet();
+        Set<RouteArgument> extraArguments = null;
+        for (String headerName : labels.headerNames) {
+            String value = RpcContext.getContext().getAttachment(headerName);
+            if (!StringUtils.isBlank(value)) {
+                extraArguments = null == extraArguments ? new HashSet<>(arguments) : extraArguments;
+                extraArguments.add(RouteArgument.buildHeader(headerName, value));
+            }
+        }
+        for (String queryName : labels.queryNames) {
+            Optional<String> queryValue = parser.parse(queryName, invocation.getArguments());
+            if (queryValue.isPresent()) {
+                extraArguments = null == extraArguments ? new HashSet<>(arguments) : extraArguments;
+                extraArguments.add(RouteArgument.buildQuery(queryName, queryValue.get()));
+            }
+        }
+        if (null != extraArguments) {
+            arguments = extraArguments;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(String.format("[POLARIS] list service %s, method %s, labels %s, url %s", service,
+                invocation.getMethodName(), arguments, url));
+        }
+        List<Instance> resultInstances = polarisOperator.route(service, invocation.getMethodName(), arguments, instances);
+        return (List<Invoker<T>>) ((List<?>) resultInstances);
+    }
+
+    private String getNamespace() {
+        return polarisOperator.getPolarisConfig().getNamespace();
+    }
+
+    /**
+     * Wrap the invokers into instances, reusing the wrappers of the last notified invokers.
+     */
+    private <T> List<Instance> getInstances(List<Invoker<T>> invokers) {
+        InstanceSnapshot snapshot = instanceSnapshot;
+        if (snapshot.isSameInvokers(invokers)) {
+            return snapshot.instances;
+        }
+        List<Instance> instances = new ArrayList<>(invokers.size());
+        for (Invoker<T> invoker : invokers) {
+            Instance instance = snapshot.wrappers.get(invoker);
+            if (null == instance) {
+                // not notified yet, wrapped for this call only so the snapshot keeps following notify
+                instance = new InstanceInvoker<>(invoker, getNamespace());
+            }
+            instances.add(instance);
+        }
+        return instances;
+    }
+
+    private RouteLabels getRouteLabels(Object ruleObject) {
+        RouteLabels labels = routeLabels;
+        if (labels.rule != ruleObject) {
+            labels = new RouteLabels(ruleObject, null == ruleObject ? Collections.emptySet()
+                : routeRuleHandler.getRouteLabels((RoutingProto.Routing) ruleObject));
+            routeLabels = labels;
+        }
+        return labels;
+    }
+
+    /**
+     * Invokers of the last notify and their instance wrappers.
+     */
+    private static class InstanceSnapshot {
+
+        private static final InstanceSnapshot EMPTY = new InstanceSnapshot();
+
+        private final List<?> invokers;
+
+        private final List<Instance> instances;
+
+        private final Map<Invoker<?>, Instance> wrappers;
+
+        private InstanceSnapshot() {
+            this.invokers = Collections.emptyList();
+            this.instances = Collections.emptyList();
+            this.wrappers = Collections.emptyMap();
+        }
+
+        private <T> InstanceSnapshot(List<Invoker<T>> invokers, InstanceSnapshot previous, String namespace) {
+            List<Instance> instances = new ArrayList<>(invokers.size());
+            Map<Invoker<?>, Instance> wrappers = new IdentityHashMap<>(invokers.size());
+            for (Invoker<T> invoker : invokers) {
+                Instance instance = previous.wrappers.get(invoker);
+                if (null == instance) {
+                    instance = new InstanceInvoker<>(invoker, namespace);
+                }
+                instances.add(instance);
+                wrappers.put(invoker, instance);
+            }
+            this.invokers = new ArrayList<>(invokers);
+            this.instances = Collections.unmodifiableList(instances);
+            this.wrappers = wrappers;
+        }
+
+        private boolean isSameInvokers(List<?> invokers) {
+            int size = invokers.size();
+            if (size != this.invokers.size()) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (invokers.get(i) != this.invokers.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Route labels of a routing rule, split by kind.
+     */
+    private static class RouteLabels {
+
+        private static final RouteLabels EMPTY = new RouteLabels(null, Collections.emptySet());
+
+        private final Object rule;
+
+        private final boolean path;
+
+        private final List<String> headerNames = new ArrayList<>();
+
+        private final List<String> queryNames = new ArrayList<>();
+
+        private final Map<String, Set<RouteArgument>> pathArguments = new ConcurrentHashMap<>();
+
+        private RouteLabels(Object rule, Set<String> routeLabels) {
+            this.rule = rule;
+            boolean path = false;
             for (String routeLabel : routeLabels) {
                 if (StringUtils.equals(RouteArgument.LABEL_KEY_PATH, routeLabel)) {
-                    arguments.add(RouteArgument.buildPath(invocation.getMethodName()));
+                    path = true;
                 } else if (routeLabel.startsWith(RouteArgument.LABEL_KEY_HEADER)) {
-                    String headerName = routeLabel.substring(RouteArgument.LABEL_KEY_HEADER.length());
-                    String value = RpcContext.getContext().getAttachment(headerName);
-                    if (!StringUtils.isBlank(value)) {
-                        arguments.add(RouteArgument.buildHeader(headerName, value));
-                    }
+                    headerNames.add(routeLabel.substring(RouteArgument.LABEL_KEY_HEADER.length()));
                 } else if (routeLabel.startsWith(RouteArgument.LABEL_KEY_QUERY)) {
                     String queryName = routeLabel.substring(RouteArgument.LABEL_KEY_QUERY.length());
                     if (!StringUtils.isBlank(queryName)) {
-                        Optional<String> queryValue = parser.parse(queryName, invocation.getArguments());
-                        queryValue.ifPresent(value -> arguments.add(RouteArgument.buildQuery(queryName, value)));
+                        queryNames.add(queryName);
                     }
                 }
             }
+            this.path = path;
         }
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug(String.format("[POLARIS] list service %s, method %s, labels %s, url %s", service,
-                invocation.getMethodName(), arguments, url));
+
+        private Set<RouteArgument> getPathArguments(String methodName) {
+            if (null == methodName) {
+                return Collections.singleton(RouteArgument.buildPath(null));
+            }
+            return pathArguments.computeIfAbsent(methodName,
+                name -> Collections.singleton(RouteArgument.buildPath(name)));
         }
-        List<Instance> resultInstances = polarisOperator.route(service, invocation.getMethodName(), arguments, instances);
-        return (List<Invoker<T>>) ((List<?>) resultInstances);
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.router;
+
+import com.tencent.polaris.api.pojo.Instance;
+import com.tencent.polaris.api.pojo.ServiceRule;
+import com.tencent.polaris.common.registry.PolarisConfig;
+import com.tencent.polaris.common.registry.PolarisOperator;
+import com.tencent.polaris.common.registry.PolarisOperators;
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+class PolarisRouterTest {
+
+    private static final String REGISTRY_HOST = "127.0.0.1";
+
+    private static final int REGISTRY_PORT = 28091;
+
+    private final List<List<Instance>> routed = new ArrayList<>();
+
+    private final RpcInvocation invocation = new RpcInvocation();
+
+    private final URL consumerUrl = URL.valueOf("consumer://127.0.0.1/DemoService");
+
+    private PolarisRouter router;
+
+    @BeforeEach
+    void setup() {
+        PolarisConfig polarisConfig = mock(PolarisConfig.class);
+        when(polarisConfig.getRegistryAddress()).thenReturn(REGISTRY_HOST + ":" + REGISTRY_PORT);
+        when(polarisConfig.getNamespace()).thenReturn("default");
+        ServiceRule serviceRule = mock(ServiceRule.class);
+        PolarisOperator polarisOperator = mock(PolarisOperator.class);
+        when(polarisOperator.getPolarisConfig()).thenReturn(polarisConfig);
+        when(polarisOperator.getServiceRule(any(), any())).thenReturn(serviceRule);
+        when(polarisOperator.route(any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<Instance> instances = invocation.getArgument(3);
+            routed.add(instances);
+            return instances;
+        });
+        PolarisOperators.INSTANCE.addPolarisOperator(polarisOperator);
+        router = new PolarisRouter(URL.valueOf("polaris://" + REGISTRY_HOST + ":" + REGISTRY_PORT));
+        invocation.setMethodName("sayHello");
+    }
+
+    @AfterEach
+    void teardown() {
+        PolarisOperators.INSTANCE.deletePolarisOperator(REGISTRY_HOST, REGISTRY_PORT);
+    }
+
+    @Test
+    void testReuseNotifiedWrappers() {
+        List<Invoker<Object>> invokers = newInvokers(3);
+        router.notify(invokers);
+
+        router.route(invokers, consumerUrl, invocation);
+        router.route(new ArrayList<>(invokers), consumerUrl, invocation);
+        Assertions.assertSame(routed.get(0), routed.get(1));
+
+        // a routed subset is made of the notified wrappers
+        router.route(invokers.subList(1, 3), consumerUrl, invocation);
+        Assertions.assertSame(routed.get(0).get(1), routed.get(2).get(0));
+        Assertions.assertSame(routed.get(0).get(2), routed.get(2).get(1));
+    }
+
+    @Test
+    void testMissDoesNotReplaceSnapshot() {
+        List<Invoker<Object>> invokers = newInvokers(3);
+        router.notify(invokers.subList(0, 2));
+        router.route(invokers.subList(0, 2), consumerUrl, invocation);
+
+        // an invoker not notified yet is wrapped for the call only
+        router.route(invokers, consumerUrl, invocation);
+        Assertions.assertSame(routed.get(0).get(0), routed.get(1).get(0));
+        Assertions.assertSame(invokers.get(2), ((InstanceInvoker) routed.get(1).get(2)).getInvoker());
+        router.route(invokers, consumerUrl, invocation);
+        Assertions.assertNotSame(routed.get(1).get(2), routed.get(2).get(2));
+
+        // the notified list still hits the snapshot
+        router.route(invokers.subList(0, 2), consumerUrl, invocation);
+        Assertions.assertSame(routed.get(0), routed.get(3));
+    }
+
+    @Test
+    void testEmptyNotifyDropsWrappers() {
+        List<Invoker<Object>> invokers = newInvokers(2);
+        router.notify(invokers);
+        router.route(invokers, consumerUrl, invocation);
+
+        router.notify(Collections.emptyList());
+        router.route(invokers, consumerUrl, invocation);
+        Assertions.assertNotSame(routed.get(0).get(0), routed.get(1).get(0));
+    }
+
+    private List<Invoker<Object>> newInvokers(int size) {
+        Invoker<Object>[] invokers = new Invoker[size];
+        for (int i = 0; i < size; i++) {
+            invokers[i] = mock(Invoker.class);
+            when(invokers[i].getUrl()).thenReturn(URL.valueOf("dubbo://127.0.0." + (i + 1) + ":20880/DemoService"));
+        }
+        return Arrays.asList(invokers);
+    }
+}
@@ -22,12 +22,13 @@ import org.apache.dubbo.common.utils.StringUtils;
 import org.apache.dubbo.rpc.Invoker;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.VsDestinationGroup;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.destination.DestinationRule;
-import org.apache.dubbo.rpc.cluster.router.mesh.rule.destination.DestinationRuleSpec;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.destination.Subset;
 import org.apache.dubbo.rpc.cluster.router.state.BitList;
 
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -36,20 +37,44 @@ import java.util.Objects;
 import static org.apache.dubbo.rpc.cluster.router.mesh.route.MeshRuleConstants.INVALID_APP_NAME;
 
 public class MeshRuleCache<T> {
+    private final String protocolServiceKey;
     private final List<String> appList;
     private final Map<String, VsDestinationGroup> appToVDGroup;
     private final Map<String, Map<String, BitList<Invoker<T>>>> totalSubsetMap;
+
+    /**
+     * Backing bit sets of the lists in {@link #totalSubsetMap}, used to walk a subset by origin index
+     */
+    private final Map<String, Map<String, BitSet>> totalSubsetIndexes;
+
     private final BitList<Invoker<T>> unmatchedInvokers;
 
+    /**
+     * Origin indexes of the invokers of every ruled application and of the unmatched invokers, kept with the subset
+     * indexes so the next build can carry membership over. Only set when the cache was built from a whole origin
+     * list, the indexes of anything else do not describe every invoker.
+     */
+    private final Map<String, BitSet> appIndexes;
+
+    private final BitSet unmatchedIndexes;
+
     private MeshRuleCache(
+            String protocolServiceKey,
             List<String> appList,
             Map<String, VsDestinationGroup> appToVDGroup,
             Map<String, Map<String, BitList<Invoker<T>>>> totalSubsetMap,
-            BitList<Invoker<T>> unmatchedInvokers) {
+            Map<String, Map<String, BitSet>> totalSubsetIndexes,
+            BitList<Invoker<T>> unmatchedInvokers,
+            Map<String, BitSet> appIndexes,
+            BitSet unmatchedIndexes) {
+        this.protocolServiceKey = protocolServiceKey;
         this.appList = appList;
         this.appToVDGroup = appToVDGroup;
         this.totalSubsetMap = totalSubsetMap;
+        this.totalSubsetIndexes = totalSubsetIndexes;
         this.unmatchedInvokers = unmatchedInvokers;
+        this.appIndexes = appIndexes;
+        this.unmatchedIndexes = unmatchedIndexes;
     }
 
     public List<String> getAppList() {
@@ -83,6 +108,43 @@ public class MeshRuleCache<T> {
         return BitList.emptyList();
     }
 
+    /**
+     * Whether the subset has an invoker in {@code availableInvokers}. When both lists are backed by the same
+     * origin list this walks the subset's indexes instead of copying {@code availableInvokers} to intersect it.
+     */
+    public boolean hasAvailableInvokers(String appName, String subset, BitList<Invoker<T>> availableInvokers) {
+        BitList<Invoker<T>> subsetInvokers = getSubsetInvokers(appName, subset);
+        if (subsetInvokers.isEmpty() || availableInvokers.isEmpty()) {
+            return false;
+        }
+        Map<String, BitSet> subsetIndexes = totalSubsetIndexes.get(appName);
+        BitSet indexes = subsetIndexes == null ? null : subsetIndexes.get(subset);
+        List<Invoker<T>> originList = subsetInvokers.getOriginList();
+        if (availableInvokers.getOriginList() != originList) {
+            // indexes of different origin lists do not line up, compare the invokers themselves
+            for (Invoker<T> invoker : subsetInvokers) {
+                if (availableInvokers.contains(invoker)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (indexes == null
+                || subsetInvokers.hasMoreElementInTailList()
+                || availableInvokers.hasMoreElementInTailList()) {
+            return !availableInvokers.clone().and(subsetInvokers).isEmpty();
+        }
+        if (availableInvokers.size() == originList.size()) {
+            return true;
+        }
+        for (int index = indexes.nextSetBit(0); index >= 0; index = indexes.nextSetBit(index + 1)) {
+            if (availableInvokers.indexExist(index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public boolean containsRule() {
         return !totalSubsetMap.isEmpty();
     }
@@ -91,59 +153,300 @@ public class MeshRuleCache<T> {
             String protocolServiceKey,
             BitList<Invoker<T>> invokers,
             Map<String, VsDestinationGroup> vsDestinationGroupMap) {
+        return build(protocolServiceKey, invokers, vsDestinationGroupMap, null);
+    }
+
+    /**
+     * Build the cache for a new invoker list, reusing the subset membership computed by {@code previous}.
+     * <p>
+     * When both lists cover their whole origin list and the rules are the same, the two origin lists are compared by
+     * identity from both ends. The membership of the unchanged invokers at either end is carried over by index, and
+     * only the invokers in between, those added or moved, are looked at. Otherwise every invoker is visited, and
+     * labels are only evaluated for invokers that are new or whose application got a different
+     * {@link VsDestinationGroup}.
+     */
+    public static <T> MeshRuleCache<T> build(
+            String protocolServiceKey,
+            BitList<Invoker<T>> invokers,
+            Map<String, VsDestinationGroup> vsDestinationGroupMap,
+            MeshRuleCache<T> previous) {
         if (CollectionUtils.isNotEmptyMap(vsDestinationGroupMap)) {
-            BitList<Invoker<T>> unmatchedInvokers = new BitList<>(invokers.getOriginList(), true);
-            Map<String, Map<String, BitList<Invoker<T>>>> totalSubsetMap = new HashMap<>();
-
-            for (Invoker<T> invoker : invokers) {
-                String remoteApplication = invoker.getUrl().getRemoteApplication();
-                if (StringUtils.isEmpty(remoteApplication) || INVALID_APP_NAME.equals(remoteApplication)) {
-                    unmatchedInvokers.add(invoker);
-                    continue;
+            Builder<T> builder = new Builder<>(protocolServiceKey, invokers, vsDestinationGroupMap, previous);
+            if (!builder.addChanged()) {
+                builder.addAll(invokers);
+            }
+
+            return new MeshRuleCache<>(
+                    protocolServiceKey,
+                    new LinkedList<>(vsDestinationGroupMap.keySet()),
+                    Collections.unmodifiableMap(vsDestinationGroupMap),
+                    Collections.unmodifiableMap(builder.totalSubsetMap),
+                    builder.totalSubsetIndexes,
+                    builder.unmatchedInvokers,
+                    builder.wholeList ? builder.appIndexes : null,
+                    builder.wholeList ? builder.unmatchedIndexes : null);
+        } else {
+            return new MeshRuleCache<>(
+                    protocolServiceKey,
+                    Collections.emptyList(),
+                    Collections.emptyMap(),
+                    Collections.emptyMap(),
+                    Collections.emptyMap(),
+                    invokers,
+                    null,
+                    null);
+        }
+    }
+
+    private static class Builder<T> {
+        private final String protocolServiceKey;
+        private final List<Invoker<T>> originList;
+        private final Map<String, VsDestinationGroup> vsDestinationGroupMap;
+        private final MeshRuleCache<T> previous;
+
+        /**
+         * Whether the invokers are the whole origin list, so that the indexes describe every invoker
+         */
+        private final boolean wholeList;
+
+        private final BitSet unmatchedIndexes = new BitSet();
+        private final BitList<Invoker<T>> unmatchedInvokers;
+        private final Map<String, Map<String, BitList<Invoker<T>>>> totalSubsetMap = new HashMap<>();
+        private final Map<String, Map<String, BitSet>> totalSubsetIndexes = new HashMap<>();
+        private final Map<String, BitSet> appIndexes = new HashMap<>();
+
+        /**
+         * Where the invokers of the previous origin list that may show up again are, built on first use over
+         * [previousFrom, previousTo)
+         */
+        private Map<Invoker<T>, Integer> previousPositions;
+
+        private int previousFrom;
+        private int previousTo;
+
+        Builder(
+                String protocolServiceKey,
+                BitList<Invoker<T>> invokers,
+                Map<String, VsDestinationGroup> vsDestinationGroupMap,
+                MeshRuleCache<T> previous) {
+            this.protocolServiceKey = protocolServiceKey;
+            this.originList = invokers.getOriginList();
+            this.vsDestinationGroupMap = vsDestinationGroupMap;
+            this.previous = previous != null
+                            && Objects.equals(protocolServiceKey, previous.protocolServiceKey)
+                            && previous.appIndexes != null
+                    ? previous
+                    : null;
+            this.wholeList = !invokers.hasMoreElementInTailList() && invokers.size() == originList.size();
+            this.unmatchedInvokers = new BitList<>(originList, unmatchedIndexes, null);
+            if (this.previous != null) {
+                this.previousTo = this.previous.unmatchedInvokers.getOriginList().size();
+            }
+        }
+
+        void addAll(BitList<Invoker<T>> invokers) {
+            for (int index = 0; index < originList.size(); index++) {
+                if (invokers.indexExist(index)) {
+                    add(originList.get(index), index);
                 }
-                VsDestinationGroup vsDestinationGroup = vsDestinationGroupMap.get(remoteApplication);
-                if (vsDestinationGroup == null) {
-                    unmatchedInvokers.add(invoker);
-                    continue;
+            }
+            if (invokers.hasMoreElementInTailList()) {
+                for (Invoker<T> invoker : invokers.getTailList()) {
+                    add(invoker, -1);
                 }
-                Map<String, BitList<Invoker<T>>> subsetMap =
-                        totalSubsetMap.computeIfAbsent(remoteApplication, (k) -> new HashMap<>());
+            }
+        }
 
-                boolean matched = false;
+        /**
+         * Carry the membership of the invokers both origin lists share at their ends over, and add only the
+         * invokers in between.
+         *
+         * @return false if nothing can be carried over, every invoker has to be added
+         */
+        boolean addChanged() {
+            if (previous == null || !wholeList || !isSameRules()) {
+                return false;
+            }
+            List<Invoker<T>> previousList = previous.unmatchedInvokers.getOriginList();
+            int previousSize = previousList.size();
+            int size = originList.size();
+            int shared = Math.min(previousSize, size);
+            int prefix = 0;
+            while (prefix < shared && previousList.get(prefix) == originList.get(prefix)) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < shared - prefix
+                    && previousList.get(previousSize - 1 - suffix) == originList.get(size - 1 - suffix)) {
+                suffix++;
+            }
+            previousFrom = prefix;
+            previousTo = previousSize - suffix;
+
+            int shift = size - previousSize;
+            carry(previous.unmatchedIndexes, unmatchedIndexes, prefix, previousTo, shift);
+            for (Map.Entry<String, BitSet> app : previous.appIndexes.entrySet()) {
+                String appName = app.getKey();
+                Map<String, BitSet> subsetIndexes = getSubsetIndexes(appName, vsDestinationGroupMap.get(appName));
+                carry(app.getValue(), appIndexes.get(appName), prefix, previousTo, shift);
+                for (Map.Entry<String, BitSet> subset :
+                        previous.totalSubsetIndexes.get(appName).entrySet()) {
+                    carry(subset.getValue(), subsetIndexes.get(subset.getKey()), prefix, previousTo, shift);
+                }
+            }
+            for (int index = prefix; index < size - suffix; index++) {
+                add(originList.get(index), index);
+            }
+
+            // applications whose invokers are all gone
+            appIndexes.entrySet().removeIf(app -> {
+                if (app.getValue().isEmpty()) {
+                    totalSubsetMap.remove(app.getKey());
+                    totalSubsetIndexes.remove(app.getKey());
+                    return true;
+                }
+                return false;
+            });
+            return true;
+        }
+
+        private boolean isSameRules() {
+            Map<String, VsDestinationGroup> previousGroups = previous.appToVDGroup;
+            if (previousGroups.size() != vsDestinationGroupMap.size()) {
+                return false;
+            }
+            for (Map.Entry<String, VsDestinationGroup> entry : vsDestinationGroupMap.entrySet()) {
+                if (previousGroups.get(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Copies the bits before {@code prefix} as they are, and the bits from {@code suffixStart} on moved by
+         * {@code shift}.
+         */
+        private static void carry(BitSet from, BitSet to, int prefix, int suffixStart, int shift) {
+            if (shift == 0) {
+                to.or(from);
+                to.clear(prefix, suffixStart);
+                return;
+            }
+            for (int index = from.nextSetBit(0); index >= 0 && index < prefix; index = from.nextSetBit(index + 1)) {
+                to.set(index);
+            }
+            for (int index = from.nextSetBit(suffixStart); index >= 0; index = from.nextSetBit(index + 1)) {
+                to.set(index + shift);
+            }
+        }
+
+        /**
+         * @param index index of the invoker in the origin list, -1 for an invoker from the tail list
+         */
+        void add(Invoker<T> invoker, int index) {
+            String remoteApplication = invoker.getUrl().getRemoteApplication();
+            VsDestinationGroup vsDestinationGroup =
+                    StringUtils.isEmpty(remoteApplication) || INVALID_APP_NAME.equals(remoteApplication)
+                            ? null
+                            : vsDestinationGroupMap.get(remoteApplication);
+            if (vsDestinationGroup == null) {
+                addToList(unmatchedInvokers, invoker, index);
+                return;
+            }
+            Map<String, BitSet> subsetIndexes = getSubsetIndexes(remoteApplication, vsDestinationGroup);
+            Map<String, BitList<Invoker<T>>> subsetMap = totalSubsetMap.get(remoteApplication);
+            if (index >= 0) {
+                appIndexes.get(remoteApplication).set(index);
+            }
+
+            boolean matched = false;
+            int previousIndex = getPreviousIndex(remoteApplication, vsDestinationGroup, invoker);
+            if (previousIndex >= 0) {
+                for (Map.Entry<String, BitSet> subset :
+                        previous.totalSubsetIndexes.get(remoteApplication).entrySet()) {
+                    if (subset.getValue().get(previousIndex)) {
+                        addToList(subsetMap.get(subset.getKey()), invoker, index);
+                        matched = true;
+                    }
+                }
+            } else {
                 for (DestinationRule destinationRule : vsDestinationGroup.getDestinationRuleList()) {
-                    DestinationRuleSpec destinationRuleSpec = destinationRule.getSpec();
-                    List<Subset> subsetList = destinationRuleSpec.getSubsets();
-                    for (Subset subset : subsetList) {
-                        String subsetName = subset.getName();
-                        List<Invoker<T>> subsetInvokers = subsetMap.computeIfAbsent(
-                                subsetName, (k) -> new BitList<>(invokers.getOriginList(), true));
-
-                        Map<String, String> labels = subset.getLabels();
-                        if (isLabelMatch(invoker.getUrl(), protocolServiceKey, labels)) {
-                            subsetInvokers.add(invoker);
+                    for (Subset subset : destinationRule.getSpec().getSubsets()) {
+                        if (isLabelMatch(invoker.getUrl(), protocolServiceKey, subset.getLabels())) {
+                            addToList(subsetMap.get(subset.getName()), invoker, index);
                             matched = true;
                         }
                     }
                 }
-                if (!matched) {
-                    unmatchedInvokers.add(invoker);
+            }
+            if (!matched) {
+                addToList(unmatchedInvokers, invoker, index);
+            }
+        }
+
+        private Map<String, BitSet> getSubsetIndexes(String appName, VsDestinationGroup vsDestinationGroup) {
+            Map<String, BitSet> subsetIndexes = totalSubsetIndexes.get(appName);
+            if (subsetIndexes == null) {
+                subsetIndexes = new HashMap<>();
+                Map<String, BitList<Invoker<T>>> subsetMap = new HashMap<>();
+                for (DestinationRule destinationRule : vsDestinationGroup.getDestinationRuleList()) {
+                    for (Subset subset : destinationRule.getSpec().getSubsets()) {
+                        if (!subsetMap.containsKey(subset.getName())) {
+                            BitSet indexes = new BitSet();
+                            subsetMap.put(subset.getName(), new BitList<>(originList, indexes, null));
+                            subsetIndexes.put(subset.getName(), indexes);
+                        }
+                    }
                 }
+                totalSubsetIndexes.put(appName, subsetIndexes);
+                totalSubsetMap.put(appName, subsetMap);
+                appIndexes.put(appName, new BitSet());
             }
+            return subsetIndexes;
+        }
 
-            return new MeshRuleCache<>(
-                    new LinkedList<>(vsDestinationGroupMap.keySet()),
-                    Collections.unmodifiableMap(vsDestinationGroupMap),
-                    Collections.unmodifiableMap(totalSubsetMap),
-                    unmatchedInvokers);
-        } else {
-            return new MeshRuleCache<>(
-                    Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(), invokers);
+        /**
+         * @return the index of the invoker in the previous origin list if its membership can be reused, -1 otherwise
+         */
+        private int getPreviousIndex(String appName, VsDestinationGroup vsDestinationGroup, Invoker<T> invoker) {
+            if (previous == null || previous.getVsDestinationGroup(appName) != vsDestinationGroup) {
+                return -1;
+            }
+            BitSet members = previous.appIndexes.get(appName);
+            if (members == null) {
+                return -1;
+            }
+            if (previousPositions == null) {
+                List<Invoker<T>> previousList = previous.unmatchedInvokers.getOriginList();
+                previousPositions = new IdentityHashMap<>(previousTo - previousFrom);
+                for (int index = previousFrom; index < previousTo; index++) {
+                    previousPositions.put(previousList.get(index), index);
+                }
+            }
+            Integer position = previousPositions.get(invoker);
+            return position != null && members.get(position) ? position : -1;
+        }
+
+        private void addToList(BitList<Invoker<T>> list, Invoker<T> invoker, int index) {
+            if (index >= 0) {
+                list.addIndex(index);
+            } else {
+                list.add(invoker);
+            }
         }
     }
 
     public static <T> MeshRuleCache<T> emptyCache() {
         return new MeshRuleCache<>(
-                Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(), BitList.emptyList());
+                null,
+                Collections.emptyList(),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                BitList.emptyList(),
+                null,
+                null);
     }
 
     protected static boolean isLabelMatch(URL url, String protocolServiceKey, Map<String, String> inputMap) {
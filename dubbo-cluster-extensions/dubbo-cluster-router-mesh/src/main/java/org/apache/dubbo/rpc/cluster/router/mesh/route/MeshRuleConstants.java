@@ -32,4 +32,12 @@ public class MeshRuleConstants {
     public static final String METADATA_KEY = "metadata";
 
     public static final String STANDARD_ROUTER_KEY = "standard";
+
+    /**
+     * Max number of invocation shapes whose route destinations are cached, 0 disables the cache. The cache is
+     * cleared when it is full.
+     */
+    public static final String ROUTE_CACHE_SIZE_KEY = "mesh.route.cache.size";
+
+    public static final int DEFAULT_ROUTE_CACHE_SIZE = 0;
 }
@@ -32,6 +32,7 @@ import org.apache.dubbo.rpc.cluster.router.mesh.rule.destination.DestinationRule
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.DubboMatchRequest;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.DubboRoute;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.DubboRouteDetail;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.VirtualServiceMatcher;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.VirtualServiceRule;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.VirtualServiceSpec;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.destination.DubboDestination;
@@ -41,20 +42,26 @@ import org.apache.dubbo.rpc.cluster.router.mesh.util.MeshRuleListener;
 import org.apache.dubbo.rpc.cluster.router.mesh.util.TracingContextProvider;
 import org.apache.dubbo.rpc.cluster.router.state.AbstractStateRouter;
 import org.apache.dubbo.rpc.cluster.router.state.BitList;
+import org.apache.dubbo.rpc.support.RpcUtils;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static org.apache.dubbo.common.constants.LoggerCodeConstants.CLUSTER_FAILED_RECEIVE_RULE;
+import static org.apache.dubbo.rpc.cluster.router.mesh.route.MeshRuleConstants.DEFAULT_ROUTE_CACHE_SIZE;
 import static org.apache.dubbo.rpc.cluster.router.mesh.route.MeshRuleConstants.DESTINATION_RULE_KEY;
 import static org.apache.dubbo.rpc.cluster.router.mesh.route.MeshRuleConstants.INVALID_APP_NAME;
 import static org.apache.dubbo.rpc.cluster.router.mesh.route.MeshRuleConstants.KIND_KEY;
+import static org.apache.dubbo.rpc.cluster.router.mesh.route.MeshRuleConstants.ROUTE_CACHE_SIZE_KEY;
 import static org.apache.dubbo.rpc.cluster.router.mesh.route.MeshRuleConstants.VIRTUAL_SERVICE_KEY;
 
 public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implements MeshRuleListener {
@@ -70,8 +77,12 @@ public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implement
 
     protected volatile MeshRuleCache<T> meshRuleCache = MeshRuleCache.emptyCache();
 
+    private final int routeCacheSize;
+    private volatile RouteCache<T> routeCache;
+
     public MeshRuleRouter(URL url) {
         super(url);
+        this.routeCacheSize = url.getParameter(ROUTE_CACHE_SIZE_KEY, DEFAULT_ROUTE_CACHE_SIZE);
         sourcesLabels = Collections.unmodifiableMap(new HashMap<>(url.getParameters()));
         this.meshRuleManager = url.getOrDefaultModuleModel().getBeanFactory().getBean(MeshRuleManager.class);
         this.tracingContextProviders = url.getOrDefaultModuleModel()
@@ -100,11 +111,14 @@ public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implement
 
         StringBuilder stringBuilder = needToPrintMessage ? new StringBuilder() : null;
 
+        Map<String, List<DubboRouteDestination>> cachedDestinations = getCachedRouteDestinations(ruleCache, invocation);
+
         // loop each application
         for (String appName : ruleCache.getAppList()) {
             // find destination by invocation
-            List<DubboRouteDestination> routeDestination =
-                    getDubboRouteDestination(ruleCache.getVsDestinationGroup(appName), invocation);
+            List<DubboRouteDestination> routeDestination = cachedDestinations != null
+                    ? cachedDestinations.get(appName)
+                    : getDubboRouteDestination(ruleCache.getVsDestinationGroup(appName), invocation);
             if (routeDestination != null) {
                 // aggregate target invokers
                 String subset = randomSelectDestination(ruleCache, appName, routeDestination, invokers);
@@ -139,12 +153,56 @@ public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implement
         return invokers.and(result);
     }
 
+    /**
+     * Look up the route destinations of every application for the shape of this invocation. The cache belongs to
+     * one {@link MeshRuleCache}, so a rule change or a new invoker list drops it together with the old rule cache.
+     * Only the candidate destinations are cached, the weighted pick still happens per invocation. A full cache is
+     * cleared before the next shape is added.
+     *
+     * @return null if the cache is disabled or the rules depend on more than the invocation shape
+     */
+    private Map<String, List<DubboRouteDestination>> getCachedRouteDestinations(
+            MeshRuleCache<T> ruleCache, Invocation invocation) {
+        if (routeCacheSize <= 0) {
+            return null;
+        }
+        RouteCache<T> routeCache = this.routeCache;
+        if (routeCache == null || routeCache.ruleCache != ruleCache) {
+            routeCache = new RouteCache<>(ruleCache, routeCacheSize);
+            this.routeCache = routeCache;
+        }
+        if (routeCache.attachmentKeys == null) {
+            return null;
+        }
+
+        RouteKey key = routeCache.createKey(invocation);
+        Map<String, List<DubboRouteDestination>> destinations = routeCache.destinations.get(key);
+        if (destinations == null) {
+            destinations = new HashMap<>();
+            for (String appName : ruleCache.getAppList()) {
+                destinations.put(
+                        appName, getDubboRouteDestination(ruleCache.getVsDestinationGroup(appName), invocation));
+            }
+            if (routeCache.destinations.size() >= routeCache.maxSize) {
+                // start over instead of no longer caching, the shapes in use may have changed since it filled up
+                routeCache.destinations.clear();
+            }
+            routeCache.destinations.putIfAbsent(key, destinations);
+        }
+        return destinations;
+    }
+
     /**
      * Select RouteDestination by Invocation
      */
     protected List<DubboRouteDestination> getDubboRouteDestination(
             VsDestinationGroup vsDestinationGroup, Invocation invocation) {
         if (vsDestinationGroup != null) {
+            VirtualServiceMatcher virtualServiceMatcher = vsDestinationGroup.getVirtualServiceMatcher();
+            if (virtualServiceMatcher != null) {
+                return virtualServiceMatcher.getDubboRouteDestination(
+                        invocation, sourcesLabels, tracingContextProviders);
+            }
             List<VirtualServiceRule> virtualServiceRuleList = vsDestinationGroup.getVirtualServiceRuleList();
             if (CollectionUtils.isNotEmpty(virtualServiceRuleList)) {
                 for (VirtualServiceRule virtualServiceRule : virtualServiceRuleList) {
@@ -255,10 +313,7 @@ public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implement
         String subset = dubboDestination.getSubset();
 
         do {
-            BitList<Invoker<T>> result = meshRuleCache.getSubsetInvokers(appName, subset);
-
-            if (CollectionUtils.isNotEmpty(result)
-                    && !availableInvokers.clone().and(result).isEmpty()) {
+            if (meshRuleCache.hasAvailableInvokers(appName, subset, availableInvokers)) {
                 return subset;
             }
 
@@ -332,6 +387,8 @@ public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implement
                 }
             }
             if (vsDestinationGroup.isValid()) {
+                vsDestinationGroup.setVirtualServiceMatcher(
+                        VirtualServiceMatcher.compile(vsDestinationGroup.getVirtualServiceRuleList()));
                 appToVDGroup.put(appName, vsDestinationGroup);
             }
         } catch (Throwable t) {
@@ -354,8 +411,8 @@ public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implement
     }
 
     protected void computeSubset(Map<String, VsDestinationGroup> vsDestinationGroupMap) {
-        this.meshRuleCache =
-                MeshRuleCache.build(getUrl().getProtocolServiceKey(), this.invokerList, vsDestinationGroupMap);
+        this.meshRuleCache = MeshRuleCache.build(
+                getUrl().getProtocolServiceKey(), this.invokerList, vsDestinationGroupMap, this.meshRuleCache);
     }
 
     @Override
@@ -365,6 +422,78 @@ public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implement
         }
     }
 
+    /**
+     * Route destinations by invocation shape, valid for a single {@link MeshRuleCache}.
+     */
+    private static final class RouteCache<T> {
+        private final MeshRuleCache<T> ruleCache;
+        private final int maxSize;
+
+        /**
+         * null if any application's rules look beyond service, method and attachments
+         */
+        private final String[] attachmentKeys;
+
+        private final Map<RouteKey, Map<String, List<DubboRouteDestination>>> destinations = new ConcurrentHashMap<>();
+
+        RouteCache(MeshRuleCache<T> ruleCache, int maxSize) {
+            this.ruleCache = ruleCache;
+            this.maxSize = maxSize;
+            Set<String> keys = new TreeSet<>();
+            boolean shapeOnly = true;
+            for (VsDestinationGroup vsDestinationGroup : ruleCache.getAppToVDGroup().values()) {
+                VirtualServiceMatcher matcher = vsDestinationGroup.getVirtualServiceMatcher();
+                if (matcher == null || !matcher.isShapeOnly()) {
+                    shapeOnly = false;
+                    break;
+                }
+                keys.addAll(matcher.getAttachmentKeys());
+            }
+            this.attachmentKeys = shapeOnly ? keys.toArray(new String[0]) : null;
+        }
+
+        RouteKey createKey(Invocation invocation) {
+            String[] values = new String[attachmentKeys.length];
+            for (int i = 0; i < attachmentKeys.length; i++) {
+                values[i] = invocation.getAttachment(attachmentKeys[i]);
+            }
+            return new RouteKey(invocation.getServiceName(), RpcUtils.getMethodName(invocation), values);
+        }
+    }
+
+    private static final class RouteKey {
+        private final String serviceName;
+        private final String methodName;
+        private final String[] attachments;
+        private final int hashCode;
+
+        RouteKey(String serviceName, String methodName, String[] attachments) {
+            this.serviceName = serviceName;
+            this.methodName = methodName;
+            this.attachments = attachments;
+            this.hashCode = 31 * Objects.hash(serviceName, methodName) + Arrays.hashCode(attachments);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RouteKey)) {
+                return false;
+            }
+            RouteKey routeKey = (RouteKey) o;
+            return Objects.equals(serviceName, routeKey.serviceName)
+                    && Objects.equals(methodName, routeKey.methodName)
+                    && Arrays.equals(attachments, routeKey.attachments);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     /**
      * for ut only
      */
@@ -388,4 +517,13 @@ public abstract class MeshRuleRouter<T> extends AbstractStateRouter<T> implement
     public MeshRuleCache<T> getMeshRuleCache() {
         return meshRuleCache;
     }
+
+    /**
+     * for ut only
+     */
+    @Deprecated
+    public int getRouteCacheSize() {
+        RouteCache<T> routeCache = this.routeCache;
+        return routeCache == null ? 0 : routeCache.destinations.size();
+    }
 }
@@ -17,6 +17,7 @@
 package org.apache.dubbo.rpc.cluster.router.mesh.rule;
 
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.destination.DestinationRule;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.VirtualServiceMatcher;
 import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.VirtualServiceRule;
 
 import java.util.LinkedList;
@@ -26,6 +27,7 @@ public class VsDestinationGroup {
     private String appName;
     private List<VirtualServiceRule> virtualServiceRuleList = new LinkedList<>();
     private List<DestinationRule> destinationRuleList = new LinkedList<>();
+    private VirtualServiceMatcher virtualServiceMatcher;
 
     public String getAppName() {
         return appName;
@@ -51,6 +53,17 @@ public class VsDestinationGroup {
         this.destinationRuleList = destinationRuleList;
     }
 
+    /**
+     * Compiled form of {@link #getVirtualServiceRuleList()}, null if the rules have not been compiled.
+     */
+    public VirtualServiceMatcher getVirtualServiceMatcher() {
+        return virtualServiceMatcher;
+    }
+
+    public void setVirtualServiceMatcher(VirtualServiceMatcher virtualServiceMatcher) {
+        this.virtualServiceMatcher = virtualServiceMatcher;
+    }
+
     public boolean isValid() {
         return virtualServiceRuleList.size() > 0 && destinationRuleList.size() > 0;
     }
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice;
+
+import org.apache.dubbo.common.utils.CollectionUtils;
+import org.apache.dubbo.rpc.Invocation;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.destination.DubboRouteDestination;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.match.DubboAttachmentMatch;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.match.DubboMethodMatch;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.match.StringMatch;
+import org.apache.dubbo.rpc.cluster.router.mesh.util.TracingContextProvider;
+import org.apache.dubbo.rpc.support.RpcUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable matcher compiled from the virtual service rules of one application.
+ * <p>
+ * Routes keep the first-match order of the rules they were compiled from. Exact service names are resolved
+ * through a hash lookup and service prefixes through a trie, so only regex-like service matchers are still
+ * evaluated one by one. Inside a route, details that require an exact method name are indexed by that name.
+ */
+public class VirtualServiceMatcher {
+
+    private static final int NO_ROUTE = Integer.MAX_VALUE;
+
+    private final CompiledRoute[] routes;
+    private final Map<String, Integer> exactServices;
+    private final PrefixNode prefixServices;
+    private final int[] otherServiceRoutes;
+    private final StringMatch[] otherServiceMatches;
+    private final int defaultRoute;
+    private final CompiledRoute nullServiceRoute;
+    private final Set<String> attachmentKeys;
+    private final boolean shapeOnly;
+
+    private VirtualServiceMatcher(List<DubboRoute> dubboRoutes) {
+        this.routes = new CompiledRoute[dubboRoutes.size()];
+        Map<String, Integer> exactServices = new HashMap<>();
+        PrefixNode prefixServices = new PrefixNode();
+        List<Integer> otherServiceRoutes = new ArrayList<>();
+        List<StringMatch> otherServiceMatches = new ArrayList<>();
+        int defaultRoute = NO_ROUTE;
+        CompiledRoute nullServiceRoute = null;
+        Set<String> attachmentKeys = new TreeSet<>();
+        boolean shapeOnly = true;
+
+        for (int index = 0; index < routes.length; index++) {
+            DubboRoute dubboRoute = dubboRoutes.get(index);
+            routes[index] = new CompiledRoute(dubboRoute);
+            shapeOnly &= collectAttachmentKeys(dubboRoute, attachmentKeys);
+
+            List<StringMatch> services = dubboRoute.getServices();
+            if (CollectionUtils.isEmpty(services)) {
+                defaultRoute = Math.min(defaultRoute, index);
+                if (nullServiceRoute == null) {
+                    nullServiceRoute = routes[index];
+                }
+                continue;
+            }
+            for (StringMatch service : services) {
+                if (nullServiceRoute == null && service.isMatch(null)) {
+                    nullServiceRoute = routes[index];
+                }
+                // a non-null input is decided by the first non-null criterion, see StringMatch#isMatch
+                if (service.getExact() != null) {
+                    exactServices.putIfAbsent(service.getExact(), index);
+                } else if (service.getPrefix() != null) {
+                    prefixServices.put(service.getPrefix(), index);
+                } else {
+                    otherServiceRoutes.add(index);
+                    otherServiceMatches.add(service);
+                }
+            }
+        }
+
+        this.exactServices = exactServices;
+        this.prefixServices = prefixServices;
+        this.otherServiceRoutes = otherServiceRoutes.stream().mapToInt(Integer::intValue).toArray();
+        this.otherServiceMatches = otherServiceMatches.toArray(new StringMatch[0]);
+        this.defaultRoute = defaultRoute;
+        this.nullServiceRoute = nullServiceRoute;
+        this.attachmentKeys = Collections.unmodifiableSet(attachmentKeys);
+        this.shapeOnly = shapeOnly;
+    }
+
+    public static VirtualServiceMatcher compile(List<VirtualServiceRule> virtualServiceRules) {
+        List<DubboRoute> dubboRoutes = new ArrayList<>();
+        if (CollectionUtils.isNotEmpty(virtualServiceRules)) {
+            for (VirtualServiceRule virtualServiceRule : virtualServiceRules) {
+                VirtualServiceSpec spec = virtualServiceRule.getSpec();
+                if (spec != null && CollectionUtils.isNotEmpty(spec.getDubbo())) {
+                    dubboRoutes.addAll(spec.getDubbo());
+                }
+            }
+        }
+        return new VirtualServiceMatcher(dubboRoutes);
+    }
+
+    /**
+     * Match virtual service (by serviceName), same as walking the rules in order and returning the first
+     * {@link DubboRoute} whose services match.
+     */
+    public DubboRoute getDubboRoute(String serviceName) {
+        CompiledRoute route = getCompiledRoute(serviceName);
+        return route == null ? null : route.dubboRoute;
+    }
+
+    /**
+     * Select RouteDestination by Invocation
+     */
+    public List<DubboRouteDestination> getDubboRouteDestination(
+            Invocation invocation, Map<String, String> sourcesLabels, Set<TracingContextProvider> contextProviders) {
+        CompiledRoute route = getCompiledRoute(invocation.getServiceName());
+        return route == null ? null : route.getDubboRouteDestination(invocation, sourcesLabels, contextProviders);
+    }
+
+    /**
+     * Whether the matched destinations only depend on the service name, the method name and the values of
+     * {@link #getAttachmentKeys()}. Rules on arguments or tracing context make every invocation unique.
+     */
+    public boolean isShapeOnly() {
+        return shapeOnly;
+    }
+
+    /**
+     * The Dubbo context attachment keys referenced by the rules, in natural order.
+     */
+    public Set<String> getAttachmentKeys() {
+        return attachmentKeys;
+    }
+
+    private static boolean collectAttachmentKeys(DubboRoute dubboRoute, Set<String> attachmentKeys) {
+        boolean shapeOnly = true;
+        if (CollectionUtils.isEmpty(dubboRoute.getRoutedetail())) {
+            return true;
+        }
+        for (DubboRouteDetail dubboRouteDetail : dubboRoute.getRoutedetail()) {
+            if (CollectionUtils.isEmpty(dubboRouteDetail.getMatch())) {
+                continue;
+            }
+            for (DubboMatchRequest request : dubboRouteDetail.getMatch()) {
+                DubboMethodMatch method = request.getMethod();
+                if (method != null
+                        && (method.getArgc() != null
+                                || CollectionUtils.isNotEmpty(method.getArgs())
+                                || CollectionUtils.isNotEmpty(method.getArgp()))) {
+                    shapeOnly = false;
+                }
+                DubboAttachmentMatch attachments = request.getAttachments();
+                if (attachments != null) {
+                    if (CollectionUtils.isNotEmptyMap(attachments.getTracingContext())) {
+                        shapeOnly = false;
+                    }
+                    if (attachments.getDubboContext() != null) {
+                        attachmentKeys.addAll(attachments.getDubboContext().keySet());
+                    }
+                }
+            }
+        }
+        return shapeOnly;
+    }
+
+    private CompiledRoute getCompiledRoute(String serviceName) {
+        if (serviceName == null) {
+            return nullServiceRoute;
+        }
+        int best = defaultRoute;
+        Integer exact = exactServices.get(serviceName);
+        if (exact != null && exact < best) {
+            best = exact;
+        }
+        best = prefixServices.lookup(serviceName, best);
+        for (int i = 0; i < otherServiceRoutes.length && otherServiceRoutes[i] < best; i++) {
+            if (otherServiceMatches[i].isMatch(serviceName)) {
+                best = otherServiceRoutes[i];
+                break;
+            }
+        }
+        return best == NO_ROUTE ? null : routes[best];
+    }
+
+    private static class CompiledRoute {
+        private final DubboRoute dubboRoute;
+        private final DubboRouteDetail[] details;
+        private final int[] allDetails;
+        private final int[] unconstrainedDetails;
+        private final Map<String, int[]> methodDetails;
+
+        CompiledRoute(DubboRoute dubboRoute) {
+            this.dubboRoute = dubboRoute;
+            List<DubboRouteDetail> detailList = dubboRoute.getRoutedetail();
+            this.details = detailList == null ? new DubboRouteDetail[0] : detailList.toArray(new DubboRouteDetail[0]);
+
+            List<Integer> unconstrained = new ArrayList<>();
+            Map<String, List<Integer>> constrained = new LinkedHashMap<>();
+            for (int index = 0; index < details.length; index++) {
+                String methodName = getRequiredMethodName(details[index]);
+                if (methodName == null) {
+                    unconstrained.add(index);
+                } else {
+                    constrained.computeIfAbsent(methodName, k -> new ArrayList<>()).add(index);
+                }
+            }
+
+            this.allDetails = new int[details.length];
+            for (int index = 0; index < details.length; index++) {
+                allDetails[index] = index;
+            }
+            this.unconstrainedDetails = toArray(unconstrained);
+            Map<String, int[]> methodDetails = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : constrained.entrySet()) {
+                // merge back the details without a method constraint, keeping declaration order
+                List<Integer> candidates = new ArrayList<>(entry.getValue());
+                candidates.addAll(unconstrained);
+                Collections.sort(candidates);
+                methodDetails.put(entry.getKey(), toArray(candidates));
+            }
+            this.methodDetails = methodDetails;
+        }
+
+        /**
+         * Match route detail (by params)
+         */
+        List<DubboRouteDestination> getDubboRouteDestination(
+                Invocation invocation,
+                Map<String, String> sourcesLabels,
+                Set<TracingContextProvider> contextProviders) {
+            String methodName = RpcUtils.getMethodName(invocation);
+            int[] candidates =
+                    methodName == null ? allDetails : methodDetails.getOrDefault(methodName, unconstrainedDetails);
+            for (int index : candidates) {
+                DubboRouteDetail dubboRouteDetail = details[index];
+                List<DubboMatchRequest> matchRequestList = dubboRouteDetail.getMatch();
+                if (CollectionUtils.isEmpty(matchRequestList)) {
+                    return dubboRouteDetail.getRoute();
+                }
+                boolean match = true;
+                for (DubboMatchRequest request : matchRequestList) {
+                    if (!request.isMatch(invocation, sourcesLabels, contextProviders)) {
+                        match = false;
+                        break;
+                    }
+                }
+                if (match) {
+                    return dubboRouteDetail.getRoute();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * The method name every request of the detail has to carry, or null if the detail is not bound to
+         * an exact method name.
+         */
+        private static String getRequiredMethodName(DubboRouteDetail dubboRouteDetail) {
+            List<DubboMatchRequest> matchRequestList = dubboRouteDetail.getMatch();
+            if (CollectionUtils.isEmpty(matchRequestList)) {
+                return null;
+            }
+            for (DubboMatchRequest request : matchRequestList) {
+                DubboMethodMatch method = request.getMethod();
+                if (method != null && method.getName_match() != null && method.getName_match().getExact() != null) {
+                    return method.getName_match().getExact();
+                }
+            }
+            return null;
+        }
+
+        private static int[] toArray(List<Integer> list) {
+            return list.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Character trie over service prefixes. Each node keeps the first route whose prefix ends there.
+     */
+    private static class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+        private int route = NO_ROUTE;
+
+        void put(String prefix, int index) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), k -> new PrefixNode());
+            }
+            node.route = Math.min(node.route, index);
+        }
+
+        int lookup(String serviceName, int best) {
+            PrefixNode node = this;
+            int result = Math.min(best, node.route);
+            for (int i = 0; i < serviceName.length(); i++) {
+                node = node.children.get(serviceName.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                result = Math.min(result, node.route);
+            }
+            return result;
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.match;
 
+import java.util.regex.Pattern;
+
 import static org.apache.dubbo.common.constants.CommonConstants.ANY_VALUE;
 
 public class StringMatch {
@@ -26,6 +28,11 @@ public class StringMatch {
     private String empty;
     private String wildcard;
 
+    /**
+     * Compiled form of {@link #regex}, built on first use and reused by every later match.
+     */
+    private transient volatile Pattern pattern;
+
     public String getExact() {
         return exact;
     }
@@ -48,6 +55,7 @@ public class StringMatch {
 
     public void setRegex(String regex) {
         this.regex = regex;
+        this.pattern = null;
     }
 
     public String getNoempty() {
@@ -80,7 +88,7 @@ public class StringMatch {
         } else if (getPrefix() != null && input != null) {
             return input.startsWith(getPrefix());
         } else if (getRegex() != null && input != null) {
-            return input.matches(getRegex());
+            return getPattern().matcher(input).matches();
         } else if (getWildcard() != null && input != null) {
             // only supports "*"
             return input.equals(getWildcard()) || ANY_VALUE.equals(getWildcard());
@@ -93,6 +101,15 @@ public class StringMatch {
         }
     }
 
+    private Pattern getPattern() {
+        Pattern pattern = this.pattern;
+        if (pattern == null) {
+            pattern = Pattern.compile(getRegex());
+            this.pattern = pattern;
+        }
+        return pattern;
+    }
+
     @Override
     public String toString() {
         return "StringMatch{" + "exact='"
@@ -28,12 +28,14 @@ import org.apache.dubbo.rpc.cluster.router.state.BitList;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -106,4 +108,105 @@ class MeshRuleCacheTest {
         assertEquals(1, cache.getSubsetInvokers("app1", "TestSubset").size());
         assertEquals(0, cache.getSubsetInvokers("app2", "TestSubset").size());
     }
+
+    @Test
+    void testIncrementalBuild() {
+        Invoker<Object> invoker1 = createInvoker("app1");
+        Invoker<Object> invoker2 = createInvoker("app1");
+        Invoker<Object> invoker3 = createInvoker("app1");
+
+        Subset subset = new Subset();
+        subset.setName("TestSubset");
+        DestinationRule destinationRule = new DestinationRule();
+        DestinationRuleSpec destinationRuleSpec = new DestinationRuleSpec();
+        destinationRuleSpec.setSubsets(Collections.singletonList(subset));
+        destinationRule.setSpec(destinationRuleSpec);
+        VsDestinationGroup vsDestinationGroup = new VsDestinationGroup();
+        vsDestinationGroup.getDestinationRuleList().add(destinationRule);
+        Map<String, VsDestinationGroup> vsDestinationGroupMap = new HashMap<>();
+        vsDestinationGroupMap.put("app1", vsDestinationGroup);
+
+        BitList<Invoker<Object>> invokers = new BitList<>(Arrays.asList(invoker1, invoker2));
+        MeshRuleCache<Object> cache = MeshRuleCache.build("test", invokers, vsDestinationGroupMap);
+        assertEquals(2, cache.getSubsetInvokers("app1", "TestSubset").size());
+
+        // membership of known invokers is reused, only the new invoker sees the changed labels
+        subset.setLabels(Collections.singletonMap("test", "test"));
+        invokers = new BitList<>(Arrays.asList(invoker3, invoker2));
+        cache = MeshRuleCache.build("test", invokers, vsDestinationGroupMap, cache);
+        BitList<Invoker<Object>> subsetInvokers = cache.getSubsetInvokers("app1", "TestSubset");
+        assertEquals(1, subsetInvokers.size());
+        assertEquals(invoker2, subsetInvokers.get(0));
+        assertEquals(1, cache.getUnmatchedInvokers().size());
+        assertEquals(invoker3, cache.getUnmatchedInvokers().get(0));
+
+        // invokers kept at either end are carried over by index, only the ones in between are looked at
+        Invoker<Object> invoker4 = createInvoker("app1");
+        Invoker<Object> invoker5 = createInvoker("app2");
+        invokers = new BitList<>(Arrays.asList(invoker3, invoker4, invoker5, invoker2));
+        cache = MeshRuleCache.build("test", invokers, vsDestinationGroupMap, cache);
+        subsetInvokers = cache.getSubsetInvokers("app1", "TestSubset");
+        assertEquals(1, subsetInvokers.size());
+        assertEquals(invoker2, subsetInvokers.get(0));
+        assertEquals(Arrays.asList(invoker3, invoker4, invoker5), new ArrayList<>(cache.getUnmatchedInvokers()));
+
+        invokers = new BitList<>(Arrays.asList(invoker2, invoker5));
+        cache = MeshRuleCache.build("test", invokers, vsDestinationGroupMap, cache);
+        subsetInvokers = cache.getSubsetInvokers("app1", "TestSubset");
+        assertEquals(1, subsetInvokers.size());
+        assertEquals(invoker2, subsetInvokers.get(0));
+        assertEquals(Collections.singletonList(invoker5), new ArrayList<>(cache.getUnmatchedInvokers()));
+
+        invokers = new BitList<>(Collections.singletonList(invoker5));
+        cache = MeshRuleCache.build("test", invokers, vsDestinationGroupMap, cache);
+        assertTrue(cache.getTotalSubsetMap().isEmpty());
+        assertEquals(Collections.singletonList(invoker5), new ArrayList<>(cache.getUnmatchedInvokers()));
+
+        invokers = new BitList<>(Arrays.asList(invoker3, invoker2));
+        cache = MeshRuleCache.build("test", invokers, vsDestinationGroupMap, cache);
+
+        // a new rule group for the application is evaluated from scratch
+        VsDestinationGroup newGroup = new VsDestinationGroup();
+        newGroup.getDestinationRuleList().add(destinationRule);
+        vsDestinationGroupMap = Collections.singletonMap("app1", newGroup);
+        cache = MeshRuleCache.build("test", invokers, vsDestinationGroupMap, cache);
+        assertEquals(0, cache.getSubsetInvokers("app1", "TestSubset").size());
+        assertEquals(2, cache.getUnmatchedInvokers().size());
+    }
+
+
+    @Test
+    void testHasAvailableInvokers() {
+        Invoker<Object> invoker1 = createInvoker("app1");
+        Invoker<Object> invoker2 = createInvoker("app1");
+        Invoker<Object> invoker3 = createInvoker("app2");
+
+        Subset subset = new Subset();
+        subset.setName("TestSubset");
+        subset.setLabels(Collections.singletonMap("remote.application", "app1"));
+        DestinationRule destinationRule = new DestinationRule();
+        DestinationRuleSpec destinationRuleSpec = new DestinationRuleSpec();
+        destinationRuleSpec.setSubsets(Collections.singletonList(subset));
+        destinationRule.setSpec(destinationRuleSpec);
+        VsDestinationGroup vsDestinationGroup = new VsDestinationGroup();
+        vsDestinationGroup.getDestinationRuleList().add(destinationRule);
+
+        BitList<Invoker<Object>> invokers = new BitList<>(Arrays.asList(invoker1, invoker2, invoker3));
+        MeshRuleCache<Object> cache =
+                MeshRuleCache.build("test", invokers, Collections.singletonMap("app1", vsDestinationGroup));
+        assertEquals(2, cache.getSubsetInvokers("app1", "TestSubset").size());
+
+        BitList<Invoker<Object>> available = invokers.clone();
+        assertTrue(cache.hasAvailableInvokers("app1", "TestSubset", available));
+        available.remove(invoker1);
+        assertTrue(cache.hasAvailableInvokers("app1", "TestSubset", available));
+        available.remove(invoker2);
+        assertFalse(cache.hasAvailableInvokers("app1", "TestSubset", available));
+        assertFalse(cache.hasAvailableInvokers("app1", "Unknown", invokers));
+
+        // lists over another origin list are compared invoker by invoker
+        assertTrue(cache.hasAvailableInvokers("app1", "TestSubset", new BitList<>(Arrays.asList(invoker2))));
+        assertFalse(cache.hasAvailableInvokers("app1", "TestSubset", new BitList<>(Arrays.asList(invoker3))));
+    }
+
 }
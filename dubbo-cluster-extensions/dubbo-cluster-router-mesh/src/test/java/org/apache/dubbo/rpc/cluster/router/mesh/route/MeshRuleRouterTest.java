@@ -452,4 +452,82 @@ class MeshRuleRouterTest {
         invokers.removeAll(Arrays.asList(isolation, testingTrunk, testing));
         assertEquals(invokers, meshRuleRouter.route(invokers.clone(), null, rpcInvocation, false, null));
     }
+
+    @Test
+    void testRouteCache() {
+        StandardMeshRuleRouter<Object> meshRuleRouter =
+                new StandardMeshRuleRouter<>(url.addParameter(MeshRuleConstants.ROUTE_CACHE_SIZE_KEY, 16));
+
+        Yaml yaml = new Yaml(new SafeConstructor(new LoaderOptions()));
+        List<Map<String, Object>> rules = new LinkedList<>();
+        rules.add(yaml.load(rule1));
+        rules.add(yaml.load(rule2));
+        meshRuleRouter.onRuleChange("app1", rules);
+
+        Map<String, String> isolationLabels = new HashMap<>();
+        isolationLabels.put("env-sign", "xxx");
+        isolationLabels.put("tag1", "hello");
+        Invoker<Object> isolation = createInvoker(isolationLabels);
+        Invoker<Object> testingTrunk = createInvoker(Collections.singletonMap("env-sign", "yyy"));
+        Invoker<Object> testing = createInvoker(Collections.singletonMap("env-sign", "zzz"));
+        BitList<Invoker<Object>> invokers = new BitList<>(Arrays.asList(isolation, testingTrunk, testing));
+        meshRuleRouter.notify(invokers);
+
+        RpcInvocation rpcInvocation = new RpcInvocation();
+        rpcInvocation.setServiceName("ccc");
+        rpcInvocation.setAttachment("trafficLabel", "testing-trunk");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(
+                    testingTrunk,
+                    meshRuleRouter
+                            .route(invokers.clone(), null, rpcInvocation, false, null)
+                            .get(0));
+        }
+        rpcInvocation.setAttachment("trafficLabel", null);
+        assertEquals(
+                testing,
+                meshRuleRouter
+                        .route(invokers.clone(), null, rpcInvocation, false, null)
+                        .get(0));
+        assertEquals(2, meshRuleRouter.getRouteCacheSize());
+
+        // a full cache starts over
+        for (int i = 0; i < 14; i++) {
+            rpcInvocation.setAttachment("trafficLabel", "label-" + i);
+            meshRuleRouter.route(invokers.clone(), null, rpcInvocation, false, null);
+        }
+        assertEquals(16, meshRuleRouter.getRouteCacheSize());
+        rpcInvocation.setAttachment("trafficLabel", "testing-trunk");
+        meshRuleRouter.route(invokers.clone(), null, rpcInvocation, false, null);
+        assertEquals(16, meshRuleRouter.getRouteCacheSize());
+        rpcInvocation.setAttachment("trafficLabel", "label-14");
+        meshRuleRouter.route(invokers.clone(), null, rpcInvocation, false, null);
+        assertEquals(1, meshRuleRouter.getRouteCacheSize());
+        rpcInvocation.setAttachment("trafficLabel", "testing-trunk");
+        assertEquals(
+                testingTrunk,
+                meshRuleRouter
+                        .route(invokers.clone(), null, rpcInvocation, false, null)
+                        .get(0));
+        assertEquals(2, meshRuleRouter.getRouteCacheSize());
+
+        // a new invoker list drops the cached destinations
+        invokers = new BitList<>(Arrays.asList(isolation, testing));
+        meshRuleRouter.notify(invokers);
+        rpcInvocation.setAttachment("trafficLabel", "testing-trunk");
+        assertEquals(invokers, meshRuleRouter.route(invokers.clone(), null, rpcInvocation, false, null));
+
+        // so does a rule change
+        rpcInvocation.setServiceName("aaa");
+        rpcInvocation.setAttachment("trafficLabel", "xxx");
+        assertEquals(invokers, meshRuleRouter.route(invokers.clone(), null, rpcInvocation, false, null));
+        rules = new LinkedList<>();
+        rules.add(yaml.load(rule1));
+        rules.add(yaml.load(rule3));
+        meshRuleRouter.onRuleChange("app1", rules);
+        BitList<Invoker<Object>> result = meshRuleRouter.route(invokers.clone(), null, rpcInvocation, false, null);
+        assertEquals(1, result.size());
+        assertEquals(isolation, result.get(0));
+    }
+
 }
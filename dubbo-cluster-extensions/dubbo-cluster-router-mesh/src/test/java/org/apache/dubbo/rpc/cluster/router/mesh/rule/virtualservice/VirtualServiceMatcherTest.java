@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice;
+
+import org.apache.dubbo.rpc.RpcInvocation;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.destination.DubboRouteDestination;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.match.DubboMethodMatch;
+import org.apache.dubbo.rpc.cluster.router.mesh.rule.virtualservice.match.StringMatch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VirtualServiceMatcherTest {
+
+    @Test
+    void testServiceMatch() {
+        DubboRoute regexRoute = route(regex("org\\.apache\\..*"));
+        DubboRoute exactRoute = route(exact("org.apache.dubbo.DemoService"));
+        DubboRoute prefixRoute = route(prefix("org.apache.dubbo."), prefix("com."));
+        DubboRoute defaultRoute = route();
+        VirtualServiceMatcher matcher = VirtualServiceMatcher.compile(Arrays.asList(
+                rule(exactRoute, prefixRoute), rule(regexRoute), rule(defaultRoute, route(exact("com.Other")))));
+
+        // rules keep their declaration order
+        assertSame(exactRoute, matcher.getDubboRoute("org.apache.dubbo.DemoService"));
+        assertSame(prefixRoute, matcher.getDubboRoute("org.apache.dubbo.OtherService"));
+        assertSame(prefixRoute, matcher.getDubboRoute("com.Other"));
+        assertSame(regexRoute, matcher.getDubboRoute("org.apache.Service"));
+        assertSame(defaultRoute, matcher.getDubboRoute("net.Service"));
+        assertSame(defaultRoute, matcher.getDubboRoute(null));
+
+        matcher = VirtualServiceMatcher.compile(Collections.singletonList(rule(exactRoute)));
+        assertNull(matcher.getDubboRoute("org.apache.dubbo.Other"));
+        assertNull(matcher.getDubboRoute(null));
+    }
+
+    @Test
+    void testMethodMatch() {
+        DubboRouteDetail sayHello = detail(method("sayHello"));
+        DubboRouteDetail any = detail();
+        DubboRouteDetail sayHi = detail(method("sayHi"));
+        DubboRoute route = route();
+        route.setRoutedetail(Arrays.asList(sayHello, any, sayHi));
+        VirtualServiceMatcher matcher = VirtualServiceMatcher.compile(Collections.singletonList(rule(route)));
+
+        RpcInvocation invocation = new RpcInvocation();
+        invocation.setServiceName("DemoService");
+        invocation.setMethodName("sayHello");
+        assertSame(sayHello.getRoute(), getDestination(matcher, invocation));
+        invocation.setMethodName("sayHi");
+        assertSame(any.getRoute(), getDestination(matcher, invocation));
+        invocation.setMethodName("other");
+        assertSame(any.getRoute(), getDestination(matcher, invocation));
+
+        route.setRoutedetail(Arrays.asList(sayHello, sayHi));
+        matcher = VirtualServiceMatcher.compile(Collections.singletonList(rule(route)));
+        invocation.setMethodName("sayHi");
+        assertSame(sayHi.getRoute(), getDestination(matcher, invocation));
+        invocation.setMethodName("other");
+        assertNull(getDestination(matcher, invocation));
+    }
+
+    private static List<DubboRouteDestination> getDestination(VirtualServiceMatcher matcher, RpcInvocation invocation) {
+        return matcher.getDubboRouteDestination(invocation, Collections.emptyMap(), Collections.emptySet());
+    }
+
+    private static VirtualServiceRule rule(DubboRoute... routes) {
+        VirtualServiceSpec spec = new VirtualServiceSpec();
+        spec.setDubbo(Arrays.asList(routes));
+        VirtualServiceRule rule = new VirtualServiceRule();
+        rule.setSpec(spec);
+        return rule;
+    }
+
+    private static DubboRoute route(StringMatch... services) {
+        DubboRoute route = new DubboRoute();
+        route.setServices(new ArrayList<>(Arrays.asList(services)));
+        route.setRoutedetail(Collections.singletonList(detail()));
+        return route;
+    }
+
+    private static DubboRouteDetail detail(DubboMatchRequest... requests) {
+        DubboRouteDetail detail = new DubboRouteDetail();
+        detail.setMatch(Arrays.asList(requests));
+        detail.setRoute(Collections.singletonList(new DubboRouteDestination()));
+        return detail;
+    }
+
+    private static DubboMatchRequest method(String name) {
+        DubboMethodMatch methodMatch = new DubboMethodMatch();
+        methodMatch.setName_match(exact(name));
+        DubboMatchRequest request = new DubboMatchRequest();
+        request.setMethod(methodMatch);
+        return request;
+    }
+
+    private static StringMatch exact(String value) {
+        StringMatch stringMatch = new StringMatch();
+        stringMatch.setExact(value);
+        return stringMatch;
+    }
+
+    private static StringMatch prefix(String value) {
+        StringMatch stringMatch = new StringMatch();
+        stringMatch.setPrefix(value);
+        return stringMatch;
+    }
+
+    private static StringMatch regex(String value) {
+        StringMatch stringMatch = new StringMatch();
+        stringMatch.setRegex(value);
+        return stringMatch;
+    }
+}
@@ -18,8 +18,16 @@ package org.apache.dubbo.rpc.cluster.specifyaddress;
 
 import org.apache.dubbo.common.threadlocal.InternalThreadLocal;
 
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
 public class UserSpecifiedAddressUtil {
     private static final InternalThreadLocal<Address> ADDRESS = new InternalThreadLocal<>();
+    // routers of every reference, by service interface
+    private static final ConcurrentMap<String, Set<Consumer<List<Address>>>> WARM_UP_TARGETS = new ConcurrentHashMap<>();
 
     /**
      * Set specified address to next invoke
@@ -38,4 +46,48 @@ public class UserSpecifiedAddressUtil {
             ADDRESS.remove();
         }
     }
+
+    /**
+     * Refer the addresses in the background for every reference of the service, so that later invokes specifying one
+     * of them do not have to wait for the connection. Addresses already provided by the registry are skipped.
+     *
+     * @param serviceInterface service interface of the references to warm up
+     * @param addresses        addresses to warm up
+     */
+    public static void warmUp(Class<?> serviceInterface, List<Address> addresses) {
+        warmUp(serviceInterface.getName(), addresses);
+    }
+
+    public static void warmUp(String serviceInterface, List<Address> addresses) {
+        Set<Consumer<List<Address>>> targets = WARM_UP_TARGETS.get(serviceInterface);
+        if (targets == null) {
+            return;
+        }
+        for (Consumer<List<Address>> target : targets) {
+            target.accept(addresses);
+        }
+    }
+
+    static void addWarmUpTarget(String serviceInterface, Consumer<List<Address>> target) {
+        if (serviceInterface == null) {
+            return;
+        }
+        WARM_UP_TARGETS.compute(serviceInterface, (k, targets) -> {
+            if (targets == null) {
+                targets = ConcurrentHashMap.newKeySet();
+            }
+            targets.add(target);
+            return targets;
+        });
+    }
+
+    static void removeWarmUpTarget(String serviceInterface, Consumer<List<Address>> target) {
+        if (serviceInterface == null) {
+            return;
+        }
+        WARM_UP_TARGETS.computeIfPresent(serviceInterface, (k, targets) -> {
+            targets.remove(target);
+            return targets.isEmpty() ? null : targets;
+        });
+    }
 }
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.specifyaddress.common;
+
+import org.apache.dubbo.common.URL;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Immutable index of invokers by ip and by ip:port.
+ * <p>
+ * IPv4 hosts are packed into a long (ip << 16 | port) and kept in an open addressing map, so looking them up
+ * needs neither string building nor string hashing. Other hosts (IPv6, host names) fall back to string keyed maps.
+ * The index is never modified once built, {@link #update(List)} returns a new one.
+ */
+public class AddressIndex<V> {
+    private static final long NOT_IPV4 = -1L;
+
+    private final Function<V, URL> urlGetter;
+    private final Set<V> members;
+    private final LongMap<V> addresses;
+    private final LongMap<V> ips;
+    private final Map<String, V> fallbackAddresses;
+    private final Map<String, V> fallbackIps;
+
+    private AddressIndex(Function<V, URL> urlGetter, Set<V> members, LongMap<V> addresses, LongMap<V> ips,
+                         Map<String, V> fallbackAddresses, Map<String, V> fallbackIps) {
+        this.urlGetter = urlGetter;
+        this.members = members;
+        this.addresses = addresses;
+        this.ips = ips;
+        this.fallbackAddresses = fallbackAddresses;
+        this.fallbackIps = fallbackIps;
+    }
+
+    public static <V> AddressIndex<V> build(List<? extends V> values, Function<V, URL> urlGetter) {
+        AddressIndex<V> index = new AddressIndex<>(urlGetter, newMembers(values), new LongMap<>(values.size()),
+            new LongMap<>(values.size()), new HashMap<>(), new HashMap<>());
+        for (V value : values) {
+            index.put(value, true);
+        }
+        return index;
+    }
+
+    /**
+     * Build the index of the given values from this one. The values are diffed against this index by identity, and
+     * this index is returned as is if none was added or removed. Otherwise this still costs O(n): the member set is
+     * rebuilt and all four maps are copied, only the url of the added and removed values is looked at.
+     */
+    public AddressIndex<V> update(List<? extends V> values) {
+        Set<V> newMembers = newMembers(values);
+        List<V> removed = new ArrayList<>();
+        for (V value : members) {
+            if (!newMembers.contains(value)) {
+                removed.add(value);
+            }
+        }
+        List<V> added = new ArrayList<>();
+        for (V value : values) {
+            if (!members.contains(value)) {
+                added.add(value);
+            }
+        }
+        if (removed.isEmpty() && added.isEmpty()) {
+            return this;
+        }
+
+        AddressIndex<V> index = new AddressIndex<>(urlGetter, newMembers, addresses.copy(), ips.copy(),
+            new HashMap<>(fallbackAddresses), new HashMap<>(fallbackIps));
+        boolean needRepair = false;
+        for (V value : removed) {
+            needRepair |= index.remove(value);
+        }
+        for (V value : added) {
+            index.put(value, true);
+        }
+        if (needRepair) {
+            // a removed value hid another one with the same key, index the remaining one again
+            for (V value : values) {
+                index.put(value, false);
+            }
+        }
+        return index;
+    }
+
+    public V getByAddress(String host, int port) {
+        long ip = parseIpv4(host);
+        if (ip != NOT_IPV4 && isValidPort(port)) {
+            return addresses.get(ip << 16 | port);
+        }
+        return fallbackAddresses.get(host + ":" + port);
+    }
+
+    public V getByIp(String host) {
+        long ip = parseIpv4(host);
+        if (ip != NOT_IPV4) {
+            return ips.get(ip);
+        }
+        return fallbackIps.get(host);
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    private void put(V value, boolean replace) {
+        URL url = urlGetter.apply(value);
+        String host = url.getHost();
+        int port = url.getPort();
+        long ip = parseIpv4(host);
+        if (ip != NOT_IPV4 && isValidPort(port)) {
+            addresses.put(ip << 16 | port, value, replace);
+            ips.put(ip, value, replace);
+        } else {
+            if (replace) {
+                fallbackAddresses.put(host + ":" + port, value);
+                fallbackIps.put(host, value);
+            } else {
+                fallbackAddresses.putIfAbsent(host + ":" + port, value);
+                fallbackIps.putIfAbsent(host, value);
+            }
+        }
+    }
+
+    /**
+     * @return true if any key of the value has been removed
+     */
+    private boolean remove(V value) {
+        URL url = urlGetter.apply(value);
+        String host = url.getHost();
+        int port = url.getPort();
+        long ip = parseIpv4(host);
+        if (ip != NOT_IPV4 && isValidPort(port)) {
+            boolean removed = addresses.remove(ip << 16 | port, value);
+            return ips.remove(ip, value) || removed;
+        }
+        boolean removed = fallbackAddresses.remove(host + ":" + port, value);
+        return fallbackIps.remove(host, value) || removed;
+    }
+
+    private static <V> Set<V> newMembers(List<? extends V> values) {
+        Set<V> members = Collections.newSetFromMap(new IdentityHashMap<>(values.size()));
+        members.addAll(values);
+        return members;
+    }
+
+    private static boolean isValidPort(int port) {
+        return port >= 0 && port <= 0xFFFF;
+    }
+
+    /**
+     * Parse a dotted decimal IPv4 address into an unsigned int without allocating.
+     *
+     * @return the address, or {@link #NOT_IPV4} if the host is not in canonical IPv4 form
+     */
+    static long parseIpv4(String host) {
+        if (host == null) {
+            return NOT_IPV4;
+        }
+        int length = host.length();
+        if (length < 7 || length > 15) {
+            return NOT_IPV4;
+        }
+        long ip = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < length; i++) {
+            char c = host.charAt(i);
+            if (c == '.') {
+                if (octet < 0 || ++dots > 3) {
+                    return NOT_IPV4;
+                }
+                ip = ip << 8 | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                if (octet == 0) {
+                    // leading zero is not canonical
+                    return NOT_IPV4;
+                }
+                octet = octet < 0 ? c - '0' : octet * 10 + (c - '0');
+                if (octet > 255) {
+                    return NOT_IPV4;
+                }
+            } else {
+                return NOT_IPV4;
+            }
+        }
+        if (dots != 3 || octet < 0) {
+            return NOT_IPV4;
+        }
+        return ip << 8 | octet;
+    }
+
+    /**
+     * Open addressing map from non-negative long keys to values, with linear probing.
+     */
+    private static final class LongMap<V> {
+        private static final long EMPTY = -1L;
+
+        private long[] keys;
+        private Object[] values;
+        private int size;
+
+        LongMap(int expectedSize) {
+            int capacity = 16;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new Object[capacity];
+        }
+
+        private LongMap(long[] keys, Object[] values, int size) {
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+
+        LongMap<V> copy() {
+            return new LongMap<>(keys.clone(), values.clone(), size);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) {
+                    return (V) values[i];
+                }
+                if (k == EMPTY) {
+                    return null;
+                }
+            }
+        }
+
+        void put(long key, V value, boolean replace) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != EMPTY) {
+                if (keys[i] == key) {
+                    if (replace) {
+                        values[i] = value;
+                    }
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        }
+
+        boolean remove(long key, V value) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            if (values[i] != value) {
+                return false;
+            }
+            // shift back the following entries of the cluster, so lookups never stop at the hole
+            int hole = i;
+            for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            keys[hole] = EMPTY;
+            values[hole] = null;
+            size--;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldKeys.length << 1];
+            Arrays.fill(keys, EMPTY);
+            values = new Object[oldKeys.length << 1];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], (V) oldValues[i], true);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
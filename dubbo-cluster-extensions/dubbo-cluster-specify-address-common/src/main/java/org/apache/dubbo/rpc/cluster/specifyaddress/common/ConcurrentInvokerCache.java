@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.specifyaddress.common;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of invokers created for user specified addresses.
+ * <p>
+ * A missing value is loaded on the first thread asking for it, and every caller asking for the key while it is
+ * loading waits for that same load instead of starting another one. Cached values are returned without waiting or
+ * locking. When the cache grows beyond its max size, entries are evicted in the order of a CLOCK: the entry at the
+ * hand is evicted unless it has been accessed since the hand last passed it.
+ * <p>
+ * An evicted value is handed to the destroyer once no caller is still waiting for it. Callers may keep using the value
+ * after it has been returned to them, so the destroyer should not close it right away.
+ */
+public class ConcurrentInvokerCache<K, V> {
+    private final ConcurrentMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    // the clock, entries move from the hand at the head to the tail when they get a second chance
+    private final Queue<Entry<K, V>> clock = new ConcurrentLinkedQueue<>();
+    private final int maxSize;
+    private final Function<K, V> loader;
+    private final Consumer<V> destroyer;
+    private final Executor executor;
+
+    /**
+     * @param executor runs the loads started by {@link #load(Object)}
+     */
+    public ConcurrentInvokerCache(int maxSize, Function<K, V> loader, Consumer<V> destroyer, Executor executor) {
+        this.maxSize = Math.max(maxSize, 1);
+        this.loader = loader;
+        this.destroyer = destroyer;
+        this.executor = executor;
+    }
+
+    /**
+     * Get the value of the key, loading it on the calling thread if it is not cached, or waiting for the load
+     * already in flight.
+     */
+    public V get(K key) {
+        while (true) {
+            Entry<K, V> entry = entries.get(key);
+            boolean created = false;
+            if (entry == null) {
+                Entry<K, V> newEntry = new Entry<>(key);
+                entry = entries.putIfAbsent(key, newEntry);
+                if (entry == null) {
+                    entry = newEntry;
+                    created = true;
+                }
+            }
+            if (!entry.retain()) {
+                // evicted and released meanwhile, look again
+                continue;
+            }
+            try {
+                if (created) {
+                    clock.offer(entry);
+                    evictIfNecessary(entry);
+                    doLoad(entry);
+                } else {
+                    entry.touch();
+                }
+                return join(entry.future);
+            } finally {
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * Start loading the key in the background if it is not cached yet.
+     */
+    public CompletableFuture<V> load(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry != null) {
+            return entry.future;
+        }
+        Entry<K, V> newEntry = new Entry<>(key);
+        entry = entries.putIfAbsent(key, newEntry);
+        if (entry != null) {
+            return entry.future;
+        }
+        clock.offer(newEntry);
+        evictIfNecessary(newEntry);
+        try {
+            executor.execute(() -> doLoad(newEntry));
+        } catch (RejectedExecutionException e) {
+            doLoad(newEntry);
+        }
+        return newEntry.future;
+    }
+
+    /**
+     * Remove and destroy the entries not accessed within the given time. Entries still loading are kept.
+     */
+    public void removeExpired(long expireTime) {
+        long now = System.currentTimeMillis();
+        for (Entry<K, V> entry : entries.values()) {
+            if (entry.future.isDone() && now - entry.lastAccess > expireTime) {
+                remove(entry);
+            }
+        }
+        clock.removeIf(entry -> entries.get(entry.key) != entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    private void doLoad(Entry<K, V> entry) {
+        try {
+            V value = loader.apply(entry.key);
+            entry.lastAccess = System.currentTimeMillis();
+            entry.future.complete(value);
+        } catch (Throwable t) {
+            // let the next caller try again
+            remove(entry);
+            entry.future.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * Moves the hand until the cache is back to its max size. Every pass clears the access marks, so the hand
+     * evicts an entry after at most one full turn. Gives up after two turns, or once the hand comes back to the
+     * current entry a second time, which happens when the entries over the size are still being inserted by other
+     * threads; the next insert evicts them.
+     */
+    private void evictIfNecessary(Entry<K, V> current) {
+        boolean passedCurrent = false;
+        for (int steps = 2 * entries.size(); steps > 0 && entries.size() > maxSize; steps--) {
+            Entry<K, V> entry = clock.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entries.get(entry.key) != entry) {
+                // already removed on expiry
+                continue;
+            }
+            if (entry == current) {
+                clock.offer(entry);
+                if (passedCurrent) {
+                    return;
+                }
+                passedCurrent = true;
+                continue;
+            }
+            if (entry.accessed) {
+                entry.accessed = false;
+                clock.offer(entry);
+                continue;
+            }
+            remove(entry);
+        }
+    }
+
+    private void remove(Entry<K, V> entry) {
+        if (entries.remove(entry.key, entry)) {
+            release(entry);
+        }
+    }
+
+    private void release(Entry<K, V> entry) {
+        if (entry.references.decrementAndGet() == 0) {
+            // a failed load has no value to destroy
+            entry.future.thenAccept(destroyer);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static class Entry<K, V> {
+        private final K key;
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+        // one for the cache until the entry is removed, plus one per caller being handed the value
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile boolean accessed;
+
+        private Entry(K key) {
+            this.key = key;
+        }
+
+        private boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+            if (!accessed) {
+                accessed = true;
+            }
+        }
+    }
+}
@@ -17,6 +17,10 @@
 package org.apache.dubbo.rpc.cluster.specifyaddress.common;
 
 
+/**
+ * @deprecated the routers keep the invokers they create in {@link ConcurrentInvokerCache}
+ */
+@Deprecated
 public class InvokerCache<T> {
     private long lastAccess = System.currentTimeMillis();
     private final T invoker;
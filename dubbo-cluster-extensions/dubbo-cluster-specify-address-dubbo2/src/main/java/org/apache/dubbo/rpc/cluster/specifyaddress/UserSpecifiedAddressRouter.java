@@ -23,27 +23,25 @@ import org.apache.dubbo.common.logger.Logger;
 import org.apache.dubbo.common.logger.LoggerFactory;
 import org.apache.dubbo.common.threadpool.manager.ExecutorRepository;
 import org.apache.dubbo.common.utils.ClassUtils;
-import org.apache.dubbo.common.utils.CollectionUtils;
 import org.apache.dubbo.common.utils.StringUtils;
 import org.apache.dubbo.rpc.Invocation;
 import org.apache.dubbo.rpc.Invoker;
 import org.apache.dubbo.rpc.Protocol;
 import org.apache.dubbo.rpc.RpcException;
 import org.apache.dubbo.rpc.cluster.router.AbstractRouter;
-import org.apache.dubbo.rpc.cluster.specifyaddress.common.InvokerCache;
+import org.apache.dubbo.rpc.cluster.specifyaddress.common.AddressIndex;
+import org.apache.dubbo.rpc.cluster.specifyaddress.common.ConcurrentInvokerCache;
 
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import static org.apache.dubbo.common.constants.CommonConstants.DUBBO;
 import static org.apache.dubbo.common.constants.CommonConstants.GROUP_KEY;
@@ -55,28 +53,36 @@ public class UserSpecifiedAddressRouter<T> extends AbstractRouter {
     private static final Logger logger = LoggerFactory.getLogger(UserSpecifiedAddressRouter.class);
     // protected for ut purpose
     protected static int EXPIRE_TIME = 10 * 60 * 1000;
+    // evicted invokers may still be in use by the calls they have been routed to
+    protected static int DESTROY_DELAY = 60 * 1000;
+    private static final String USER_SPECIFIED_INVOKER_CACHE_SIZE_KEY = "userSpecifiedInvokerCacheSize";
+    private static final int DEFAULT_USER_SPECIFIED_INVOKER_CACHE_SIZE = 1024;
     private volatile List<Invoker<T>> invokers = Collections.emptyList();
-    private volatile Map<String, Invoker<T>> ip2Invoker;
-    private volatile Map<String, Invoker<T>> address2Invoker;
+    private volatile AddressIndex<Invoker<T>> addressIndex;
     private final Protocol protocol;
-    private final Lock cacheLock = new ReentrantLock();
     private final ScheduledExecutorService scheduledExecutorService;
     private final AtomicBoolean launchRemovalTask = new AtomicBoolean(false);
-    private final Map<URL, InvokerCache<Invoker<T>>> newInvokerCache = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentInvokerCache<URL, Invoker<T>> newInvokerCache;
+    private final Consumer<List<Address>> warmUpTarget = this::warmUp;
 
     public UserSpecifiedAddressRouter(URL referenceUrl) {
         super(referenceUrl);
         this.protocol = ExtensionLoader.getExtensionLoader(Protocol.class).getAdaptiveExtension();
-        this.scheduledExecutorService = ExtensionLoader.getExtensionLoader(ExecutorRepository.class).getDefaultExtension().nextScheduledExecutor();
+        ExecutorRepository executorRepository = ExtensionLoader.getExtensionLoader(ExecutorRepository.class).getDefaultExtension();
+        this.scheduledExecutorService = executorRepository.nextScheduledExecutor();
+        this.newInvokerCache = new ConcurrentInvokerCache<>(
+            referenceUrl.getParameter(USER_SPECIFIED_INVOKER_CACHE_SIZE_KEY, DEFAULT_USER_SPECIFIED_INVOKER_CACHE_SIZE),
+            this::refer, this::destroyLater, executorRepository.getSharedExecutor());
+        UserSpecifiedAddressUtil.addWarmUpTarget(referenceUrl.getServiceInterface(), warmUpTarget);
     }
 
     @Override
     public <T> void notify(List<Invoker<T>> invokers) {
         this.invokers = (List) invokers;
         // do not build cache until first Specify Invoke happened
-        if (ip2Invoker != null) {
-            ip2Invoker = processIp((List) invokers);
-            address2Invoker = processAddress((List) invokers);
+        AddressIndex addressIndex = this.addressIndex;
+        if (addressIndex != null) {
+            this.addressIndex = addressIndex.update((List) invokers);
         }
     }
 
@@ -116,9 +122,17 @@ public class UserSpecifiedAddressRouter<T> extends AbstractRouter {
         tryLoadSpecifiedMap();
 
         // try to find in directory
-        URL urlAddress = address.getUrlAddress();
-        String targetAddress = urlAddress.getHost() + ":" + urlAddress.getPort();
-        Invoker<?> invoker = address2Invoker.get(targetAddress);
+        Invoker<?> invoker = findInDirectory(address.getUrlAddress());
+        if (invoker != null) {
+            return invoker;
+        }
+
+        URL newUrl = rebuildAddress(address, getUrl());
+        return getOrBuildInvokerCache(newUrl);
+    }
+
+    private Invoker<?> findInDirectory(URL urlAddress) {
+        Invoker<?> invoker = addressIndex.getByAddress(urlAddress.getHost(), urlAddress.getPort());
         if (invoker != null) {
             AtomicBoolean match = new AtomicBoolean(true);
             if (StringUtils.isNotEmpty(urlAddress.getProtocol())) {
@@ -135,9 +149,7 @@ public class UserSpecifiedAddressRouter<T> extends AbstractRouter {
                 return invoker;
             }
         }
-
-        URL newUrl = rebuildAddress(address, getUrl());
-        return getOrBuildInvokerCache(newUrl);
+        return null;
     }
 
     public Invoker<?> getInvokerByIp(Address address) {
@@ -146,17 +158,9 @@ public class UserSpecifiedAddressRouter<T> extends AbstractRouter {
         String ip = address.getIp();
         int port = address.getPort();
 
-        Invoker<?> targetInvoker;
-        if (port != 0) {
-            targetInvoker = address2Invoker.get(ip + ":" + port);
-            if (targetInvoker != null) {
-                return targetInvoker;
-            }
-        } else {
-            targetInvoker = ip2Invoker.get(ip);
-            if (targetInvoker != null) {
-                return targetInvoker;
-            }
+        Invoker<?> targetInvoker = findByIp(ip, port);
+        if (targetInvoker != null) {
+            return targetInvoker;
         }
 
         if (!address.isNeedToCreate()) {
@@ -174,32 +178,17 @@ public class UserSpecifiedAddressRouter<T> extends AbstractRouter {
     }
 
 
-    private Map<String, Invoker<T>> processIp(List<Invoker<T>> invokerList) {
-        Map<String, Invoker<T>> ip2Invoker = new HashMap<>();
-        for (Invoker<T> invoker : invokerList) {
-            ip2Invoker.put(invoker.getUrl().getHost(), invoker);
-        }
-        return Collections.unmodifiableMap(ip2Invoker);
-    }
-
-    private Map<String, Invoker<T>> processAddress(List<Invoker<T>> addresses) {
-        Map<String, Invoker<T>> address2Invoker = new HashMap<>();
-        for (Invoker<T> invoker : addresses) {
-            address2Invoker.put(invoker.getUrl().getHost() + ":" + invoker.getUrl().getPort(), invoker);
+    private Invoker<T> findByIp(String ip, int port) {
+        if (port != 0) {
+            return addressIndex.getByAddress(ip, port);
         }
-        return Collections.unmodifiableMap(address2Invoker);
+        return addressIndex.getByIp(ip);
     }
 
     // For ut only
     @Deprecated
-    protected Map<String, Invoker<T>> getIp2Invoker() {
-        return ip2Invoker;
-    }
-
-    // For ut only
-    @Deprecated
-    protected Map<String, Invoker<T>> getAddress2Invoker() {
-        return address2Invoker;
+    protected AddressIndex<Invoker<T>> getAddressIndex() {
+        return addressIndex;
     }
 
     // For ut only
@@ -209,21 +198,14 @@ public class UserSpecifiedAddressRouter<T> extends AbstractRouter {
     }
 
     private void tryLoadSpecifiedMap() {
-        if (ip2Invoker != null) {
+        if (addressIndex != null) {
             return;
         }
         synchronized (this) {
-            if (ip2Invoker != null) {
-                return;
-            }
-            List<Invoker<T>> invokers = this.invokers;
-            if (CollectionUtils.isEmpty(invokers)) {
-                address2Invoker = Collections.unmodifiableMap(new HashMap<>());
-                ip2Invoker = Collections.unmodifiableMap(new HashMap<>());
+            if (addressIndex != null) {
                 return;
             }
-            address2Invoker = processAddress(invokers);
-            ip2Invoker = processIp(invokers);
+            addressIndex = AddressIndex.build(this.invokers, Invoker::getUrl);
         }
     }
 
@@ -270,32 +252,51 @@ public class UserSpecifiedAddressRouter<T> extends AbstractRouter {
     private Invoker<T> getOrBuildInvokerCache(URL url) {
         logger.info("Unable to find a proper invoker from directory. Try to create new invoker. New URL: " + url);
 
-        InvokerCache<Invoker<T>> cache;
-        cacheLock.lock();
-        try {
-            cache = newInvokerCache.get(url);
-        } finally {
-            cacheLock.unlock();
-        }
-        if (cache == null) {
-            Invoker<T> invoker = refer(url);
-            cacheLock.lock();
-            try {
-                cache = newInvokerCache.get(url);
-                if (cache == null) {
-                    cache = new InvokerCache<>(invoker);
-                    newInvokerCache.put(url, cache);
-                    if (launchRemovalTask.compareAndSet(false, true)) {
-                        scheduledExecutorService.scheduleAtFixedRate(new RemovalTask(), EXPIRE_TIME / 2, EXPIRE_TIME / 2, TimeUnit.MILLISECONDS);
-                    }
-                } else {
-                    invoker.destroy();
+        launchRemovalTask();
+        return newInvokerCache.get(url);
+    }
+
+    /**
+     * Refer the given addresses in the background, so that the first call specifying one of them does not have to
+     * wait for the connection. Addresses already in the directory are skipped.
+     *
+     * @see UserSpecifiedAddressUtil#warmUp(Class, List)
+     */
+    public void warmUp(List<Address> addresses) {
+        tryLoadSpecifiedMap();
+
+        for (Address address : addresses) {
+            URL url;
+            if (address.getUrlAddress() != null) {
+                if (findInDirectory(address.getUrlAddress()) != null) {
+                    continue;
+                }
+                url = rebuildAddress(address, getUrl());
+            } else if (StringUtils.isNotEmpty(address.getIp())) {
+                if (findByIp(address.getIp(), address.getPort()) != null) {
+                    continue;
                 }
-            } finally {
-                cacheLock.unlock();
+                url = buildAddress(invokers, address, getUrl());
+            } else {
+                continue;
             }
+            launchRemovalTask();
+            newInvokerCache.load(url);
+        }
+    }
+
+    private void launchRemovalTask() {
+        if (launchRemovalTask.compareAndSet(false, true)) {
+            scheduledExecutorService.scheduleAtFixedRate(new RemovalTask(), EXPIRE_TIME / 2, EXPIRE_TIME / 2, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void destroyLater(Invoker<T> invoker) {
+        try {
+            scheduledExecutorService.schedule(invoker::destroy, DESTROY_DELAY, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            invoker.destroy();
         }
-        return cache.getInvoker();
     }
 
     private Invoker<T> refer(URL url) {
@@ -308,27 +309,15 @@ public class UserSpecifiedAddressRouter<T> extends AbstractRouter {
         }
     }
 
+    @Override
+    public void stop() {
+        UserSpecifiedAddressUtil.removeWarmUpTarget(getUrl().getServiceInterface(), warmUpTarget);
+    }
+
     private class RemovalTask implements Runnable {
         @Override
         public void run() {
-            cacheLock.lock();
-            try {
-                if (CollectionUtils.isEmptyMap(newInvokerCache)) {
-                    return;
-                }
-                Iterator<Map.Entry<URL, InvokerCache<Invoker<T>>>> iterator = newInvokerCache.entrySet().iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<URL, InvokerCache<Invoker<T>>> entry = iterator.next();
-                    if (System.currentTimeMillis() - entry.getValue().getLastAccess() > EXPIRE_TIME) {
-                        iterator.remove();
-                        entry.getValue().getInvoker().destroy();
-                    } else {
-                        break;
-                    }
-                }
-            } finally {
-                cacheLock.unlock();
-            }
+            newInvokerCache.removeExpired(EXPIRE_TIME);
         }
     }
 }
@@ -46,12 +46,10 @@ class UserSpecifiedAddressRouterTest {
     void testNotify() {
         UserSpecifiedAddressRouter userSpecifiedAddressRouter = new UserSpecifiedAddressRouter(consumerUrl);
         Assertions.assertEquals(Collections.emptyList(), userSpecifiedAddressRouter.getInvokers());
-        Assertions.assertNull(userSpecifiedAddressRouter.getAddress2Invoker());
-        Assertions.assertNull(userSpecifiedAddressRouter.getIp2Invoker());
+        Assertions.assertNull(userSpecifiedAddressRouter.getAddressIndex());
         userSpecifiedAddressRouter.notify(Collections.emptyList());
         Assertions.assertEquals(Collections.emptyList(), userSpecifiedAddressRouter.getInvokers());
-        Assertions.assertNull(userSpecifiedAddressRouter.getAddress2Invoker());
-        Assertions.assertNull(userSpecifiedAddressRouter.getIp2Invoker());
+        Assertions.assertNull(userSpecifiedAddressRouter.getAddressIndex());
 
         UserSpecifiedAddressUtil.setAddress(new Address("127.0.0.1", 0));
         FailoverClusterInvoker<Object> mockInvoker = Mockito.mock(FailoverClusterInvoker.class);
@@ -65,13 +63,11 @@ class UserSpecifiedAddressRouterTest {
         Assertions.assertThrows(RpcException.class, () ->
             userSpecifiedAddressRouter.route(Collections.emptyList(), consumerUrl, invocation));
 
-        Assertions.assertNotNull(userSpecifiedAddressRouter.getAddress2Invoker());
-        Assertions.assertNotNull(userSpecifiedAddressRouter.getIp2Invoker());
+        Assertions.assertNotNull(userSpecifiedAddressRouter.getAddressIndex());
 
         userSpecifiedAddressRouter.notify(Collections.emptyList());
         Assertions.assertEquals(Collections.emptyList(), userSpecifiedAddressRouter.getInvokers());
-        Assertions.assertNotNull(userSpecifiedAddressRouter.getAddress2Invoker());
-        Assertions.assertNotNull(userSpecifiedAddressRouter.getIp2Invoker());
+        Assertions.assertNotNull(userSpecifiedAddressRouter.getAddressIndex());
     }
 
     @Test
@@ -20,62 +20,66 @@ import org.apache.dubbo.common.URL;
 import org.apache.dubbo.common.logger.Logger;
 import org.apache.dubbo.common.logger.LoggerFactory;
 import org.apache.dubbo.common.threadpool.manager.ExecutorRepository;
-import org.apache.dubbo.common.utils.CollectionUtils;
 import org.apache.dubbo.common.utils.Holder;
 import org.apache.dubbo.common.utils.StringUtils;
 import org.apache.dubbo.rpc.Invocation;
 import org.apache.dubbo.rpc.Invoker;
 import org.apache.dubbo.rpc.Protocol;
 import org.apache.dubbo.rpc.RpcException;
+import org.apache.dubbo.rpc.RpcInvocation;
 import org.apache.dubbo.rpc.cluster.router.RouterSnapshotNode;
 import org.apache.dubbo.rpc.cluster.router.state.AbstractStateRouter;
 import org.apache.dubbo.rpc.cluster.router.state.BitList;
-import org.apache.dubbo.rpc.cluster.specifyaddress.common.InvokerCache;
+import org.apache.dubbo.rpc.cluster.specifyaddress.common.AddressIndex;
+import org.apache.dubbo.rpc.cluster.specifyaddress.common.ConcurrentInvokerCache;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class UserSpecifiedAddressRouter<T> extends AbstractStateRouter<T> {
     private static final Logger logger = LoggerFactory.getLogger(UserSpecifiedAddressRouter.class);
     // protected for ut purpose
     protected static int EXPIRE_TIME = 10 * 60 * 1000;
+    // evicted invokers may still be in use by the calls they have been routed to
+    protected static int DESTROY_DELAY = 60 * 1000;
     private static final String USER_SPECIFIED_SERVICE_ADDRESS_BUILDER_KEY = "userSpecifiedServiceAddressBuilder";
+    private static final String USER_SPECIFIED_INVOKER_CACHE_SIZE_KEY = "userSpecifiedInvokerCacheSize";
+    private static final int DEFAULT_USER_SPECIFIED_INVOKER_CACHE_SIZE = 1024;
     private volatile BitList<Invoker<T>> invokers = BitList.emptyList();
-    private volatile Map<String, Invoker<T>> ip2Invoker;
-    private volatile Map<String, Invoker<T>> address2Invoker;
-    private final Lock cacheLock = new ReentrantLock();
-    private final Map<URL, InvokerCache<Invoker<T>>> newInvokerCache = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile AddressIndex<Invoker<T>> addressIndex;
+    private final ConcurrentInvokerCache<URL, Invoker<T>> newInvokerCache;
     private final UserSpecifiedServiceAddressBuilder userSpecifiedServiceAddressBuilder;
     private final Protocol protocol;
     private final ScheduledExecutorService scheduledExecutorService;
     private final AtomicBoolean launchRemovalTask = new AtomicBoolean(false);
     private volatile ScheduledFuture<?> removalFuture;
+    private final Consumer<List<Address>> warmUpTarget = this::warmUp;
 
     public UserSpecifiedAddressRouter(URL referenceUrl) {
         super(referenceUrl);
-        this.scheduledExecutorService = referenceUrl.getScopeModel().getDefaultExtension(ExecutorRepository.class).nextScheduledExecutor();
+        ExecutorRepository executorRepository = referenceUrl.getScopeModel().getDefaultExtension(ExecutorRepository.class);
+        this.scheduledExecutorService = executorRepository.nextScheduledExecutor();
         this.protocol = referenceUrl.getOrDefaultFrameworkModel().getExtensionLoader(Protocol.class).getAdaptiveExtension();
         this.userSpecifiedServiceAddressBuilder = referenceUrl.getScopeModel().getExtensionLoader(UserSpecifiedServiceAddressBuilder.class)
             .getExtension(referenceUrl.getParameter(USER_SPECIFIED_SERVICE_ADDRESS_BUILDER_KEY, DefaultUserSpecifiedServiceAddressBuilder.NAME));
+        this.newInvokerCache = new ConcurrentInvokerCache<>(
+            referenceUrl.getParameter(USER_SPECIFIED_INVOKER_CACHE_SIZE_KEY, DEFAULT_USER_SPECIFIED_INVOKER_CACHE_SIZE),
+            this::refer, this::destroyLater, executorRepository.getSharedExecutor());
+        UserSpecifiedAddressUtil.addWarmUpTarget(referenceUrl.getServiceInterface(), warmUpTarget);
     }
 
     @Override
     public void notify(BitList<Invoker<T>> invokers) {
         this.invokers = invokers;
         // do not build cache until first Specify Invoke happened
-        if (ip2Invoker != null) {
-            ip2Invoker = processIp(invokers);
-            address2Invoker = processAddress(invokers);
+        AddressIndex<Invoker<T>> addressIndex = this.addressIndex;
+        if (addressIndex != null) {
+            this.addressIndex = addressIndex.update(invokers);
         }
     }
 
@@ -144,9 +148,18 @@ public class UserSpecifiedAddressRouter<T> extends AbstractStateRouter<T> {
         tryLoadSpecifiedMap();
 
         // try to find in directory
-        URL urlAddress = address.getUrlAddress();
-        String targetAddress = urlAddress.getHost() + ":" + urlAddress.getPort();
-        Invoker<T> invoker = address2Invoker.get(targetAddress);
+        Invoker<T> invoker = findInDirectory(address.getUrlAddress());
+        if (invoker != null) {
+            return invoker;
+        }
+
+        // create new one
+        URL url = userSpecifiedServiceAddressBuilder.rebuildAddress(invokers, address, invocation, getUrl());
+        return getOrBuildInvokerCache(url);
+    }
+
+    private Invoker<T> findInDirectory(URL urlAddress) {
+        Invoker<T> invoker = addressIndex.getByAddress(urlAddress.getHost(), urlAddress.getPort());
         if (invoker != null) {
             AtomicBoolean match = new AtomicBoolean(true);
             if (StringUtils.isNotEmpty(urlAddress.getProtocol())) {
@@ -163,41 +176,53 @@ public class UserSpecifiedAddressRouter<T> extends AbstractStateRouter<T> {
                 return invoker;
             }
         }
-
-        // create new one
-        URL url = userSpecifiedServiceAddressBuilder.rebuildAddress(invokers, address, invocation, getUrl());
-        return getOrBuildInvokerCache(url);
+        return null;
     }
 
     private Invoker<T> getOrBuildInvokerCache(URL url) {
         logger.info("Unable to find a proper invoker from directory. Try to create new invoker. New URL: " + url);
 
-        InvokerCache<Invoker<T>> cache;
-        cacheLock.lock();
-        try {
-            cache = newInvokerCache.get(url);
-        } finally {
-            cacheLock.unlock();
-        }
-        if (cache == null) {
-            Invoker<T> invoker = refer(url);
-            cacheLock.lock();
-            try {
-                cache = newInvokerCache.get(url);
-                if (cache == null) {
-                    cache = new InvokerCache<>(invoker);
-                    newInvokerCache.put(url, cache);
-                    if (launchRemovalTask.compareAndSet(false, true)) {
-                        removalFuture = scheduledExecutorService.scheduleAtFixedRate(new RemovalTask(), EXPIRE_TIME / 2, EXPIRE_TIME / 2, TimeUnit.MILLISECONDS);
-                    }
-                } else {
-                    invoker.destroy();
+        launchRemovalTask();
+        return newInvokerCache.get(url);
+    }
+
+    /**
+     * Refer the given addresses in the background, so that the first call specifying one of them does not have to
+     * wait for the connection. Addresses already in the directory are skipped.
+     *
+     * @see UserSpecifiedAddressUtil#warmUp(Class, List)
+     */
+    public void warmUp(List<Address> addresses) {
+        tryLoadSpecifiedMap();
+
+        RpcInvocation invocation = new RpcInvocation();
+        invocation.setServiceName(getUrl().getServiceInterface());
+        invocation.setTargetServiceUniqueName(getUrl().getServiceKey());
+
+        for (Address address : addresses) {
+            URL url;
+            if (address.getUrlAddress() != null) {
+                if (findInDirectory(address.getUrlAddress()) != null) {
+                    continue;
+                }
+                url = userSpecifiedServiceAddressBuilder.rebuildAddress(invokers, address, invocation, getUrl());
+            } else if (StringUtils.isNotEmpty(address.getIp())) {
+                if (findByIp(address.getIp(), address.getPort()) != null) {
+                    continue;
                 }
-            } finally {
-                cacheLock.unlock();
+                url = userSpecifiedServiceAddressBuilder.buildAddress(invokers, address, invocation, getUrl());
+            } else {
+                continue;
             }
+            launchRemovalTask();
+            newInvokerCache.load(url);
+        }
+    }
+
+    private void launchRemovalTask() {
+        if (launchRemovalTask.compareAndSet(false, true)) {
+            removalFuture = scheduledExecutorService.scheduleAtFixedRate(new RemovalTask(), EXPIRE_TIME / 2, EXPIRE_TIME / 2, TimeUnit.MILLISECONDS);
         }
-        return cache.getInvoker();
     }
 
     public Invoker<T> getInvokerByIp(Address address) {
@@ -206,12 +231,7 @@ public class UserSpecifiedAddressRouter<T> extends AbstractStateRouter<T> {
         String ip = address.getIp();
         int port = address.getPort();
 
-        Invoker<T> targetInvoker;
-        if (port != 0) {
-            targetInvoker = address2Invoker.get(ip + ":" + port);
-        } else {
-            targetInvoker = ip2Invoker.get(ip);
-        }
+        Invoker<T> targetInvoker = findByIp(ip, port);
         if (targetInvoker != null) {
             return targetInvoker;
         }
@@ -223,10 +243,25 @@ public class UserSpecifiedAddressRouter<T> extends AbstractStateRouter<T> {
         return null;
     }
 
+    private Invoker<T> findByIp(String ip, int port) {
+        if (port != 0) {
+            return addressIndex.getByAddress(ip, port);
+        }
+        return addressIndex.getByIp(ip);
+    }
+
     public Invoker<T> createInvoker(Address address, Invocation invocation) {
         return getOrBuildInvokerCache(userSpecifiedServiceAddressBuilder.buildAddress(invokers, address, invocation, getUrl()));
     }
 
+    private void destroyLater(Invoker<T> invoker) {
+        try {
+            scheduledExecutorService.schedule(invoker::destroy, DESTROY_DELAY, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            invoker.destroy();
+        }
+    }
+
     private Invoker<T> refer(URL url) {
         return (Invoker<T>) protocol.refer(getUrl().getServiceModel().getServiceInterfaceClass(), url);
     }
@@ -236,32 +271,10 @@ public class UserSpecifiedAddressRouter<T> extends AbstractStateRouter<T> {
             + getUrl().getServiceKey() + "]");
     }
 
-    private Map<String, Invoker<T>> processIp(List<Invoker<T>> invokerList) {
-        Map<String, Invoker<T>> ip2Invoker = new HashMap<>();
-        for (Invoker<T> invoker : invokerList) {
-            ip2Invoker.put(invoker.getUrl().getHost(), invoker);
-        }
-        return Collections.unmodifiableMap(ip2Invoker);
-    }
-
-    private Map<String, Invoker<T>> processAddress(List<Invoker<T>> addresses) {
-        Map<String, Invoker<T>> address2Invoker = new HashMap<>();
-        for (Invoker<T> invoker : addresses) {
-            address2Invoker.put(invoker.getUrl().getHost() + ":" + invoker.getUrl().getPort(), invoker);
-        }
-        return Collections.unmodifiableMap(address2Invoker);
-    }
-
-    // For ut only
-    @Deprecated
-    protected Map<String, Invoker<T>> getIp2Invoker() {
-        return ip2Invoker;
-    }
-
     // For ut only
     @Deprecated
-    protected Map<String, Invoker<T>> getAddress2Invoker() {
-        return address2Invoker;
+    protected AddressIndex<Invoker<T>> getAddressIndex() {
+        return addressIndex;
     }
 
     // For ut only
@@ -272,31 +285,25 @@ public class UserSpecifiedAddressRouter<T> extends AbstractStateRouter<T> {
 
     // For ut only
     @Deprecated
-    protected Map<URL, InvokerCache<Invoker<T>>> getNewInvokerCache() {
+    protected ConcurrentInvokerCache<URL, Invoker<T>> getNewInvokerCache() {
         return newInvokerCache;
     }
 
     private void tryLoadSpecifiedMap() {
-        if (ip2Invoker != null) {
+        if (addressIndex != null) {
             return;
         }
         synchronized (this) {
-            if (ip2Invoker != null) {
+            if (addressIndex != null) {
                 return;
             }
-            BitList<Invoker<T>> invokers = this.invokers;
-            if (CollectionUtils.isEmpty(invokers)) {
-                address2Invoker = Collections.unmodifiableMap(new HashMap<>());
-                ip2Invoker = Collections.unmodifiableMap(new HashMap<>());
-                return;
-            }
-            address2Invoker = processAddress(invokers);
-            ip2Invoker = processIp(invokers);
+            addressIndex = AddressIndex.build(this.invokers, Invoker::getUrl);
         }
     }
 
     @Override
     public void stop() {
+        UserSpecifiedAddressUtil.removeWarmUpTarget(getUrl().getServiceInterface(), warmUpTarget);
         if (removalFuture != null) {
             removalFuture.cancel(false);
         }
@@ -305,24 +312,7 @@ public class UserSpecifiedAddressRouter<T> extends AbstractStateRouter<T> {
     private class RemovalTask implements Runnable {
         @Override
         public void run() {
-            cacheLock.lock();
-            try {
-                if (CollectionUtils.isEmptyMap(newInvokerCache)) {
-                    return;
-                }
-                Iterator<Map.Entry<URL, InvokerCache<Invoker<T>>>> iterator = newInvokerCache.entrySet().iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<URL, InvokerCache<Invoker<T>>> entry = iterator.next();
-                    if (System.currentTimeMillis() - entry.getValue().getLastAccess() > EXPIRE_TIME) {
-                        iterator.remove();
-                        entry.getValue().getInvoker().destroy();
-                    } else {
-                        break;
-                    }
-                }
-            } finally {
-                cacheLock.unlock();
-            }
+            newInvokerCache.removeExpired(EXPIRE_TIME);
         }
     }
 }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.specifyaddress;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.rpc.cluster.specifyaddress.common.AddressIndex;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+class AddressIndexTest {
+    @Test
+    void testLookup() {
+        URL url1 = URL.valueOf("dubbo://127.0.0.1:20880");
+        URL url2 = URL.valueOf("dubbo://127.0.0.1:20881");
+        URL url3 = URL.valueOf("dubbo://[::1]:20880");
+        URL url4 = URL.valueOf("dubbo://localhost:20880");
+        AddressIndex<URL> index = AddressIndex.build(Arrays.asList(url1, url2, url3, url4), Function.identity());
+
+        Assertions.assertSame(url1, index.getByAddress("127.0.0.1", 20880));
+        Assertions.assertSame(url2, index.getByAddress("127.0.0.1", 20881));
+        Assertions.assertSame(url2, index.getByIp("127.0.0.1"));
+        Assertions.assertSame(url3, index.getByAddress(url3.getHost(), 20880));
+        Assertions.assertSame(url3, index.getByIp(url3.getHost()));
+        Assertions.assertSame(url4, index.getByAddress("localhost", 20880));
+        Assertions.assertNull(index.getByAddress("127.0.0.1", 20882));
+        Assertions.assertNull(index.getByAddress("127.0.0.01", 20880));
+        Assertions.assertNull(index.getByIp("127.0.0.2"));
+        Assertions.assertNull(index.getByIp("256.0.0.1"));
+    }
+
+    @Test
+    void testUpdate() {
+        List<URL> urls = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            urls.add(URL.valueOf("dubbo://10.0." + (i / 10) + "." + (i % 10) + ":" + (20880 + i % 3)));
+        }
+        AddressIndex<URL> index = AddressIndex.build(urls, Function.identity());
+
+        List<URL> updated = new ArrayList<>(urls.subList(50, 100));
+        URL sameIp = URL.valueOf("dubbo://10.0.9.9:30000");
+        URL ipv6 = URL.valueOf("dubbo://[fe80::1]:20880");
+        updated.add(sameIp);
+        updated.add(ipv6);
+        AddressIndex<URL> next = index.update(updated);
+
+        Assertions.assertEquals(100, index.size());
+        Assertions.assertEquals(52, next.size());
+        for (URL url : urls) {
+            Assertions.assertSame(url, index.getByAddress(url.getHost(), url.getPort()));
+        }
+        for (int i = 0; i < 50; i++) {
+            URL url = urls.get(i);
+            Assertions.assertNull(next.getByAddress(url.getHost(), url.getPort()));
+            Assertions.assertNull(next.getByIp(url.getHost()));
+        }
+        for (URL url : updated) {
+            Assertions.assertSame(url, next.getByAddress(url.getHost(), url.getPort()));
+        }
+        Assertions.assertSame(sameIp, next.getByIp("10.0.9.9"));
+        Assertions.assertSame(ipv6, next.getByIp(ipv6.getHost()));
+        Assertions.assertSame(next, next.update(new ArrayList<>(updated)));
+
+        // removing the value indexed by ip falls back to another one with the same ip
+        updated.remove(sameIp);
+        Assertions.assertSame(urls.get(99), next.update(updated).getByIp("10.0.9.9"));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.rpc.cluster.specifyaddress;
+
+import org.apache.dubbo.rpc.cluster.specifyaddress.common.ConcurrentInvokerCache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+class ConcurrentInvokerCacheTest {
+    @Test
+    void testSingleLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ConcurrentInvokerCache<String, String> cache = new ConcurrentInvokerCache<>(16, key -> {
+                loads.incrementAndGet();
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return key + "-value";
+            }, value -> {}, executor);
+
+            CompletableFuture<String> warmUp = cache.load("a");
+            Future<String> first = executor.submit(() -> cache.get("a"));
+            Future<String> second = executor.submit(() -> cache.get("a"));
+            latch.countDown();
+
+            Assertions.assertEquals("a-value", first.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("a-value", second.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("a-value", warmUp.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testEviction() throws InterruptedException {
+        List<String> destroyed = new CopyOnWriteArrayList<>();
+        ConcurrentInvokerCache<String, String> cache =
+                new ConcurrentInvokerCache<>(2, key -> key, destroyed::add, Runnable::run);
+
+        cache.get("a");
+        Thread.sleep(5);
+        cache.get("b");
+        Thread.sleep(5);
+        cache.get("a");
+        cache.get("c");
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertTrue(cache.containsKey("a"));
+        Assertions.assertTrue(cache.containsKey("c"));
+        Assertions.assertEquals(1, destroyed.size());
+        Assertions.assertEquals("b", destroyed.get(0));
+
+        Thread.sleep(5);
+        cache.removeExpired(1);
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(3, destroyed.size());
+    }
+
+    @Test
+    void testDestroyAfterHandedOver() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Map<String, Thread> destroyed = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ConcurrentInvokerCache<String, String> cache = new ConcurrentInvokerCache<>(1, key -> {
+                if ("a".equals(key)) {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return key;
+            }, value -> destroyed.put(value, Thread.currentThread()), executor);
+
+            cache.load("a");
+            AtomicReference<String> handed = new AtomicReference<>();
+            Thread waiter = new Thread(() -> handed.set(cache.get("a")));
+            waiter.start();
+            while (waiter.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+
+            // evicts a while the waiter is still waiting for it
+            Assertions.assertEquals("b", cache.get("b"));
+            Assertions.assertFalse(cache.containsKey("a"));
+            Assertions.assertTrue(destroyed.isEmpty());
+
+            latch.countDown();
+            waiter.join(5000);
+            Assertions.assertEquals("a", handed.get());
+            // destroyed by the waiter once it has been handed the value
+            Assertions.assertSame(waiter, destroyed.get("a"));
+            Assertions.assertFalse(destroyed.containsKey("b"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testLoadFailure() {
+        AtomicInteger loads = new AtomicInteger();
+        ConcurrentInvokerCache<String, String> cache = new ConcurrentInvokerCache<>(16, key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("refer failed");
+            }
+            return key;
+        }, value -> {}, Runnable::run);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.get("a"));
+        Assertions.assertFalse(cache.containsKey("a"));
+        Assertions.assertEquals("a", cache.get("a"));
+    }
+}
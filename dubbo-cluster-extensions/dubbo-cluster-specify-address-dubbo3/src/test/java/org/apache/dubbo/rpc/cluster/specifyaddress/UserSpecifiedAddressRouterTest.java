@@ -61,12 +61,10 @@ class UserSpecifiedAddressRouterTest {
     void testNotify() {
         UserSpecifiedAddressRouter<Object> userSpecifiedAddressRouter = new UserSpecifiedAddressRouter<>(consumerUrl);
         Assertions.assertEquals(BitList.emptyList(), userSpecifiedAddressRouter.getInvokers());
-        Assertions.assertNull(userSpecifiedAddressRouter.getAddress2Invoker());
-        Assertions.assertNull(userSpecifiedAddressRouter.getIp2Invoker());
+        Assertions.assertNull(userSpecifiedAddressRouter.getAddressIndex());
         userSpecifiedAddressRouter.notify(BitList.emptyList());
         Assertions.assertEquals(BitList.emptyList(), userSpecifiedAddressRouter.getInvokers());
-        Assertions.assertNull(userSpecifiedAddressRouter.getAddress2Invoker());
-        Assertions.assertNull(userSpecifiedAddressRouter.getIp2Invoker());
+        Assertions.assertNull(userSpecifiedAddressRouter.getAddressIndex());
 
         Invocation invocation = new RpcInvocation();
         Invoker mockInvoker = Mockito.mock(Invoker.class);
@@ -78,13 +76,11 @@ class UserSpecifiedAddressRouterTest {
         Assertions.assertThrows(RpcException.class, () ->
             userSpecifiedAddressRouter.doRoute(BitList.emptyList(), consumerUrl, invocation, false, null, null));
 
-        Assertions.assertNotNull(userSpecifiedAddressRouter.getAddress2Invoker());
-        Assertions.assertNotNull(userSpecifiedAddressRouter.getIp2Invoker());
+        Assertions.assertNotNull(userSpecifiedAddressRouter.getAddressIndex());
 
         userSpecifiedAddressRouter.notify(BitList.emptyList());
         Assertions.assertEquals(BitList.emptyList(), userSpecifiedAddressRouter.getInvokers());
-        Assertions.assertNotNull(userSpecifiedAddressRouter.getAddress2Invoker());
-        Assertions.assertNotNull(userSpecifiedAddressRouter.getIp2Invoker());
+        Assertions.assertNotNull(userSpecifiedAddressRouter.getAddressIndex());
     }
 
     @Test
@@ -272,4 +268,33 @@ class UserSpecifiedAddressRouterTest {
         UserSpecifiedAddressRouter.EXPIRE_TIME = 10 * 60 * 1000;
 
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWarmUp() throws InterruptedException {
+        consumerUrl = consumerUrl.addParameter("interface", DemoService.class.getName());
+        UserSpecifiedAddressRouter<Object> userSpecifiedAddressRouter = new UserSpecifiedAddressRouter<>(consumerUrl);
+
+        UserSpecifiedAddressUtil.warmUp(DemoService.class, Collections.singletonList(new Address("127.0.0.4", 20880)));
+        for (int i = 0; i < 500 && userSpecifiedAddressRouter.getNewInvokerCache().size() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(1, userSpecifiedAddressRouter.getNewInvokerCache().size());
+
+        UserSpecifiedAddressUtil.setAddress(new Address("127.0.0.4", 20880, true));
+        Invocation invocation = new RpcInvocation();
+        Invoker<Object> mockInvoker = Mockito.mock(Invoker.class);
+        AddressSpecifyClusterFilter clusterFilter = new AddressSpecifyClusterFilter();
+        clusterFilter.invoke(mockInvoker, invocation);
+        BitList<Invoker<Object>> invokers = userSpecifiedAddressRouter.doRoute(BitList.emptyList(), consumerUrl, invocation, false, null, null);
+        Assertions.assertEquals(1, invokers.size());
+        Assertions.assertEquals("127.0.0.4", invokers.get(0).getUrl().getHost());
+        Assertions.assertEquals(1, userSpecifiedAddressRouter.getNewInvokerCache().size());
+
+        userSpecifiedAddressRouter.stop();
+        // no longer reachable once stopped
+        UserSpecifiedAddressUtil.warmUp(DemoService.class, Collections.singletonList(new Address("127.0.0.5", 20880)));
+        Thread.sleep(50);
+        Assertions.assertEquals(1, userSpecifiedAddressRouter.getNewInvokerCache().size());
+    }
 }
@@ -34,8 +34,11 @@ import com.tencent.polaris.common.registry.PolarisOperatorDelegate;
 import org.apache.dubbo.common.URL;
 import org.apache.dubbo.common.constants.CommonConstants;
 import org.apache.dubbo.common.extension.Activate;
+import org.apache.dubbo.common.extension.ExtensionLoader;
+import org.apache.dubbo.common.lang.ShutdownHookCallbacks;
 import org.apache.dubbo.common.logger.Logger;
 import org.apache.dubbo.common.logger.LoggerFactory;
+import org.apache.dubbo.common.threadpool.manager.ExecutorRepository;
 import org.apache.dubbo.rpc.AsyncRpcResult;
 import org.apache.dubbo.rpc.Filter;
 import org.apache.dubbo.rpc.Invocation;
@@ -45,6 +48,7 @@ import org.apache.dubbo.rpc.RpcException;
 
 import java.util.Objects;
 import java.util.ServiceLoader;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Activate(group = CommonConstants.CONSUMER)
@@ -52,8 +56,14 @@ public class CircuitBreakerFilter extends PolarisOperatorDelegate implements Fil
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreakerFilter.class);
 
+    private static final int REPORT_BUFFER_SIZE = 8192;
+
+    private static final long REPORT_INTERVAL_MILLIS = 50;
+
     private final CallAbortCallback callback;
 
+    private final ResourceStatReporter reporter;
+
     public CircuitBreakerFilter() {
         ServiceLoader<CallAbortCallback> loader = ServiceLoader.load(CallAbortCallback.class);
         CallAbortCallback instance = loader.iterator().next();
@@ -63,6 +73,12 @@ public class CircuitBreakerFilter extends PolarisOperatorDelegate implements Fil
             this.callback = new DefaultCallAbortCallback();
         }
 
+        ScheduledExecutorService scheduler = ExtensionLoader.getExtensionLoader(ExecutorRepository.class)
+            .getDefaultExtension().nextScheduledExecutor();
+        this.reporter = new ResourceStatReporter(REPORT_BUFFER_SIZE, REPORT_INTERVAL_MILLIS, scheduler,
+            this::createInstanceResource, this::report);
+        ShutdownHookCallbacks.INSTANCE.addCallback(reporter::destroy);
+
         LOGGER.info("[POLARIS] init polaris circuitbreaker");
     }
 
@@ -101,9 +117,14 @@ public class CircuitBreakerFilter extends PolarisOperatorDelegate implements Fil
                 responseContext.setDuration(System.currentTimeMillis() - startTimeMilli);
                 handler.onError(responseContext);
             }
-            ResourceStat resourceStat = createInstanceResourceStat(invoker, invocation, responseContext,
-                responseContext.getDuration());
-            circuitBreakAPI.report(resourceStat);
+            Throwable error = responseContext.getError();
+            RetStatus retStatus = getRetStatus(error);
+            int code = getRetCode(error);
+            long delay = responseContext.getDuration();
+            if (!reporter.offer(invoker, code, delay, retStatus)) {
+                // buffer is full, report on the caller thread
+                circuitBreakAPI.report(new ResourceStat(createInstanceResource(invoker), code, delay, retStatus));
+            }
             if (result != null) {
                 return result;
             }
@@ -113,38 +134,51 @@ public class CircuitBreakerFilter extends PolarisOperatorDelegate implements Fil
         }
     }
 
-    private ResourceStat createInstanceResourceStat(Invoker<?> invoker, Invocation invocation,
-                                                    InvokeContext.ResponseContext context, long delay) {
-        URL url = invoker.getUrl();
-        Throwable exception = context.getError();
-        RetStatus retStatus = RetStatus.RetSuccess;
-        int code = 0;
-        if (null != exception) {
-            retStatus = RetStatus.RetFail;
-            if (exception instanceof RpcException) {
-                RpcException rpcException = (RpcException) exception;
-                code = rpcException.getCode();
-                if (StringUtils.isNotBlank(rpcException.getMessage()) && rpcException.getMessage()
-                    .contains(PolarisBlockException.PREFIX)) {
-                    // 限流异常不进行熔断
-                    retStatus = RetStatus.RetFlowControl;
-                }
-                if (rpcException.isTimeout()) {
-                    retStatus = RetStatus.RetTimeout;
-                }
-            } else {
-                code = -1;
+    private RetStatus getRetStatus(Throwable exception) {
+        if (null == exception) {
+            return RetStatus.RetSuccess;
+        }
+        RetStatus retStatus = RetStatus.RetFail;
+        if (exception instanceof RpcException) {
+            RpcException rpcException = (RpcException) exception;
+            if (StringUtils.isNotBlank(rpcException.getMessage()) && rpcException.getMessage()
+                .contains(PolarisBlockException.PREFIX)) {
+                // 限流异常不进行熔断
+                retStatus = RetStatus.RetFlowControl;
+            }
+            if (rpcException.isTimeout()) {
+                retStatus = RetStatus.RetTimeout;
             }
         }
+        return retStatus;
+    }
+
+    private int getRetCode(Throwable exception) {
+        if (null == exception) {
+            return 0;
+        }
+        if (exception instanceof RpcException) {
+            return ((RpcException) exception).getCode();
+        }
+        return -1;
+    }
 
+    private Resource createInstanceResource(Invoker<?> invoker) {
+        URL url = invoker.getUrl();
         ServiceKey calleeServiceKey = createCalleeService(invoker);
-        Resource resource = new InstanceResource(
+        return new InstanceResource(
             calleeServiceKey,
             url.getHost(),
             url.getPort(),
             new ServiceKey()
         );
-        return new ResourceStat(resource, code, delay, retStatus);
+    }
+
+    private void report(ResourceStat resourceStat) {
+        PolarisOperator polarisOperator = getPolarisOperator();
+        if (null != polarisOperator) {
+            polarisOperator.getCircuitBreakAPI().report(resourceStat);
+        }
     }
 
     private ServiceKey createCalleeService(Invoker<?> invoker) {
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.filter.dubbo2;
+
+import com.tencent.polaris.api.plugin.circuitbreaker.ResourceStat;
+import com.tencent.polaris.api.plugin.circuitbreaker.entity.Resource;
+import com.tencent.polaris.api.pojo.RetStatus;
+import org.apache.dubbo.common.logger.Logger;
+import org.apache.dubbo.common.logger.LoggerFactory;
+import org.apache.dubbo.rpc.Invoker;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reports invocation stats to polaris in the background.
+ * <p>
+ * Callers only write the stat fields into a bounded lock-free ring buffer. A drain task on the given scheduler takes
+ * them out every interval while there are stats to report, and stops once the buffer is idle until the next offer.
+ * Stats of the same invoker, code and status whose delays fall into the same bucket are merged in a window, and each
+ * group is reported with one shared {@link ResourceStat} carrying the mean delay, so polaris still sees every call.
+ */
+public class ResourceStatReporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceStatReporter.class);
+
+    // delays keep this many significant bits, so merged delays differ by less than 1/16
+    private static final int DELAY_BUCKET_BITS = 5;
+
+    private final int mask;
+
+    // sequence of each slot: equal to the claiming position when free, position + 1 when published
+    private final AtomicLongArray sequences;
+
+    private final Invoker<?>[] invokers;
+
+    private final int[] codes;
+
+    private final long[] delays;
+
+    private final RetStatus[] statuses;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    // guarded by this
+    private long head;
+
+    private final long intervalMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    // true while a drain task is scheduled or running
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private volatile boolean destroyed;
+
+    private final Function<Invoker<?>, Resource> resourceFactory;
+
+    private final Consumer<ResourceStat> reportAction;
+
+    public ResourceStatReporter(int capacity, long intervalMillis, ScheduledExecutorService scheduler,
+                                Function<Invoker<?>, Resource> resourceFactory, Consumer<ResourceStat> reportAction) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.invokers = new Invoker<?>[size];
+        this.codes = new int[size];
+        this.delays = new long[size];
+        this.statuses = new RetStatus[size];
+        this.intervalMillis = intervalMillis;
+        this.scheduler = scheduler;
+        this.resourceFactory = resourceFactory;
+        this.reportAction = reportAction;
+    }
+
+    /**
+     * @return false if the buffer is full or the reporter is destroyed, the caller should report the stat by itself
+     */
+    public boolean offer(Invoker<?> invoker, int code, long delay, RetStatus status) {
+        if (destroyed) {
+            return false;
+        }
+        long position;
+        int index;
+        for (; ; ) {
+            position = tail.get();
+            index = (int) (position & mask);
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                return false;
+            }
+        }
+        invokers[index] = invoker;
+        codes[index] = code;
+        delays[index] = delay;
+        statuses[index] = status;
+        sequences.lazySet(index, position + 1);
+        if (!draining.get() && draining.compareAndSet(false, true)) {
+            schedule();
+        }
+        return true;
+    }
+
+    /**
+     * Report the stats left in the buffer, later offers are rejected.
+     */
+    public void destroy() {
+        destroyed = true;
+        drain();
+    }
+
+    private void schedule() {
+        try {
+            scheduler.schedule(this::run, intervalMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the scheduler is shut down with the application
+            draining.set(false);
+            drain();
+        }
+    }
+
+    private void run() {
+        if (drain() > 0) {
+            schedule();
+            return;
+        }
+        // idle, the next offer starts draining again
+        draining.set(false);
+        if (hasPending() && draining.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    private synchronized boolean hasPending() {
+        return sequences.get((int) (head & mask)) == head + 1;
+    }
+
+    synchronized int drain() {
+        int drained = 0;
+        try {
+            Map<StatKey, long[]> window = new HashMap<>();
+            for (; ; ) {
+                int index = (int) (head & mask);
+                if (sequences.get(index) != head + 1) {
+                    break;
+                }
+                long delay = delays[index];
+                StatKey key = new StatKey(invokers[index], codes[index], bucket(delay), statuses[index]);
+                invokers[index] = null;
+                sequences.lazySet(index, head + mask + 1);
+                head++;
+                drained++;
+                long[] counter = window.computeIfAbsent(key, k -> new long[2]);
+                counter[0]++;
+                counter[1] += delay;
+            }
+
+            Map<Invoker<?>, Resource> resources = new IdentityHashMap<>();
+            for (Map.Entry<StatKey, long[]> entry : window.entrySet()) {
+                StatKey key = entry.getKey();
+                long[] counter = entry.getValue();
+                Resource resource = resources.computeIfAbsent(key.invoker, resourceFactory);
+                ResourceStat stat = new ResourceStat(resource, key.code, counter[1] / counter[0], key.status);
+                for (long i = counter[0]; i > 0; i--) {
+                    reportAction.accept(stat);
+                }
+            }
+        } catch (Throwable t) {
+            LOGGER.warn("[POLARIS] fail to report circuitbreaker stats", t);
+        }
+        return drained;
+    }
+
+    static long bucket(long delay) {
+        int shift = 64 - Long.numberOfLeadingZeros(delay) - DELAY_BUCKET_BITS;
+        if (shift <= 0) {
+            return delay;
+        }
+        return delay >>> shift << shift;
+    }
+
+    private static final class StatKey {
+
+        private final Invoker<?> invoker;
+
+        private final int code;
+
+        private final long delayBucket;
+
+        private final RetStatus status;
+
+        private final int hashCode;
+
+        private StatKey(Invoker<?> invoker, int code, long delayBucket, RetStatus status) {
+            this.invoker = invoker;
+            this.code = code;
+            this.delayBucket = delayBucket;
+            this.status = status;
+            int h = System.identityHashCode(invoker);
+            h = 31 * h + code;
+            h = 31 * h + Long.hashCode(delayBucket);
+            this.hashCode = 31 * h + status.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StatKey)) {
+                return false;
+            }
+            StatKey that = (StatKey) o;
+            return invoker == that.invoker && code == that.code && delayBucket == that.delayBucket
+                && status == that.status;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.filter.dubbo2;
+
+import com.tencent.polaris.api.plugin.circuitbreaker.ResourceStat;
+import com.tencent.polaris.api.plugin.circuitbreaker.entity.InstanceResource;
+import com.tencent.polaris.api.plugin.circuitbreaker.entity.Resource;
+import com.tencent.polaris.api.pojo.RetStatus;
+import com.tencent.polaris.api.pojo.ServiceKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class ResourceStatReporterTest {
+
+    private final Resource resource = new InstanceResource(new ServiceKey("default", "DemoService"),
+        "127.0.0.1", 20880, new ServiceKey());
+
+    private final List<ResourceStat> reported = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void teardown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void testBufferFull() {
+        ResourceStatReporter reporter = new ResourceStatReporter(2, TimeUnit.HOURS.toMillis(1), scheduler,
+            invoker -> resource, reported::add);
+
+        Assertions.assertTrue(reporter.offer(null, 0, 10, RetStatus.RetSuccess));
+        Assertions.assertTrue(reporter.offer(null, 0, 10, RetStatus.RetSuccess));
+        // the caller reports by itself
+        Assertions.assertFalse(reporter.offer(null, 0, 10, RetStatus.RetSuccess));
+        Assertions.assertTrue(reported.isEmpty());
+
+        Assertions.assertEquals(2, reporter.drain());
+        Assertions.assertEquals(2, reported.size());
+        Assertions.assertTrue(reporter.offer(null, 0, 10, RetStatus.RetSuccess));
+
+        reporter.destroy();
+        Assertions.assertEquals(3, reported.size());
+        Assertions.assertFalse(reporter.offer(null, 0, 10, RetStatus.RetSuccess));
+    }
+
+    @Test
+    void testAggregation() {
+        ResourceStatReporter reporter = new ResourceStatReporter(16, TimeUnit.HOURS.toMillis(1), scheduler,
+            invoker -> resource, reported::add);
+
+        reporter.offer(null, 0, 100, RetStatus.RetSuccess);
+        reporter.offer(null, 0, 101, RetStatus.RetSuccess);
+        reporter.offer(null, 0, 103, RetStatus.RetSuccess);
+        reporter.offer(null, 0, 130, RetStatus.RetSuccess);
+        reporter.offer(null, 500, 100, RetStatus.RetFail);
+        reporter.drain();
+
+        Assertions.assertEquals(5, reported.size());
+        // same bucket, reported with the mean delay
+        Assertions.assertEquals(3, reported.stream().filter(stat -> stat.getDelay() == 101).count());
+        Assertions.assertEquals(1, reported.stream().distinct().filter(stat -> stat.getDelay() == 101).count());
+        Assertions.assertEquals(1, reported.stream().filter(stat -> stat.getDelay() == 130).count());
+        Assertions.assertEquals(1, reported.stream().filter(stat -> stat.getRetStatus() == RetStatus.RetFail
+            && stat.getRetCode() == 500 && stat.getDelay() == 100).count());
+    }
+
+    @Test
+    void testBucket() {
+        Assertions.assertEquals(0, ResourceStatReporter.bucket(0));
+        Assertions.assertEquals(31, ResourceStatReporter.bucket(31));
+        Assertions.assertEquals(100, ResourceStatReporter.bucket(103));
+        Assertions.assertEquals(992, ResourceStatReporter.bucket(1000));
+    }
+
+    @Test
+    void testDrainWhilePending() throws InterruptedException {
+        ResourceStatReporter reporter = new ResourceStatReporter(16, 10, scheduler, invoker -> resource, reported::add);
+
+        reporter.offer(null, 0, 10, RetStatus.RetSuccess);
+        waitForReports(1);
+        // idle in between, the next offer starts draining again
+        Thread.sleep(50);
+        reporter.offer(null, 0, 10, RetStatus.RetSuccess);
+        waitForReports(2);
+        Assertions.assertEquals(2, reported.size());
+    }
+
+    private void waitForReports(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && reported.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+}
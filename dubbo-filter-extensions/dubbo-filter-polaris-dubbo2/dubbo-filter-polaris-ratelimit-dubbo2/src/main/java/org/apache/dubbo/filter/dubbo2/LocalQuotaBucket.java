@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.filter.dubbo2;
+
+import com.tencent.polaris.ratelimit.api.rpc.QuotaResponse;
+import com.tencent.polaris.ratelimit.api.rpc.QuotaResultCode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Local token bucket in front of the polaris quota check.
+ * <p>
+ * Requests are counted in windows of {@code leaseMillis}. A window leases half of the requests seen in the previous
+ * window from polaris at once, up to {@code maxLeaseSize}, and admits requests from the lease until it is used up or
+ * the window ends. Polaris has no way to give back tokens, so a lease is only taken for traffic that has already been
+ * seen: below four requests per window every request asks polaris for its own token, and leased tokens are only lost
+ * when the traffic drops by more than half from one window to the next. Leased tokens are already counted by polaris,
+ * so the local bucket never admits more than the configured rules.
+ */
+public class LocalQuotaBucket {
+
+    private final int maxLeaseSize;
+
+    private final long leaseMillis;
+
+    private volatile Window window;
+
+    public LocalQuotaBucket(int maxLeaseSize, long leaseMillis) {
+        this.maxLeaseSize = maxLeaseSize;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * Take a token for one request.
+     *
+     * @param remote asks polaris for the given count of tokens, returns null if polaris is not available
+     * @return null if the token is taken from a local lease, otherwise the response of polaris
+     */
+    public QuotaResponse acquire(IntFunction<QuotaResponse> remote) {
+        long now = System.currentTimeMillis();
+        Window current = window;
+        if (null != current && current.tryAcquire(now)) {
+            return null;
+        }
+        synchronized (this) {
+            current = window;
+            if (null != current && current.tryAcquire(now)) {
+                return null;
+            }
+            if (null == current || now >= current.expireAt) {
+                int leaseSize = 0;
+                // a previous window older than one window says nothing about the current traffic
+                if (null != current && now < current.expireAt + leaseMillis) {
+                    leaseSize = Math.min(maxLeaseSize, current.demand() / 2);
+                }
+                if (leaseSize > 1) {
+                    QuotaResponse response = remote.apply(leaseSize);
+                    if (null != response && response.getCode() == QuotaResultCode.QuotaResultOk) {
+                        // this request takes the first token of the new lease
+                        window = new Window(leaseSize, now + leaseMillis);
+                        return response;
+                    }
+                    // not enough quota left for a lease, ask for single tokens until the window ends
+                }
+                current = new Window(0, now + leaseMillis);
+                window = current;
+            }
+            current.misses++;
+        }
+        return remote.apply(1);
+    }
+
+    private static final class Window {
+
+        private final int leased;
+
+        private final AtomicInteger remaining;
+
+        private final long expireAt;
+
+        // requests asking polaris for a single token, guarded by the bucket
+        private int misses;
+
+        private Window(int leased, long expireAt) {
+            this.leased = leased;
+            this.remaining = new AtomicInteger(Math.max(leased - 1, 0));
+            this.expireAt = expireAt;
+        }
+
+        private int demand() {
+            return (leased > 0 ? leased - remaining.get() : 0) + misses;
+        }
+
+        private boolean tryAcquire(long now) {
+            if (now >= expireAt) {
+                return false;
+            }
+            for (; ; ) {
+                int current = remaining.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (remaining.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -27,6 +27,7 @@ import com.tencent.polaris.common.registry.PolarisOperator;
 import com.tencent.polaris.common.registry.PolarisOperatorDelegate;
 import com.tencent.polaris.common.router.RuleHandler;
 import com.tencent.polaris.ratelimit.api.rpc.Argument;
+import com.tencent.polaris.ratelimit.api.rpc.QuotaRequest;
 import com.tencent.polaris.ratelimit.api.rpc.QuotaResponse;
 import com.tencent.polaris.ratelimit.api.rpc.QuotaResultCode;
 import com.tencent.polaris.specification.api.v1.traffic.manage.RateLimitProto;
@@ -41,19 +42,35 @@ import org.apache.dubbo.rpc.Result;
 import org.apache.dubbo.rpc.RpcContext;
 import org.apache.dubbo.rpc.RpcException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Activate(group = CommonConstants.PROVIDER)
 public class RateLimitFilter extends PolarisOperatorDelegate implements Filter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitFilter.class);
 
+    // max tokens leased from polaris at once, every request asks polaris by default
+    private static final int LEASE_SIZE = Integer.getInteger("dubbo.polaris.ratelimit.lease_size", 1);
+
+    private static final long LEASE_MILLIS = Long.getLong("dubbo.polaris.ratelimit.lease_millis", 100L);
+
+    // buckets per rule, above it requests of new argument values go to polaris directly
+    private static final int MAX_BUCKETS = 1024;
+
     private final RuleHandler ruleHandler;
 
+    private final ConcurrentMap<String, RateLimitRule> rateLimitRules = new ConcurrentHashMap<>();
+
     private final QueryParser parser;
 
     private final RateLimitCallback callback;
@@ -85,31 +102,15 @@ public class RateLimitFilter extends PolarisOperatorDelegate implements Filter {
         if (null == ruleObject) {
             return invoker.invoke(invocation);
         }
-        RateLimitProto.RateLimit rateLimit = (RateLimitProto.RateLimit) ruleObject;
-        Set<RateLimitProto.MatchArgument> ratelimitLabels = ruleHandler.getRatelimitLabels(rateLimit);
+        RateLimitRule rateLimitRule = getRateLimitRule(service, ruleObject);
         String method = invocation.getMethodName();
-        Set<Argument> arguments = new HashSet<>();
-        for (RateLimitProto.MatchArgument matchArgument : ratelimitLabels) {
-            switch (matchArgument.getType()) {
-                case HEADER:
-                    String attachmentValue = RpcContext.getContext().getAttachment(matchArgument.getKey());
-                    if (!StringUtils.isBlank(attachmentValue)) {
-                        arguments.add(Argument.buildHeader(matchArgument.getKey(), attachmentValue));
-                    }
-                    break;
-                case QUERY:
-                    Optional<String> queryValue = parser.parse(matchArgument.getKey(), invocation.getArguments());
-                    queryValue.ifPresent(value -> arguments.add(Argument.buildQuery(matchArgument.getKey(), value)));
-                    break;
-                default:
-                    break;
-            }
-        }
-        QuotaResponse quotaResponse = null;
-        try {
-            quotaResponse = polarisOperator.getQuota(service, method, arguments);
-        } catch (PolarisException e) {
-            LOGGER.error("[POLARIS] get quota fail, {}", e);
+        Set<Argument> arguments = rateLimitRule.buildArguments(invocation);
+        LocalQuotaBucket bucket = rateLimitRule.getBucket(method, arguments);
+        QuotaResponse quotaResponse;
+        if (null == bucket) {
+            quotaResponse = getQuota(polarisOperator, service, method, arguments, 1);
+        } else {
+            quotaResponse = bucket.acquire(count -> getQuota(polarisOperator, service, method, arguments, count));
         }
         if (null != quotaResponse && quotaResponse.getCode() == QuotaResultCode.QuotaResultLimited) {
             // throw block exception when ratelimit occurs
@@ -119,6 +120,96 @@ public class RateLimitFilter extends PolarisOperatorDelegate implements Filter {
         return invoker.invoke(invocation);
     }
 
+    private RateLimitRule getRateLimitRule(String service, Object ruleObject) {
+        RateLimitRule rateLimitRule = rateLimitRules.get(service);
+        if (null == rateLimitRule || rateLimitRule.rule != ruleObject) {
+            rateLimitRule = new RateLimitRule(ruleObject,
+                ruleHandler.getRatelimitLabels((RateLimitProto.RateLimit) ruleObject));
+            rateLimitRules.put(service, rateLimitRule);
+        }
+        return rateLimitRule;
+    }
+
+    private QuotaResponse getQuota(PolarisOperator polarisOperator, String service, String method,
+                                   Set<Argument> arguments, int count) {
+        try {
+            if (count == 1) {
+                return polarisOperator.getQuota(service, method, arguments);
+            }
+            QuotaRequest quotaRequest = new QuotaRequest();
+            quotaRequest.setNamespace(polarisOperator.getPolarisConfig().getNamespace());
+            quotaRequest.setService(service);
+            quotaRequest.setMethod(method);
+            quotaRequest.setArguments(arguments);
+            quotaRequest.setCount(count);
+            return polarisOperator.getLimitAPI().getQuota(quotaRequest);
+        } catch (PolarisException e) {
+            LOGGER.error("[POLARIS] get quota fail, {}", e);
+            return null;
+        }
+    }
+
+    /**
+     * Labels of a rate limit rule and the local buckets of its (method, arguments).
+     */
+    private final class RateLimitRule {
+
+        private final Object rule;
+
+        private final List<String> headerKeys = new ArrayList<>();
+
+        private final List<String> queryKeys = new ArrayList<>();
+
+        private final ConcurrentMap<List<Object>, LocalQuotaBucket> buckets = new ConcurrentHashMap<>();
+
+        private RateLimitRule(Object rule, Set<RateLimitProto.MatchArgument> ratelimitLabels) {
+            this.rule = rule;
+            for (RateLimitProto.MatchArgument matchArgument : ratelimitLabels) {
+                switch (matchArgument.getType()) {
+                    case HEADER:
+                        headerKeys.add(matchArgument.getKey());
+                        break;
+                    case QUERY:
+                        queryKeys.add(matchArgument.getKey());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private Set<Argument> buildArguments(Invocation invocation) {
+            if (headerKeys.isEmpty() && queryKeys.isEmpty()) {
+                return Collections.emptySet();
+            }
+            Set<Argument> arguments = new HashSet<>();
+            for (String key : headerKeys) {
+                String attachmentValue = RpcContext.getContext().getAttachment(key);
+                if (!StringUtils.isBlank(attachmentValue)) {
+                    arguments.add(Argument.buildHeader(key, attachmentValue));
+                }
+            }
+            for (String key : queryKeys) {
+                Optional<String> queryValue = parser.parse(key, invocation.getArguments());
+                queryValue.ifPresent(value -> arguments.add(Argument.buildQuery(key, value)));
+            }
+            return arguments;
+        }
+
+        private LocalQuotaBucket getBucket(String method, Set<Argument> arguments) {
+            if (LEASE_SIZE <= 1) {
+                return null;
+            }
+            List<Object> key = Arrays.asList(method, arguments);
+            LocalQuotaBucket bucket = buckets.get(key);
+            if (null == bucket && buckets.size() < MAX_BUCKETS) {
+                bucket = buckets.computeIfAbsent(key,
+                    k -> new LocalQuotaBucket(LEASE_SIZE, LEASE_MILLIS));
+            }
+            return bucket;
+        }
+    }
+
     private static final class DefaultRateLimitCallback implements RateLimitCallback {
 
         @Override
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.filter.dubbo2;
+
+import com.tencent.polaris.api.plugin.ratelimiter.QuotaResult;
+import com.tencent.polaris.ratelimit.api.rpc.QuotaResponse;
+import com.tencent.polaris.ratelimit.api.rpc.QuotaResultCode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+class LocalQuotaBucketTest {
+
+    @Test
+    void testLowTrafficNotLimitedEarly() throws InterruptedException {
+        Quota quota = new Quota(10);
+        LocalQuotaBucket bucket = new LocalQuotaBucket(10, 20);
+
+        // at most one request per window, no token is leased ahead
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(admitted(bucket.acquire(quota)), "request " + i);
+            Thread.sleep(30);
+        }
+        Assertions.assertFalse(admitted(bucket.acquire(quota)));
+        Assertions.assertEquals(11, quota.calls.get());
+    }
+
+    @Test
+    void testLeaseFromPreviousWindow() throws InterruptedException {
+        Quota quota = new Quota(100);
+        LocalQuotaBucket bucket = new LocalQuotaBucket(10, 200);
+
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertTrue(admitted(bucket.acquire(quota)));
+        }
+        Assertions.assertEquals(8, quota.calls.get());
+
+        Thread.sleep(210);
+        // half of the previous window is leased at once, the rest asks for single tokens
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertTrue(admitted(bucket.acquire(quota)));
+        }
+        Assertions.assertEquals(8 + 5, quota.calls.get());
+        Assertions.assertEquals(16, quota.used.get());
+    }
+
+    @Test
+    void testLeaseRejected() throws InterruptedException {
+        Quota quota = new Quota(10);
+        LocalQuotaBucket bucket = new LocalQuotaBucket(10, 200);
+
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertTrue(admitted(bucket.acquire(quota)));
+        }
+
+        Thread.sleep(210);
+        // a lease of 4 is more than left, single tokens are still admitted
+        Assertions.assertTrue(admitted(bucket.acquire(quota)));
+        Assertions.assertTrue(admitted(bucket.acquire(quota)));
+        Assertions.assertFalse(admitted(bucket.acquire(quota)));
+        Assertions.assertEquals(10, quota.used.get());
+    }
+
+    private static boolean admitted(QuotaResponse response) {
+        return null == response || response.getCode() == QuotaResultCode.QuotaResultOk;
+    }
+
+    /**
+     * Polaris quota of a fixed count of tokens.
+     */
+    private static final class Quota implements IntFunction<QuotaResponse> {
+
+        private final int limit;
+
+        private final AtomicInteger used = new AtomicInteger();
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private Quota(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public QuotaResponse apply(int count) {
+            calls.incrementAndGet();
+            if (used.get() + count > limit) {
+                return new QuotaResponse(new QuotaResult(QuotaResult.Code.QuotaResultLimited, 0, "limited"));
+            }
+            used.addAndGet(count);
+            return new QuotaResponse(new QuotaResult(QuotaResult.Code.QuotaResultOk, 0, "ok"));
+        }
+    }
+}
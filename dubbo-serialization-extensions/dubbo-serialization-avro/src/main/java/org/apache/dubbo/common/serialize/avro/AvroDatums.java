@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.common.serialize.avro;
+
+import org.apache.avro.reflect.ReflectDatumReader;
+import org.apache.avro.reflect.ReflectDatumWriter;
+
+/**
+ * Datum readers and writers per class. Creating one induces the schema of the class by reflection, so they are
+ * created once and reused, both are safe to share between threads.
+ * <p>
+ * They are kept in a {@link ClassValue}, so the entries of a class go away together with its class loader.
+ */
+final class AvroDatums {
+
+    private static final ClassValue<ReflectDatumWriter<?>> WRITERS = new ClassValue<ReflectDatumWriter<?>>() {
+        @Override
+        protected ReflectDatumWriter<?> computeValue(Class<?> type) {
+            return new ReflectDatumWriter<>(type);
+        }
+    };
+
+    private static final ClassValue<ReflectDatumReader<?>> READERS = new ClassValue<ReflectDatumReader<?>>() {
+        @Override
+        protected ReflectDatumReader<?> computeValue(Class<?> type) {
+            return new ReflectDatumReader<>(type);
+        }
+    };
+
+    private AvroDatums() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ReflectDatumWriter<T> writerFor(Class<T> type) {
+        return (ReflectDatumWriter<T>) WRITERS.get(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ReflectDatumReader<T> readerFor(Class<T> type) {
+        return (ReflectDatumReader<T>) READERS.get(type);
+    }
+}
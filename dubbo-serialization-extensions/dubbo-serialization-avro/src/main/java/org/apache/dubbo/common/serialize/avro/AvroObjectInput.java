@@ -16,6 +16,7 @@
  */
 package org.apache.dubbo.common.serialize.avro;
 
+import org.apache.dubbo.common.serialize.Cleanable;
 import org.apache.dubbo.common.serialize.ObjectInput;
 
 import org.apache.avro.io.BinaryDecoder;
@@ -26,16 +27,22 @@ import org.apache.avro.util.Utf8;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
-public class AvroObjectInput implements ObjectInput {
+public class AvroObjectInput implements ObjectInput, Cleanable {
     private static final DecoderFactory decoderFactory = DecoderFactory.get();
-    private final BinaryDecoder decoder;
+
+    // a decoder of the thread no input reads from, an input takes it out and puts it back once cleaned up
+    private static final ThreadLocal<BinaryDecoder> DECODER = new ThreadLocal<>();
+
+    private final byte[] singleByte = new byte[1];
+    private BinaryDecoder decoder;
 
     public AvroObjectInput(InputStream in) {
-        decoder = decoderFactory.binaryDecoder(in, null);
+        BinaryDecoder cached = DECODER.get();
+        DECODER.remove();
+        decoder = decoderFactory.binaryDecoder(in, cached);
     }
 
     @Override
@@ -45,9 +52,8 @@ public class AvroObjectInput implements ObjectInput {
 
     @Override
     public byte readByte() throws IOException {
-        byte[] bytes = new byte[1];
-        decoder.readFixed(bytes);
-        return bytes[0];
+        decoder.readFixed(singleByte, 0, 1);
+        return singleByte[0];
     }
 
     @Override
@@ -84,8 +90,10 @@ public class AvroObjectInput implements ObjectInput {
 
     @Override
     public byte[] readBytes() throws IOException {
-        String resultStr = decoder.readString();
-        return resultStr.getBytes(StandardCharsets.UTF_8);
+        // encoded like a string: the length, then the bytes
+        byte[] result = new byte[(int) decoder.readLong()];
+        decoder.readFixed(result);
+        return result;
     }
 
     /**
@@ -93,7 +101,7 @@ public class AvroObjectInput implements ObjectInput {
      */
     @Override
     public Object readObject() throws IOException, ClassNotFoundException {
-        ReflectDatumReader<Object> reader = new ReflectDatumReader<>(Object.class);
+        ReflectDatumReader<Object> reader = AvroDatums.readerFor(Object.class);
         return reader.read(null, decoder);
     }
 
@@ -105,14 +113,21 @@ public class AvroObjectInput implements ObjectInput {
             cls = (Class<T>) HashMap.class;
         }
 
-        ReflectDatumReader<T> reader = new ReflectDatumReader<>(cls);
+        ReflectDatumReader<T> reader = AvroDatums.readerFor(cls);
         return reader.read(null, decoder);
     }
 
     @Override
     public <T> T readObject(Class<T> cls, Type type) throws IOException, ClassNotFoundException {
-        ReflectDatumReader<T> reader = new ReflectDatumReader<>(cls);
+        ReflectDatumReader<T> reader = AvroDatums.readerFor(cls);
         return reader.read(null, decoder);
     }
 
+    @Override
+    public void cleanup() {
+        if (decoder != null) {
+            DECODER.set(decoder);
+            decoder = null;
+        }
+    }
 }
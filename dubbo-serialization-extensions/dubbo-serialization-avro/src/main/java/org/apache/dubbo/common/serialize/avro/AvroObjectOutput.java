@@ -25,82 +25,111 @@ import org.apache.avro.util.Utf8;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 
 public class AvroObjectOutput implements ObjectOutput {
     private static final EncoderFactory encoderFactory = EncoderFactory.get();
-    private final BinaryEncoder encoder;
+
+    // a flushed encoder of the thread, an output takes it out while writing and puts it back once flushed
+    private static final ThreadLocal<BinaryEncoder> ENCODER = new ThreadLocal<>();
+
+    private final OutputStream out;
+    private final byte[] singleByte = new byte[1];
+    private BinaryEncoder encoder;
+    private boolean released;
 
     public AvroObjectOutput(OutputStream out) {
-        encoder = encoderFactory.binaryEncoder(out, null);
+        this.out = out;
+        this.encoder = claimEncoder(out);
+    }
+
+    private static BinaryEncoder claimEncoder(OutputStream out) {
+        BinaryEncoder cached = ENCODER.get();
+        ENCODER.remove();
+        return encoderFactory.binaryEncoder(out, cached);
+    }
+
+    private BinaryEncoder encoder() {
+        if (released) {
+            // written again after the flush, the released encoder may belong to another output by now
+            encoder = claimEncoder(out);
+            released = false;
+        }
+        return encoder;
     }
 
     @Override
     public void writeBool(boolean v) throws IOException {
-        encoder.writeBoolean(v);
+        encoder().writeBoolean(v);
     }
 
     @Override
     public void writeByte(byte v) throws IOException {
-        encoder.writeFixed(new byte[]{v});
+        singleByte[0] = v;
+        encoder().writeFixed(singleByte, 0, 1);
     }
 
     @Override
     public void writeShort(short v) throws IOException {
-        encoder.writeInt(v);
+        encoder().writeInt(v);
     }
 
     @Override
     public void writeInt(int v) throws IOException {
-        encoder.writeInt(v);
+        encoder().writeInt(v);
     }
 
     @Override
     public void writeLong(long v) throws IOException {
-        encoder.writeLong(v);
+        encoder().writeLong(v);
     }
 
     @Override
     public void writeFloat(float v) throws IOException {
-        encoder.writeFloat(v);
+        encoder().writeFloat(v);
     }
 
     @Override
     public void writeDouble(double v) throws IOException {
-        encoder.writeDouble(v);
+        encoder().writeDouble(v);
     }
 
     @Override
     public void writeUTF(String v) throws IOException {
-        encoder.writeString(new Utf8(v));
+        encoder().writeString(new Utf8(v));
     }
 
     @Override
     public void writeBytes(byte[] v) throws IOException {
-        encoder.writeString(new String(v, StandardCharsets.UTF_8));
+        encoder().writeBytes(v);
     }
 
+    /**
+     * Avro bytes are encoded like strings, so this still reads back as one.
+     */
     @Override
     public void writeBytes(byte[] v, int off, int len) throws IOException {
-        byte[] v2 = Arrays.copyOfRange(v, off, off + len);
-        encoder.writeString(new String(v2, StandardCharsets.UTF_8));
+        encoder().writeBytes(v, off, len);
     }
 
     @Override
     public void flushBuffer() throws IOException {
+        if (released) {
+            return;
+        }
         encoder.flush();
+        released = true;
+        ENCODER.set(encoder);
     }
 
     @Override
     @SuppressWarnings(value = {"rawtypes", "unchecked"})
     public void writeObject(Object obj) throws IOException {
         if (obj == null) {
-            encoder.writeNull();
+            encoder().writeNull();
             return;
         }
-        ReflectDatumWriter dd = new ReflectDatumWriter<>(obj.getClass());
-        dd.write(obj, encoder);
+        ReflectDatumWriter dd = AvroDatums.writerFor(obj.getClass());
+        dd.write(obj, encoder());
     }
 
 }
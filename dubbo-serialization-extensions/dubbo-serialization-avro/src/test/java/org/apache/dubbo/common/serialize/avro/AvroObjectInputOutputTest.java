@@ -22,6 +22,8 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
@@ -30,6 +32,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNot.not;
 import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
 
 
 public class AvroObjectInputOutputTest {
@@ -193,4 +196,52 @@ public class AvroObjectInputOutputTest {
 //		assertThat(result.getName(), is("abc"));
 //		assertThat(result.getAge(), is(30));
     }
+
+    @Test
+    public void testWriteReadBytesWithSubLength() throws IOException {
+        byte[] bytes = new byte[] {1, (byte) 0xC3, (byte) 0xFF, 2};
+        avroObjectOutput.writeBytes(bytes, 1, 2);
+        avroObjectOutput.flushBuffer();
+        pos.close();
+
+        // not valid UTF-8, the bytes must come back as they were
+        assertThat(avroObjectInput.readBytes(), is(new byte[] {(byte) 0xC3, (byte) 0xFF}));
+    }
+
+    @Test
+    public void testStreamsOfOneThread() throws IOException, ClassNotFoundException {
+        Person p = new Person();
+        p.setAge(30);
+        p.setName("abc");
+
+        // streams of one thread interleave, none of them may write into or read from the other
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        AvroObjectOutput firstOutput = new AvroObjectOutput(first);
+        firstOutput.writeObject(p);
+        AvroObjectOutput secondOutput = new AvroObjectOutput(second);
+        secondOutput.writeUTF("second");
+        firstOutput.writeUTF("first");
+        secondOutput.flushBuffer();
+        AvroObjectOutput thirdOutput = new AvroObjectOutput(new ByteArrayOutputStream());
+        thirdOutput.writeUTF("third");
+        firstOutput.flushBuffer();
+        // written again after the flush, while the third output may hold the released encoder
+        secondOutput.writeUTF("again");
+        secondOutput.flushBuffer();
+        thirdOutput.flushBuffer();
+
+        AvroObjectInput firstInput = new AvroObjectInput(new ByteArrayInputStream(first.toByteArray()));
+        Person result = firstInput.readObject(Person.class);
+        AvroObjectInput secondInput = new AvroObjectInput(new ByteArrayInputStream(second.toByteArray()));
+        assertThat(secondInput.readUTF(), is("second"));
+        assertThat(firstInput.readUTF(), is("first"));
+        assertThat(secondInput.readUTF(), is("again"));
+        firstInput.cleanup();
+        secondInput.cleanup();
+        assertThat(result.getName(), is("abc"));
+        assertThat(result.getAge(), is(30));
+        assertThat(new AvroObjectInput(new ByteArrayInputStream(second.toByteArray())).readUTF(), is("second"));
+        assertThat(AvroDatums.writerFor(Person.class), sameInstance(AvroDatums.writerFor(Person.class)));
+    }
 }
@@ -21,18 +21,27 @@ import org.apache.dubbo.common.serialize.DefaultJsonDataInput;
 import org.apache.dubbo.common.utils.PojoUtils;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 
 public class GsonJsonObjectInput implements DefaultJsonDataInput {
+    private final Gson gson = GsonSerialization.GSON;
+
+    // null in length-prefixed mode
     private final BufferedReader reader;
-    private Gson gson;
+
+    // null in line mode
+    private final DataInputStream in;
 
     public GsonJsonObjectInput(InputStream in) {
         this(new InputStreamReader(in));
@@ -40,7 +49,17 @@ public class GsonJsonObjectInput implements DefaultJsonDataInput {
 
     public GsonJsonObjectInput(Reader reader) {
         this.reader = new BufferedReader(reader);
-        gson = new Gson();
+        this.in = null;
+    }
+
+    GsonJsonObjectInput(InputStream in, boolean lengthPrefixed) {
+        if (lengthPrefixed) {
+            this.reader = null;
+            this.in = new DataInputStream(in);
+        } else {
+            this.reader = new BufferedReader(new InputStreamReader(in));
+            this.in = null;
+        }
     }
 
     @Override
@@ -85,6 +104,9 @@ public class GsonJsonObjectInput implements DefaultJsonDataInput {
 
     @Override
     public byte[] readBytes() throws IOException {
+        if (in != null) {
+            return readFrame();
+        }
         return readLine().getBytes();
     }
 
@@ -95,8 +117,7 @@ public class GsonJsonObjectInput implements DefaultJsonDataInput {
 
     @Override
     public <T> T readObject(Class<T> cls) throws IOException {
-        String json = readLine();
-        return gson.fromJson(json, cls);
+        return read(cls);
     }
 
     @Override
@@ -114,7 +135,22 @@ public class GsonJsonObjectInput implements DefaultJsonDataInput {
         return line;
     }
 
+    private byte[] readFrame() throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Illegal gson frame length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
     private <T> T read(Class<T> cls) throws IOException {
+        if (in != null) {
+            // decoded in one pass, a stream decoder would allocate more than a small value takes
+            JsonReader jsonReader = gson.newJsonReader(new StringReader(new String(readFrame(), StandardCharsets.UTF_8)));
+            return gson.fromJson(jsonReader, (Type) cls);
+        }
         String json = readLine();
         return gson.fromJson(json, cls);
     }
@@ -20,45 +20,80 @@ package org.apache.dubbo.common.serialize.gson;
 import org.apache.dubbo.common.serialize.DefaultJsonDataOutput;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonNull;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
-
+/**
+ * Writes every value as a line of json text, or in length-prefixed mode as a 4 byte big-endian length followed by
+ * its UTF-8 json bytes.
+ */
 public class GsonJsonObjectOutput implements DefaultJsonDataOutput {
 
+    private final Gson gson = GsonSerialization.GSON;
+
+    // null in length-prefixed mode
     private final PrintWriter writer;
-    private Gson gson = null;
+
+    // null in line mode
+    private final OutputStream out;
+
+    // the value being framed and its encoder, reused for every value of the stream
+    private FrameBuffer frame;
+    private Writer frameWriter;
+
+    private final byte[] lengthBuffer = new byte[4];
 
     public GsonJsonObjectOutput(OutputStream out) {
         this(new OutputStreamWriter(out));
     }
 
     public GsonJsonObjectOutput(Writer writer) {
-        this.gson = new Gson();
         this.writer = new PrintWriter(writer);
+        this.out = null;
+    }
+
+    GsonJsonObjectOutput(OutputStream out, boolean lengthPrefixed) {
+        if (lengthPrefixed) {
+            this.writer = null;
+            this.out = out;
+        } else {
+            this.writer = new PrintWriter(new OutputStreamWriter(out));
+            this.out = null;
+        }
     }
 
     @Override
     public void writeBytes(byte[] b) throws IOException {
-        writer.println(new String(b));
+        writeBytes(b, 0, b.length);
     }
 
     @Override
     public void writeBytes(byte[] b, int off, int len) throws IOException {
+        if (out != null) {
+            writeLength(len);
+            out.write(b, off, len);
+            return;
+        }
         writer.println(new String(b, off, len));
     }
 
     @Override
     public void writeObject(Object obj) throws IOException {
-        char[] json = gson.toJson(obj).toCharArray();
-        writer.write(json, 0, json.length);
+        if (out != null) {
+            writeFrame(obj);
+            return;
+        }
+        gson.toJson(obj, writer);
         writer.println();
         writer.flush();
-        json = null;
     }
 
     @Override
@@ -70,7 +105,52 @@ public class GsonJsonObjectOutput implements DefaultJsonDataOutput {
 
     @Override
     public void flushBuffer() throws IOException {
+        if (out != null) {
+            out.flush();
+            return;
+        }
         writer.flush();
     }
 
+    private void writeFrame(Object obj) throws IOException {
+        if (frame == null) {
+            frame = new FrameBuffer();
+            frameWriter = new OutputStreamWriter(frame, StandardCharsets.UTF_8);
+        }
+        frame.reset();
+        JsonWriter jsonWriter = gson.newJsonWriter(frameWriter);
+        if (obj == null) {
+            gson.toJson(JsonNull.INSTANCE, jsonWriter);
+        } else {
+            gson.toJson(obj, obj.getClass(), jsonWriter);
+        }
+        jsonWriter.flush();
+        writeLength(frame.size());
+        frame.writeTo(out);
+    }
+
+    private void writeLength(int len) throws IOException {
+        lengthBuffer[0] = (byte) (len >>> 24);
+        lengthBuffer[1] = (byte) (len >>> 16);
+        lengthBuffer[2] = (byte) (len >>> 8);
+        lengthBuffer[3] = (byte) len;
+        out.write(lengthBuffer, 0, 4);
+    }
+
+    private static class FrameBuffer extends ByteArrayOutputStream {
+
+        FrameBuffer() {
+            super(256);
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            // do not hold on to the buffer of one large value
+            if (buf.length > 64 * 1024) {
+                buf = new byte[256];
+            }
+        }
+    }
+
 }
@@ -22,14 +22,26 @@ import org.apache.dubbo.common.serialize.ObjectInput;
 import org.apache.dubbo.common.serialize.ObjectOutput;
 import org.apache.dubbo.common.serialize.Serialization;
 
+import com.google.gson.Gson;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 import static org.apache.dubbo.common.serialize.Constants.GSON_SERIALIZATION_ID;
 
+/**
+ * Values are framed as lines of json text unless the url has {@code gson.framing=length}, which frames them as
+ * length-prefixed UTF-8 bytes. Both sides must use the same framing.
+ */
 public class GsonSerialization implements Serialization {
 
+    private static final String FRAMING_KEY = "gson.framing";
+
+    private static final String LENGTH_FRAMING = "length";
+
+    // shared by all streams, Gson builds the type adapter of a class once and keeps it
+    static final Gson GSON = new Gson();
 
     @Override
     public byte getContentTypeId() {
@@ -43,11 +55,15 @@ public class GsonSerialization implements Serialization {
 
     @Override
     public ObjectOutput serialize(URL url, OutputStream output) throws IOException {
-        return new GsonJsonObjectOutput(output);
+        return new GsonJsonObjectOutput(output, isLengthPrefixed(url));
     }
 
     @Override
     public ObjectInput deserialize(URL url, InputStream input) throws IOException {
-        return new GsonJsonObjectInput(input);
+        return new GsonJsonObjectInput(input, isLengthPrefixed(url));
+    }
+
+    private static boolean isLengthPrefixed(URL url) {
+        return url != null && LENGTH_FRAMING.equals(url.getParameter(FRAMING_KEY));
     }
 }
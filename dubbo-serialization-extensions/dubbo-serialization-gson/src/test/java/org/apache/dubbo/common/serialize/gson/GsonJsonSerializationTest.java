@@ -17,6 +17,7 @@
 
 package org.apache.dubbo.common.serialize.gson;
 
+import org.apache.dubbo.common.URL;
 import org.apache.dubbo.common.serialize.ObjectInput;
 import org.apache.dubbo.common.serialize.ObjectOutput;
 
@@ -24,6 +25,8 @@ import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -61,4 +64,25 @@ public class GsonJsonSerializationTest {
         ObjectInput objectInput = gsonJsonSerialization.deserialize(null, mock(InputStream.class));
         assertThat(objectInput, Matchers.<ObjectInput>instanceOf(GsonJsonObjectInput.class));
     }
+
+    @Test
+    public void testLengthPrefixedFraming() throws IOException, ClassNotFoundException {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/test?gson.framing=length");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ObjectOutput objectOutput = gsonJsonSerialization.serialize(url, output);
+        Image image = new Image("http://dubbo.apache.org/img/dubbo_white.png", "logo", 300, 480, Image.Size.SMALL);
+        objectOutput.writeObject(image);
+        objectOutput.writeObject(null);
+        objectOutput.writeInt(7);
+        objectOutput.writeUTF("wording\nwith a line break");
+        objectOutput.writeBytes(new byte[] {0, 10, 13, -1});
+        objectOutput.flushBuffer();
+
+        ObjectInput objectInput = gsonJsonSerialization.deserialize(url, new ByteArrayInputStream(output.toByteArray()));
+        assertThat(objectInput.readObject(Image.class), is(image));
+        assertThat(objectInput.readObject(Image.class) == null, is(true));
+        assertThat(objectInput.readInt(), is(7));
+        assertThat(objectInput.readUTF(), is("wording\nwith a line break"));
+        assertThat(objectInput.readBytes(), is(new byte[] {0, 10, 13, -1}));
+    }
 }
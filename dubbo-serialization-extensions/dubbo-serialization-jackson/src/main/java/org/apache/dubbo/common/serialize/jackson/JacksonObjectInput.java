@@ -16,15 +16,10 @@
  */
 package org.apache.dubbo.common.serialize.jackson;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.apache.dubbo.common.serialize.DefaultJsonDataInput;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,25 +29,38 @@ import java.lang.reflect.Type;
 
 /**
  * Jackson object input implementation
+ * <p>
+ * Reads the lines of json text, or in length-prefixed mode the frames, written by {@link JacksonObjectOutput}.
  */
 public class JacksonObjectInput implements DefaultJsonDataInput {
 
-    private final ObjectMapper MAPPER;
+    private final JacksonMapper MAPPER;
 
+    // null in length-prefixed mode
     private final BufferedReader READER;
 
+    // null in line mode
+    private final DataInputStream INPUT;
+
     public JacksonObjectInput(InputStream inputStream) {
         this(new InputStreamReader(inputStream));
     }
 
     public JacksonObjectInput(Reader reader) {
+        this.MAPPER = JacksonMapper.DEFAULT;
         this.READER = new BufferedReader(reader);
-        this.MAPPER = new ObjectMapper()
-            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
-            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
-            .registerModule(new JavaTimeModule())
-        ;
+        this.INPUT = null;
+    }
+
+    JacksonObjectInput(InputStream inputStream, JacksonMapper mapper, boolean lengthPrefixed) {
+        this.MAPPER = mapper;
+        if (lengthPrefixed) {
+            this.READER = null;
+            this.INPUT = new DataInputStream(inputStream);
+        } else {
+            this.READER = new BufferedReader(new InputStreamReader(inputStream));
+            this.INPUT = null;
+        }
     }
 
     @Override
@@ -62,26 +70,39 @@ public class JacksonObjectInput implements DefaultJsonDataInput {
 
     @Override
     public <T> T readObject(Class<T> cls) throws IOException {
-        String json = readLine();
-        return MAPPER.readValue(json, cls);
+        return read(cls);
     }
 
     @Override
     public <T> T readObject(Class<T> cls, Type type) throws IOException, ClassNotFoundException {
-        String json = readLine();
-        return MAPPER.readValue(json, new TypeReference<T>() {
-            @Override
-            public Type getType() {
-                return type;
-            }
-        });
+        return read(type == null ? cls : type);
     }
 
     @Override
     public byte[] readBytes() throws IOException {
+        if (INPUT != null) {
+            return readFrame();
+        }
         return readLine().getBytes();
     }
 
+    private <T> T read(Type type) throws IOException {
+        if (INPUT != null) {
+            return MAPPER.readerFor(type).readValue(readFrame());
+        }
+        return MAPPER.readerFor(type).readValue(readLine());
+    }
+
+    private byte[] readFrame() throws IOException {
+        int length = INPUT.readInt();
+        if (length < 0) {
+            throw new IOException("Illegal jackson frame length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        INPUT.readFully(bytes);
+        return bytes;
+    }
+
     private String readLine() throws IOException {
         String line = READER.readLine();
         if (line == null || line.trim().isEmpty()) {
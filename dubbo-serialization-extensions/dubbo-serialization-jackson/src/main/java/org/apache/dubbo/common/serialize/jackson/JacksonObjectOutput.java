@@ -16,11 +16,6 @@
  */
 package org.apache.dubbo.common.serialize.jackson;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.apache.dubbo.common.serialize.DefaultJsonDataOutput;
 
 import java.io.IOException;
@@ -31,52 +26,84 @@ import java.io.Writer;
 
 /**
  * Jackson object output implementation
+ * <p>
+ * Values are written as lines of json text by default. In length-prefixed mode every value is written to the
+ * stream as a 4 byte big-endian length followed by its UTF-8 json bytes.
  */
 public class JacksonObjectOutput implements DefaultJsonDataOutput {
 
-    private final ObjectMapper MAPPER;
+    private final JacksonMapper MAPPER;
 
+    // null in length-prefixed mode
     private final PrintWriter WRITER;
 
+    // null in line mode
+    private final OutputStream OUTPUT;
+
+    private final byte[] lengthBuffer = new byte[4];
+
     public JacksonObjectOutput(OutputStream outputStream) {
         this(new OutputStreamWriter(outputStream));
     }
 
     public JacksonObjectOutput(Writer writer) {
+        this.MAPPER = JacksonMapper.DEFAULT;
         this.WRITER = new PrintWriter(writer);
-        this.MAPPER = new ObjectMapper()
-            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
-            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
-            .registerModule(new JavaTimeModule())
-        ;
+        this.OUTPUT = null;
+    }
+
+    JacksonObjectOutput(OutputStream outputStream, JacksonMapper mapper, boolean lengthPrefixed) {
+        this.MAPPER = mapper;
+        if (lengthPrefixed) {
+            this.WRITER = null;
+            this.OUTPUT = outputStream;
+        } else {
+            this.WRITER = new PrintWriter(new OutputStreamWriter(outputStream));
+            this.OUTPUT = null;
+        }
     }
 
     @Override
     public void writeObject(Object obj) throws IOException {
-        char[] jsonChars = convertJsonToCharArray(MAPPER.writeValueAsString(obj));
-        WRITER.write(jsonChars, 0, jsonChars.length);
-        WRITER.println();
+        if (OUTPUT != null) {
+            byte[] json = MAPPER.writerFor(obj).writeValueAsBytes(obj);
+            writeFrame(json, 0, json.length);
+            return;
+        }
+        WRITER.println(MAPPER.writerFor(obj).writeValueAsString(obj));
         WRITER.flush();
     }
 
     @Override
     public void writeBytes(byte[] v) throws IOException {
-        WRITER.println(new String(v));
+        writeBytes(v, 0, v.length);
     }
 
     @Override
     public void writeBytes(byte[] v, int off, int len) throws IOException {
+        if (OUTPUT != null) {
+            writeFrame(v, off, len);
+            return;
+        }
         WRITER.println(new String(v, off, len));
     }
 
     @Override
     public void flushBuffer() throws IOException {
+        if (OUTPUT != null) {
+            OUTPUT.flush();
+            return;
+        }
         WRITER.flush();
     }
 
-    private char[] convertJsonToCharArray(String json) {
-        return json.toCharArray();
+    private void writeFrame(byte[] v, int off, int len) throws IOException {
+        lengthBuffer[0] = (byte) (len >>> 24);
+        lengthBuffer[1] = (byte) (len >>> 16);
+        lengthBuffer[2] = (byte) (len >>> 8);
+        lengthBuffer[3] = (byte) len;
+        OUTPUT.write(lengthBuffer, 0, 4);
+        OUTPUT.write(v, off, len);
     }
 
 }
@@ -31,6 +31,9 @@ import java.io.OutputStream;
  * <pre>
  *     e.g. &lt;dubbo:protocol serialization="jackson" /&gt;
  * </pre>
+ * <p>
+ * Values are framed as lines of json text unless the url has {@code jackson.framing=length}, which frames them as
+ * length-prefixed UTF-8 bytes. Both sides must use the same framing.
  */
 public class JacksonSerialization implements Serialization {
 
@@ -38,6 +41,12 @@ public class JacksonSerialization implements Serialization {
 
     private static final String JSON_CONTENT_TYPE = "application/json";
 
+    private static final String FRAMING_KEY = "jackson.framing";
+
+    private static final String LENGTH_FRAMING = "length";
+
+    private final JacksonMapper mapper = new JacksonMapper();
+
     @Override
     public byte getContentTypeId() {
         return JACKSON_SERIALIZATION_ID;
@@ -50,12 +59,16 @@ public class JacksonSerialization implements Serialization {
 
     @Override
     public ObjectOutput serialize(URL url, OutputStream output) throws IOException {
-        return new JacksonObjectOutput(output);
+        return new JacksonObjectOutput(output, mapper, isLengthPrefixed(url));
     }
 
     @Override
     public ObjectInput deserialize(URL url, InputStream input) throws IOException {
-        return new JacksonObjectInput(input);
+        return new JacksonObjectInput(input, mapper, isLengthPrefixed(url));
+    }
+
+    private static boolean isLengthPrefixed(URL url) {
+        return url != null && LENGTH_FRAMING.equals(url.getParameter(FRAMING_KEY));
     }
 
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.dubbo.common.serialize.jackson;
 
+import org.apache.dubbo.common.URL;
 import org.apache.dubbo.common.serialize.ObjectInput;
 import org.apache.dubbo.common.serialize.ObjectOutput;
 import org.hamcrest.MatcherAssert;
@@ -23,6 +24,8 @@ import org.hamcrest.Matchers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -65,4 +68,27 @@ public class JacksonSerializationTest {
         assertThat(objectInput, Matchers.instanceOf(JacksonObjectInput.class));
     }
 
+    @Test
+    public void testLengthPrefixedFraming() throws IOException, ClassNotFoundException {
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/test?jackson.framing=length");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ObjectOutput objectOutput = jacksonSerialization.serialize(url, output);
+        Image image = new Image("http://dubbo.apache.org/img/dubbo_white.png", "logo", 300, 480, Image.Size.SMALL);
+        objectOutput.writeObject(image);
+        objectOutput.writeInt(7);
+        objectOutput.writeUTF("wording\nwith a line break");
+        objectOutput.writeBytes(new byte[] {0, 10, 13, -1});
+        objectOutput.flushBuffer();
+
+        byte[] bytes = output.toByteArray();
+        int length = (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+        assertThat(new String(bytes, 4, length, "UTF-8").startsWith("{"), is(true));
+
+        ObjectInput objectInput = jacksonSerialization.deserialize(url, new ByteArrayInputStream(bytes));
+        assertThat(objectInput.readObject(Image.class), is(image));
+        assertThat(objectInput.readInt(), is(7));
+        assertThat(objectInput.readUTF(), is("wording\nwith a line break"));
+        assertThat(objectInput.readBytes(), is(new byte[] {0, 10, 13, -1}));
+    }
+
 }
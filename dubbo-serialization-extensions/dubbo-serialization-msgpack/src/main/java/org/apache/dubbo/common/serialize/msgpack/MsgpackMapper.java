@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.dubbo.common.serialize.msgpack;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The MessagePack {@link ObjectMapper} shared by all streams, with the readers and writers of the classes it has seen.
+ */
+final class MsgpackMapper {
+
+    // classes beyond this are not cached, so generated classes cannot grow the caches without bound
+    private static final int MAX_CACHED_TYPES = 4096;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper(new MessagePackFactory())
+        .configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false)
+        .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    private MsgpackMapper() {
+    }
+
+    static ObjectReader readerFor(Class<?> type) {
+        ObjectReader reader = READERS.get(type);
+        if (reader == null) {
+            reader = MAPPER.readerFor(type);
+            if (READERS.size() < MAX_CACHED_TYPES) {
+                READERS.putIfAbsent(type, reader);
+            }
+        }
+        return reader;
+    }
+
+    static ObjectWriter writerFor(Object value) {
+        if (value == null) {
+            return MAPPER.writer();
+        }
+        Class<?> type = value.getClass();
+        ObjectWriter writer = WRITERS.get(type);
+        if (writer == null) {
+            writer = MAPPER.writerFor(type);
+            if (WRITERS.size() < MAX_CACHED_TYPES) {
+                WRITERS.putIfAbsent(type, writer);
+            }
+        }
+        return writer;
+    }
+}
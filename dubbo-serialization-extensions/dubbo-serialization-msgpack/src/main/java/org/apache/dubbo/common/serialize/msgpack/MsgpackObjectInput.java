@@ -20,74 +20,125 @@ package org.apache.dubbo.common.serialize.msgpack;
 import org.apache.dubbo.common.serialize.ObjectInput;
 import org.apache.dubbo.common.utils.PojoUtils;
 
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.msgpack.core.MessageInsufficientBufferException;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessageUnpacker;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
-
+import java.util.Arrays;
+
+/**
+ * Reads primitives, strings and byte arrays with a {@link MessageUnpacker}, and other objects with the shared
+ * MessagePack mapper.
+ * <p>
+ * The stream is read into a buffer on the first read, as the mapper needs to know where an object ends. The
+ * unpacker finds the end by skipping the value, and the mapper then reads the object from the buffer.
+ */
 public class MsgpackObjectInput implements ObjectInput {
 
     private final InputStream in;
 
-    private final ObjectMapper om;
+    private byte[] buffer;
+
+    private MessageUnpacker unpacker;
 
     public MsgpackObjectInput(InputStream in) {
         this.in = in;
-        om = new ObjectMapper(new MessagePackFactory());
-        om.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
     }
 
     @Override
     public boolean readBool() throws IOException {
-        return read(boolean.class);
+        try {
+            return unpacker().unpackBoolean();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public byte readByte() throws IOException {
-        return read(byte.class);
+        try {
+            return unpacker().unpackByte();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public short readShort() throws IOException {
-        return read(short.class);
+        try {
+            return unpacker().unpackShort();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public int readInt() throws IOException {
-        return read(int.class);
+        try {
+            return unpacker().unpackInt();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public long readLong() throws IOException {
-        return read(long.class);
+        try {
+            return unpacker().unpackLong();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public float readFloat() throws IOException {
-        return read(float.class);
+        try {
+            return unpacker().unpackFloat();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public double readDouble() throws IOException {
-        return read(double.class);
+        try {
+            return unpacker().unpackDouble();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public String readUTF() throws IOException {
-        return read(String.class);
+        try {
+            MessageUnpacker unpacker = unpacker();
+            return unpacker.tryUnpackNil() ? null : unpacker.unpackString();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public byte[] readBytes() throws IOException {
-        return read(byte[].class);
+        try {
+            MessageUnpacker unpacker = unpacker();
+            if (unpacker.tryUnpackNil()) {
+                return null;
+            }
+            return unpacker.readPayload(unpacker.unpackBinaryHeader());
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
     }
 
     @Override
     public Object readObject() throws IOException, ClassNotFoundException {
-        return om.readValue(this.in, Object.class);
+        return read(Object.class);
     }
 
     @Override
@@ -103,7 +154,17 @@ public class MsgpackObjectInput implements ObjectInput {
     }
 
     private <T> T read(Class<T> cls) throws IOException {
-        return om.readValue(this.in, cls);
+        int start;
+        int end;
+        try {
+            MessageUnpacker unpacker = unpacker();
+            start = (int) unpacker.getTotalReadBytes();
+            unpacker.skipValue();
+            end = (int) unpacker.getTotalReadBytes();
+        } catch (MessagePackException e) {
+            throw toIOException(e);
+        }
+        return MsgpackMapper.readerFor(cls).readValue(buffer, start, end - start);
     }
 
     @Override
@@ -111,4 +172,43 @@ public class MsgpackObjectInput implements ObjectInput {
         Class clazz = readObject(Class.class);
         return (Throwable) readObject(clazz);
     }
+
+    private MessageUnpacker unpacker() throws IOException {
+        if (unpacker == null) {
+            int length = readStream();
+            unpacker = MessagePack.newDefaultUnpacker(buffer, 0, length);
+        }
+        return unpacker;
+    }
+
+    private int readStream() throws IOException {
+        buffer = new byte[Math.max(in.available(), 256)];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                // a stream that knew its size is at its end now, do not grow the buffer just to learn that
+                int next = in.read();
+                if (next < 0) {
+                    break;
+                }
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                buffer[length++] = (byte) next;
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static IOException toIOException(MessagePackException e) {
+        if (e instanceof MessageInsufficientBufferException) {
+            EOFException eof = new EOFException(e.getMessage());
+            eof.initCause(e);
+            return eof;
+        }
+        return new IOException(e.getMessage(), e);
+    }
 }
@@ -19,81 +19,95 @@ package org.apache.dubbo.common.serialize.msgpack;
 
 import org.apache.dubbo.common.serialize.ObjectOutput;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Arrays;
 
 
+/**
+ * Writes primitives, strings and byte arrays with a {@link MessagePacker}, and other objects with the shared
+ * MessagePack mapper. Both produce the same MessagePack values, so either side can read what the other wrote.
+ */
 public class MsgpackObjectOutput implements ObjectOutput {
 
-    private OutputStream out;
-    private ObjectMapper om;
+    // small messages fit, larger ones are flushed to the stream as the buffer fills
+    private static final MessagePack.PackerConfig PACKER_CONFIG = new MessagePack.PackerConfig().withBufferSize(512);
+
+    private final OutputStream out;
+    private final MessagePacker packer;
 
     public MsgpackObjectOutput(OutputStream out) {
         this.out = out;
-        om = new ObjectMapper(new MessagePackFactory());
+        this.packer = PACKER_CONFIG.newPacker(out);
     }
 
     @Override
     public void writeBool(boolean v) throws IOException {
-        writeObject(v);
+        packer.packBoolean(v);
     }
 
     @Override
     public void writeByte(byte v) throws IOException {
-        writeObject(v);
+        packer.packByte(v);
     }
 
     @Override
     public void writeShort(short v) throws IOException {
-        writeObject(v);
+        packer.packShort(v);
     }
 
     @Override
     public void writeInt(int v) throws IOException {
-        writeObject(v);
+        packer.packInt(v);
     }
 
     @Override
     public void writeLong(long v) throws IOException {
-        writeObject(v);
+        packer.packLong(v);
     }
 
     @Override
     public void writeFloat(float v) throws IOException {
-        writeObject(v);
+        packer.packFloat(v);
     }
 
     @Override
     public void writeDouble(double v) throws IOException {
-        writeObject(v);
+        packer.packDouble(v);
     }
 
     @Override
     public void writeUTF(String v) throws IOException {
-        writeObject(v);
+        if (v == null) {
+            packer.packNil();
+            return;
+        }
+        packer.packString(v);
     }
 
     @Override
     public void writeBytes(byte[] b) throws IOException {
-        writeObject(b);
+        if (b == null) {
+            packer.packNil();
+            return;
+        }
+        writeBytes(b, 0, b.length);
     }
 
     @Override
     public void writeBytes(byte[] b, int off, int len) throws IOException {
-        byte[] d = Arrays.copyOfRange(b, off, off + len);
-        writeObject(d);
+        packer.packBinaryHeader(len);
+        packer.writePayload(b, off, len);
     }
 
     @Override
     public void writeObject(Object obj) throws IOException {
-        byte[] bytes = om.writeValueAsBytes(obj);
-        out.write(bytes);
+        // the mapper writes to the stream itself, whatever the packer holds must go first
+        packer.flush();
+        MsgpackMapper.writerFor(obj).writeValue(out, obj);
         out.flush();
-        bytes = null;
     }
 
     @Override
@@ -104,7 +118,7 @@ public class MsgpackObjectOutput implements ObjectOutput {
 
     @Override
     public void flushBuffer() throws IOException {
-        out.flush();
+        packer.flush();
     }
 
 }
@@ -17,9 +17,10 @@
 
 package org.apache.dubbo.common.serialize.msgpack;
 
-
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -154,6 +155,45 @@ public class MsgpackObjectOutputTest {
         assertThat(readObjectForImage, is(image));
     }
 
+    @Test
+    public void testWriteMixedValues() throws IOException, ClassNotFoundException {
+        Image image = new Image("test.png", "logo", 300, 480, MsgpackObjectOutputTest.Image.Size.SMALL);
+        this.msgpackObjectOutput.writeUTF("2.0.2");
+        this.msgpackObjectOutput.writeObject(image);
+        this.msgpackObjectOutput.writeInt(Integer.MIN_VALUE);
+        this.msgpackObjectOutput.writeUTF(null);
+        this.msgpackObjectOutput.writeObject(null);
+        this.msgpackObjectOutput.writeBytes(new byte[0]);
+        this.msgpackObjectOutput.writeLong(Long.MAX_VALUE);
+        this.flushToInput();
+
+        assertThat(msgpackObjectInput.readUTF(), is("2.0.2"));
+        assertThat(msgpackObjectInput.readObject(Image.class), is(image));
+        assertThat(msgpackObjectInput.readInt(), is(Integer.MIN_VALUE));
+        assertThat(msgpackObjectInput.readUTF(), nullValue());
+        assertThat(msgpackObjectInput.readObject(Image.class), nullValue());
+        assertThat(msgpackObjectInput.readBytes(), is(new byte[0]));
+        assertThat(msgpackObjectInput.readLong(), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testReadValuesWrittenByMapper() throws IOException, ClassNotFoundException {
+        // primitives used to be written by the mapper, they must read the same
+        ObjectMapper mapper = new ObjectMapper(new MessagePackFactory());
+        byteArrayOutputStream.write(mapper.writeValueAsBytes(true));
+        byteArrayOutputStream.write(mapper.writeValueAsBytes(1.88f));
+        byteArrayOutputStream.write(mapper.writeValueAsBytes("wording"));
+        byteArrayOutputStream.write(mapper.writeValueAsBytes("hello".getBytes()));
+        byteArrayOutputStream.write(mapper.writeValueAsBytes(100000L));
+        this.flushToInput();
+
+        assertThat(msgpackObjectInput.readBool(), is(true));
+        assertThat(msgpackObjectInput.readFloat(), is(1.88f));
+        assertThat(msgpackObjectInput.readUTF(), is("wording"));
+        assertThat(msgpackObjectInput.readBytes(), is("hello".getBytes()));
+        assertThat(msgpackObjectInput.readLong(), is(100000L));
+    }
+
     private void flushToInput() throws IOException {
         this.msgpackObjectOutput.flushBuffer();
         this.byteArrayInputStream = new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
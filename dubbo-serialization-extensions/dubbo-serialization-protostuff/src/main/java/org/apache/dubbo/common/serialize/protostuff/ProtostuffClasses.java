@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.dubbo.common.serialize.protostuff;
+
+import org.apache.dubbo.common.serialize.support.SerializableClassRegistry;
+
+import io.protostuff.Schema;
+import io.protostuff.runtime.RuntimeSchema;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per class state of protostuff serialization: schemas, class names, and the ids of the registered classes.
+ * <p>
+ * Class ids are given to the classes registered to {@link SerializableClassRegistry} in the order of their names,
+ * after the {@link Wrapper} which always has id 0. Like Kryo registrations, both sides must register the same
+ * classes. The registry is read only when its size changes, never on the hot path.
+ */
+final class ProtostuffClasses {
+
+    // names beyond this are not cached, so generated class names cannot grow the cache without bound
+    private static final int MAX_CACHED_NAMES = 4096;
+
+    private static final ClassValue<Schema<?>> SCHEMAS = new ClassValue<Schema<?>>() {
+        @Override
+        protected Schema<?> computeValue(Class<?> type) {
+            return RuntimeSchema.getSchema(type);
+        }
+    };
+
+    private static final ClassValue<byte[]> NAMES = new ClassValue<byte[]>() {
+        @Override
+        protected byte[] computeValue(Class<?> type) {
+            return type.getName().getBytes();
+        }
+    };
+
+    private static final Map<String, Class<?>> CLASSES = new ConcurrentHashMap<>();
+
+    private static volatile Registrations registrations = new Registrations(-1, new ArrayList<>());
+
+    private ProtostuffClasses() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Schema<T> getSchema(Class<T> type) {
+        return (Schema<T>) SCHEMAS.get(type);
+    }
+
+    static byte[] getNameBytes(Class<?> type) {
+        return NAMES.get(type);
+    }
+
+    static Class<?> forName(String name) throws ClassNotFoundException {
+        Class<?> type = CLASSES.get(name);
+        if (type == null) {
+            type = Class.forName(name);
+            if (CLASSES.size() < MAX_CACHED_NAMES) {
+                CLASSES.putIfAbsent(name, type);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * @return the id of the class, or -1 if it is not registered
+     */
+    static int getId(Class<?> type) {
+        Integer id = getRegistrations().ids.get(type);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the class of the id, or null if no class has it
+     */
+    static Class<?> getClass(int id) {
+        Class<?>[] classes = getRegistrations().classes;
+        return id >= 0 && id < classes.length ? classes[id] : null;
+    }
+
+    private static Registrations getRegistrations() {
+        Registrations current = registrations;
+        // classes are registered while services are set up, pick up the ones registered since the last look
+        Map<Class<?>, Object> registeredClasses = SerializableClassRegistry.getRegisteredClasses();
+        if (current.registered != registeredClasses.size()) {
+            synchronized (ProtostuffClasses.class) {
+                current = registrations;
+                if (current.registered != registeredClasses.size()) {
+                    List<Class<?>> classes = copyClasses(registeredClasses);
+                    current = new Registrations(classes.size(), classes);
+                    registrations = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * The registry is a plain map without a lock, copy it again when it is written meanwhile.
+     */
+    private static List<Class<?>> copyClasses(Map<Class<?>, Object> registeredClasses) {
+        for (; ; ) {
+            int registered = registeredClasses.size();
+            try {
+                List<Class<?>> classes = new ArrayList<>(registeredClasses.keySet());
+                classes.removeIf(Objects::isNull);
+                if (classes.size() == registered && registeredClasses.size() == registered) {
+                    // the iteration order of the registry differs between processes, the names do not
+                    classes.sort(Comparator.comparing(Class::getName));
+                    return classes;
+                }
+            } catch (ConcurrentModificationException e) {
+                // registered meanwhile
+            }
+            Thread.yield();
+        }
+    }
+
+    private static class Registrations {
+        private final int registered;
+
+        private final Class<?>[] classes;
+
+        private final Map<Class<?>, Integer> ids = new IdentityHashMap<>();
+
+        Registrations(int registered, List<Class<?>> registeredClasses) {
+            this.registered = registered;
+            this.classes = new Class<?>[registeredClasses.size() + 1];
+            classes[0] = Wrapper.class;
+            int id = 1;
+            for (Class<?> type : registeredClasses) {
+                classes[id++] = type;
+            }
+            for (int i = 0; i < classes.length; i++) {
+                ids.putIfAbsent(classes[i], i);
+            }
+        }
+    }
+}
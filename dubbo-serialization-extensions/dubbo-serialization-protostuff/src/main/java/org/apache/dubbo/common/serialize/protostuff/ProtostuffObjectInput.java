@@ -22,12 +22,13 @@ import org.apache.dubbo.common.serialize.protostuff.utils.WrapperUtils;
 
 import io.protostuff.GraphIOUtil;
 import io.protostuff.Schema;
-import io.protostuff.runtime.RuntimeSchema;
 
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Protostuff object input implementation
@@ -36,37 +37,52 @@ public class ProtostuffObjectInput implements ObjectInput {
 
     private DataInputStream dis;
 
+    private final boolean classIds;
+
+    // unregistered classes read in class id mode, by their index in the stream minus one
+    private List<Class<?>> streamClasses;
+
     public ProtostuffObjectInput(InputStream inputStream) {
+        this(inputStream, false);
+    }
+
+    ProtostuffObjectInput(InputStream inputStream, boolean classIds) {
         dis = new DataInputStream(inputStream);
+        this.classIds = classIds;
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
+    @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     public Object readObject() throws IOException, ClassNotFoundException {
-        int classNameLength = dis.readInt();
-        int bytesLength = dis.readInt();
+        Class clazz;
+        int bytesLength;
+        if (classIds) {
+            clazz = readClass();
+            bytesLength = readVarint();
+        } else {
+            int classNameLength = dis.readInt();
+            bytesLength = dis.readInt();
 
-        if (classNameLength < 0 || bytesLength < 0) {
+            if (classNameLength < 0 || bytesLength < 0) {
+                throw new IOException();
+            }
+            clazz = readClassName(classNameLength);
+        }
+        if (bytesLength < 0) {
             throw new IOException();
         }
 
-        byte[] classNameBytes = new byte[classNameLength];
-        dis.readFully(classNameBytes, 0, classNameLength);
-
         byte[] bytes = new byte[bytesLength];
         dis.readFully(bytes, 0, bytesLength);
 
-        String className = new String(classNameBytes);
-        Class clazz = Class.forName(className);
-
         Object result;
         if (WrapperUtils.needWrapper(clazz)) {
-            Schema<Wrapper> schema = RuntimeSchema.getSchema(Wrapper.class);
+            Schema<Wrapper> schema = ProtostuffClasses.getSchema(Wrapper.class);
             Wrapper wrapper = schema.newMessage();
             GraphIOUtil.mergeFrom(bytes, wrapper, schema);
             result = wrapper.getData();
         } else {
-            Schema schema = RuntimeSchema.getSchema(clazz);
+            Schema schema = ProtostuffClasses.getSchema(clazz);
             result = schema.newMessage();
             GraphIOUtil.mergeFrom(bytes, result, schema);
         }
@@ -74,6 +90,53 @@ public class ProtostuffObjectInput implements ObjectInput {
         return result;
     }
 
+    private Class<?> readClass() throws IOException, ClassNotFoundException {
+        int ref = readVarint();
+        if ((ref & 1) == 0) {
+            Class<?> clazz = ProtostuffClasses.getClass(ref >>> 1);
+            if (clazz == null) {
+                throw new IOException("Unknown protostuff class id " + (ref >>> 1)
+                    + ", the classes registered on both sides differ");
+            }
+            return clazz;
+        }
+        int index = ref >>> 1;
+        if (index == 0) {
+            int classNameLength = readVarint();
+            if (classNameLength < 0) {
+                throw new IOException();
+            }
+            Class<?> clazz = readClassName(classNameLength);
+            if (streamClasses == null) {
+                streamClasses = new ArrayList<>();
+            }
+            streamClasses.add(clazz);
+            return clazz;
+        }
+        if (streamClasses == null || index > streamClasses.size()) {
+            throw new IOException("Unknown protostuff class reference " + index);
+        }
+        return streamClasses.get(index - 1);
+    }
+
+    private Class<?> readClassName(int classNameLength) throws IOException, ClassNotFoundException {
+        byte[] classNameBytes = new byte[classNameLength];
+        dis.readFully(classNameBytes, 0, classNameLength);
+        return ProtostuffClasses.forName(new String(classNameBytes));
+    }
+
+    private int readVarint() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = dis.readByte();
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed protostuff varint");
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> T readObject(Class<T> clazz) throws IOException, ClassNotFoundException {
@@ -124,7 +187,7 @@ public class ProtostuffObjectInput implements ObjectInput {
     public String readUTF() throws IOException {
         int length = dis.readInt();
         byte[] bytes = new byte[length];
-        dis.read(bytes, 0, length);
+        dis.readFully(bytes, 0, length);
         return new String(bytes);
     }
 
@@ -132,7 +195,7 @@ public class ProtostuffObjectInput implements ObjectInput {
     public byte[] readBytes() throws IOException {
         int length = dis.readInt();
         byte[] bytes = new byte[length];
-        dis.read(bytes, 0, length);
+        dis.readFully(bytes, 0, length);
         return bytes;
     }
 }
@@ -22,51 +22,102 @@ import org.apache.dubbo.common.serialize.protostuff.utils.WrapperUtils;
 
 import io.protostuff.GraphIOUtil;
 import io.protostuff.LinkedBuffer;
+import io.protostuff.ProtobufOutput;
 import io.protostuff.Schema;
-import io.protostuff.runtime.RuntimeSchema;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Protostuff object output implementation
+ * <p>
+ * An object is written after the name of its class by default. In class id mode it is written after a varint
+ * naming its class instead, which is one of:
+ * <ul>
+ *     <li>{@code id << 1}, the id of a registered class, see {@link ProtostuffClasses}</li>
+ *     <li>{@code 1}, followed by the length and bytes of the class name, for the first object of an unregistered
+ *     class in the stream</li>
+ *     <li>{@code index << 1 | 1}, the 1-based index of an unregistered class written earlier in the stream</li>
+ * </ul>
+ * and the length of the object is a varint as well.
  */
 public class ProtostuffObjectOutput implements ObjectOutput {
 
     private LinkedBuffer buffer = LinkedBuffer.allocate();
     private DataOutputStream dos;
 
+    private final boolean classIds;
+
+    // unregistered classes written in class id mode, by their index in the stream
+    private Map<Class<?>, Integer> streamClasses;
+
     public ProtostuffObjectOutput(OutputStream outputStream) {
+        this(outputStream, false);
+    }
+
+    ProtostuffObjectOutput(OutputStream outputStream, boolean classIds) {
         dos = new DataOutputStream(outputStream);
+        this.classIds = classIds;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public void writeObject(Object obj) throws IOException {
 
-        byte[] bytes;
-        byte[] classNameBytes;
+        Class<?> clazz;
+        Object message;
+        if (obj == null || WrapperUtils.needWrapper(obj)) {
+            clazz = Wrapper.class;
+            message = new Wrapper(obj);
+        } else {
+            clazz = obj.getClass();
+            message = obj;
+        }
 
         try {
-            if (obj == null || WrapperUtils.needWrapper(obj)) {
-                Schema<Wrapper> schema = RuntimeSchema.getSchema(Wrapper.class);
-                Wrapper wrapper = new Wrapper(obj);
-                bytes = GraphIOUtil.toByteArray(wrapper, schema, buffer);
-                classNameBytes = Wrapper.class.getName().getBytes();
+            Schema<Object> schema = (Schema<Object>) ProtostuffClasses.getSchema(clazz);
+            int length = GraphIOUtil.writeTo(buffer, message, schema);
+            if (classIds) {
+                writeClassId(clazz);
+                writeVarint(length);
             } else {
-                Schema schema = RuntimeSchema.getSchema(obj.getClass());
-                bytes = GraphIOUtil.toByteArray(obj, schema, buffer);
-                classNameBytes = obj.getClass().getName().getBytes();
+                byte[] classNameBytes = ProtostuffClasses.getNameBytes(clazz);
+                dos.writeInt(classNameBytes.length);
+                dos.writeInt(length);
+                dos.write(classNameBytes);
             }
+            LinkedBuffer.writeTo((OutputStream) dos, buffer);
         } finally {
             buffer.clear();
         }
+    }
 
-        dos.writeInt(classNameBytes.length);
-        dos.writeInt(bytes.length);
+    private void writeClassId(Class<?> clazz) throws IOException {
+        int id = ProtostuffClasses.getId(clazz);
+        if (id >= 0) {
+            writeVarint(id << 1);
+            return;
+        }
+        if (streamClasses == null) {
+            streamClasses = new IdentityHashMap<>();
+        }
+        Integer index = streamClasses.get(clazz);
+        if (index != null) {
+            writeVarint(index << 1 | 1);
+            return;
+        }
+        streamClasses.put(clazz, streamClasses.size() + 1);
+        byte[] classNameBytes = ProtostuffClasses.getNameBytes(clazz);
+        dos.writeByte(1);
+        writeVarint(classNameBytes.length);
         dos.write(classNameBytes);
-        dos.write(bytes);
+    }
+
+    private void writeVarint(int v) throws IOException {
+        ProtobufOutput.writeRawVarInt32Bytes((OutputStream) dos, v);
     }
 
     @Override
@@ -120,9 +171,7 @@ public class ProtostuffObjectOutput implements ObjectOutput {
     @Override
     public void writeBytes(byte[] v, int off, int len) throws IOException {
         dos.writeInt(len);
-        byte[] bytes = new byte[len];
-        System.arraycopy(v, off, bytes, 0, len);
-        dos.write(bytes);
+        dos.write(v, off, len);
     }
 
     @Override
@@ -34,8 +34,14 @@ import static org.apache.dubbo.common.serialize.Constants.PROTOSTUFF_SERIALIZATI
  * <pre>
  *     e.g. &lt;dubbo:protocol serialization="protostuff" /&gt;
  * </pre>
+ * <p>
+ * With {@code protostuff.class.id=true} on the url, objects are written after the id of their class instead of its
+ * name, see {@link ProtostuffObjectOutput}. Both sides must enable it and register the same classes.
  */
 public class ProtostuffSerialization implements Serialization {
+
+    private static final String CLASS_ID_KEY = "protostuff.class.id";
+
     @Override
     public byte getContentTypeId() {
         return PROTOSTUFF_SERIALIZATION_ID;
@@ -48,11 +54,15 @@ public class ProtostuffSerialization implements Serialization {
 
     @Override
     public ObjectOutput serialize(URL url, OutputStream output) throws IOException {
-        return new ProtostuffObjectOutput(output);
+        return new ProtostuffObjectOutput(output, isClassIdEnabled(url));
     }
 
     @Override
     public ObjectInput deserialize(URL url, InputStream input) throws IOException {
-        return new ProtostuffObjectInput(input);
+        return new ProtostuffObjectInput(input, isClassIdEnabled(url));
+    }
+
+    private static boolean isClassIdEnabled(URL url) {
+        return url != null && url.getParameter(CLASS_ID_KEY, false);
     }
 }
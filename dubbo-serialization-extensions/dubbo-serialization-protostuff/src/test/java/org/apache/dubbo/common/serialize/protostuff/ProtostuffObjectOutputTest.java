@@ -17,6 +17,7 @@
 package org.apache.dubbo.common.serialize.protostuff;
 
 import org.apache.dubbo.common.serialize.model.SerializablePerson;
+import org.apache.dubbo.common.serialize.support.SerializableClassRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -32,6 +33,7 @@ import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.nullValue;
 
 public class ProtostuffObjectOutputTest {
@@ -164,6 +166,50 @@ public class ProtostuffObjectOutputTest {
         assertThat(serializedTime, is(originTime));
     }
 
+    @Test
+    public void testClassIds() throws IOException, ClassNotFoundException {
+        this.protostuffObjectOutput = new ProtostuffObjectOutput(byteArrayOutputStream, true);
+        for (int i = 0; i < 3; i++) {
+            this.protostuffObjectOutput.writeObject(new SerializablePerson());
+            this.protostuffObjectOutput.writeObject(null);
+        }
+        this.protostuffObjectOutput.flushBuffer();
+        int classIdsSize = byteArrayOutputStream.size();
+
+        ByteArrayOutputStream namesOutputStream = new ByteArrayOutputStream();
+        ProtostuffObjectOutput namesOutput = new ProtostuffObjectOutput(namesOutputStream);
+        for (int i = 0; i < 3; i++) {
+            namesOutput.writeObject(new SerializablePerson());
+            namesOutput.writeObject(null);
+        }
+        namesOutput.flushBuffer();
+        assertThat(classIdsSize, lessThan(namesOutputStream.size()));
+
+        this.protostuffObjectInput = new ProtostuffObjectInput(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()), true);
+        for (int i = 0; i < 3; i++) {
+            assertThat(protostuffObjectInput.readObject(), is(new SerializablePerson()));
+            assertThat(protostuffObjectInput.readObject(), nullValue());
+        }
+    }
+
+    @Test
+    public void testRegisteredClassId() throws IOException, ClassNotFoundException {
+        SerializableClassRegistry.registerClass(SerializablePersonList.class);
+        List<SerializablePerson> persons = new ArrayList<SerializablePerson>();
+        persons.add(new SerializablePerson());
+        SerializablePersonList personList = new SerializablePersonList(persons);
+
+        this.protostuffObjectOutput = new ProtostuffObjectOutput(byteArrayOutputStream, true);
+        this.protostuffObjectOutput.writeObject(personList);
+        this.protostuffObjectOutput.flushBuffer();
+        byte[] bytes = byteArrayOutputStream.toByteArray();
+        assertThat(new String(bytes).contains(SerializablePersonList.class.getName()), is(false));
+
+        this.protostuffObjectInput = new ProtostuffObjectInput(new ByteArrayInputStream(bytes), true);
+        SerializablePersonList serializedList = protostuffObjectInput.readObject(SerializablePersonList.class);
+        assertThat(serializedList.personList, is(persons));
+    }
+
     private void flushToInput() throws IOException {
         this.protostuffObjectOutput.flushBuffer();
         this.byteArrayInputStream = new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
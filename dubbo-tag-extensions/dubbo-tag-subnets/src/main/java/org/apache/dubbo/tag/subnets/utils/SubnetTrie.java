@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.dubbo.tag.subnets.utils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Binary radix trie mapping IPv4 and IPv6 CIDR prefixes to tags.
+ * <p>
+ * Lookups use longest prefix match: among all the prefixes containing the address, the tag of the most specific one
+ * is returned. When the same prefix is configured under several tags, the first one added wins. IPv4 and IPv6
+ * prefixes are kept in separate tries, an IPv4 address never matches an IPv6 prefix and vice versa.
+ * <p>
+ * The trie is built by a single thread and must not be modified after it has been published.
+ */
+class SubnetTrie {
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+    private boolean empty = true;
+
+    /**
+     * @param cidr address and prefix length, e.g. {@code 10.0.0.0/8} or {@code fd00::/8}
+     */
+    void add(String cidr, String tag) {
+        int slash = cidr.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Could not parse [" + cidr + "]");
+        }
+        byte[] address = parseLiteral(cidr.substring(0, slash));
+        if (address == null) {
+            throw new IllegalArgumentException("Could not parse [" + cidr + "]");
+        }
+        int prefixLength;
+        try {
+            prefixLength = Integer.parseInt(cidr.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Could not parse [" + cidr + "]", e);
+        }
+        if (prefixLength < 0 || prefixLength > address.length * 8) {
+            throw new IllegalArgumentException("Value [" + prefixLength + "] not in range [0," + address.length * 8 + "]");
+        }
+
+        Node node = address.length == 4 ? ipv4Root : ipv6Root;
+        for (int i = 0; i < prefixLength; i++) {
+            int bit = (address[i >>> 3] >>> (7 - (i & 7))) & 1;
+            if (node.children[bit] == null) {
+                node.children[bit] = new Node();
+            }
+            node = node.children[bit];
+        }
+        if (node.tag == null) {
+            node.tag = tag;
+        }
+        empty = false;
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return the tag of the longest prefix containing the host, or null if there is none or the host is not an
+     * IP literal
+     */
+    String lookup(String host) {
+        if (host == null) {
+            return null;
+        }
+        long ipv4 = parseIpv4(host);
+        if (ipv4 >= 0) {
+            Node node = ipv4Root;
+            String tag = node.tag;
+            for (int i = 31; i >= 0 && node != null; i--) {
+                node = node.children[(int) (ipv4 >>> i) & 1];
+                if (node != null && node.tag != null) {
+                    tag = node.tag;
+                }
+            }
+            return tag;
+        }
+        if (host.indexOf(':') < 0) {
+            return null;
+        }
+        byte[] address = parseLiteral(host);
+        if (address == null || address.length != 16) {
+            return null;
+        }
+        Node node = ipv6Root;
+        String tag = node.tag;
+        for (int i = 0; i < 128 && node != null; i++) {
+            node = node.children[(address[i >>> 3] >>> (7 - (i & 7))) & 1];
+            if (node != null && node.tag != null) {
+                tag = node.tag;
+            }
+        }
+        return tag;
+    }
+
+    /**
+     * Parse a dotted decimal IPv4 address without allocating.
+     *
+     * @return the address as an unsigned int, or -1 if the host is not an IPv4 address
+     */
+    private static long parseIpv4(String host) {
+        int length = host.length();
+        if (length < 7 || length > 15) {
+            return -1;
+        }
+        long ip = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < length; i++) {
+            char c = host.charAt(i);
+            if (c == '.') {
+                if (octet < 0 || ++dots > 3) {
+                    return -1;
+                }
+                ip = ip << 8 | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = octet < 0 ? c - '0' : octet * 10 + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || octet < 0) {
+            return -1;
+        }
+        return ip << 8 | octet;
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 literal, never resolving host names.
+     */
+    private static byte[] parseLiteral(String host) {
+        long ipv4 = parseIpv4(host);
+        if (ipv4 >= 0) {
+            return new byte[] {(byte) (ipv4 >>> 24), (byte) (ipv4 >>> 16), (byte) (ipv4 >>> 8), (byte) ipv4};
+        }
+        if (host.indexOf(':') < 0) {
+            return null;
+        }
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        try {
+            byte[] address = InetAddress.getByName(host).getAddress();
+            // ::ffff:a.b.c.d literals come back as IPv4 addresses
+            return address.length == 16 ? address : null;
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static final class Node {
+        private final Node[] children = new Node[2];
+        private String tag;
+    }
+}
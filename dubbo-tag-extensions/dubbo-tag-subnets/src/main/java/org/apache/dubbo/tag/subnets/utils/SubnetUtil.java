@@ -19,66 +19,69 @@ package org.apache.dubbo.tag.subnets.utils;
 import org.apache.dubbo.common.utils.CollectionUtils;
 import org.apache.dubbo.common.utils.StringUtils;
 
-import org.apache.commons.net.util.SubnetUtils;
 import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.SafeConstructor;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
 public class SubnetUtil {
     public static final String TAG_SUBNETS_KEY = "tag.subnets";
 
-    private static final Map<String, List<SubnetUtils.SubnetInfo>> cellSubnets = CollectionUtils.newConcurrentHashMap();
-    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private static final ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
-    private static final ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+    private static final int MAX_CACHED_HOSTS = 4096;
+    // marks hosts without tag in the cache, which cannot hold null values
+    private static final String NO_TAG = new String();
+
+    private static volatile Subnets subnets = new Subnets(new SubnetTrie());
 
     public static boolean isEmpty() {
-        try {
-            readLock.lock();
-            return cellSubnets.isEmpty();
-        } finally {
-            readLock.unlock();
-        }
+        return subnets.trie.isEmpty();
     }
 
     public static void init(String content) {
         if (StringUtils.isBlank(content)) {
             return;
         }
-        try {
-            writeLock.lock();
-            Yaml yaml = new Yaml(new SafeConstructor(new LoaderOptions()));
-            cellSubnets.clear();
-            Map<String, List<String>> tmpPathSubnet = (Map<String, List<String>>) yaml.load(content);
-            for (Map.Entry<String, List<String>> entry : tmpPathSubnet.entrySet()) {
-                String path = entry.getKey();
-                List<SubnetUtils.SubnetInfo> subnetInfos = cellSubnets.computeIfAbsent(path, f -> new ArrayList<SubnetUtils.SubnetInfo>());
-                entry.getValue().forEach(e -> subnetInfos.add(new SubnetUtils(e.trim()).getInfo()));
-            }
-        } finally {
-            writeLock.unlock();
+        Yaml yaml = new Yaml(new SafeConstructor(new LoaderOptions()));
+        Map<String, List<String>> tmpPathSubnet = (Map<String, List<String>>) yaml.load(content);
+        SubnetTrie trie = new SubnetTrie();
+        for (Map.Entry<String, List<String>> entry : tmpPathSubnet.entrySet()) {
+            String path = entry.getKey();
+            entry.getValue().forEach(e -> trie.add(e.trim(), path));
         }
+        // the host cache goes away with the previous subnets
+        subnets = new Subnets(trie);
     }
 
+    /**
+     * Get the tag of the most specific subnet containing the host, see {@link SubnetTrie} for the matching rules.
+     */
     public static String getTagLevelByHost(String host) {
-        try {
-            readLock.lock();
-            for (Map.Entry<String, List<SubnetUtils.SubnetInfo>> entry : cellSubnets.entrySet()) {
-                for (SubnetUtils.SubnetInfo subnetInfo : entry.getValue()) {
-                    if (subnetInfo.isInRange(host)) {
-                        return entry.getKey();
-                    }
-                }
-            }
+        if (host == null) {
             return null;
-        } finally {
-            readLock.unlock();
+        }
+        Subnets current = subnets;
+        String tag = current.tagByHost.get(host);
+        if (tag == null) {
+            tag = current.trie.lookup(host);
+            if (tag == null) {
+                tag = NO_TAG;
+            }
+            if (current.tagByHost.size() < MAX_CACHED_HOSTS) {
+                current.tagByHost.put(host, tag);
+            }
+        }
+        return tag == NO_TAG ? null : tag;
+    }
+
+    private static class Subnets {
+        private final SubnetTrie trie;
+        private final Map<String, String> tagByHost = CollectionUtils.newConcurrentHashMap();
+
+        private Subnets(SubnetTrie trie) {
+            this.trie = trie;
         }
     }
 }
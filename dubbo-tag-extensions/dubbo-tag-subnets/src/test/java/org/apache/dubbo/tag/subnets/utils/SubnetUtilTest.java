@@ -34,4 +34,42 @@ public class SubnetUtilTest {
         Assertions.assertEquals(SubnetUtil.getTagLevelByHost("172.37.66.1"),"cn|cn-northwest|cell-1");
         Assertions.assertEquals(SubnetUtil.getTagLevelByHost("172.37.33.1"),"");
     }
+
+    @Test
+    public void testLongestPrefixMatch() {
+        String content = "" +//
+            "region: \n" +
+            "- 10.0.0.0/8\n" +
+            "- fd00::/8\n" +
+            "zone: \n" +
+            "- 10.1.0.0/16\n" +
+            "- fd00:1::/32\n" +
+            "cell: \n" +
+            "- 10.1.2.0/24\n" +
+            "- 10.1.0.0/16\n";
+        SubnetUtil.init(content);
+        Assertions.assertFalse(SubnetUtil.isEmpty());
+        Assertions.assertEquals("region", SubnetUtil.getTagLevelByHost("10.2.0.1"));
+        Assertions.assertEquals("zone", SubnetUtil.getTagLevelByHost("10.1.3.1"));
+        Assertions.assertEquals("cell", SubnetUtil.getTagLevelByHost("10.1.2.255"));
+        Assertions.assertEquals("region", SubnetUtil.getTagLevelByHost("fd00:2::1"));
+        Assertions.assertEquals("zone", SubnetUtil.getTagLevelByHost("fd00:1::1"));
+        Assertions.assertNull(SubnetUtil.getTagLevelByHost("11.0.0.1"));
+        Assertions.assertNull(SubnetUtil.getTagLevelByHost("fe80::1"));
+        Assertions.assertNull(SubnetUtil.getTagLevelByHost("localhost"));
+        Assertions.assertNull(SubnetUtil.getTagLevelByHost(null));
+    }
+
+    @Test
+    public void testReloadInvalidatesCache() {
+        SubnetUtil.init("a: \n- 192.168.0.0/16\n");
+        Assertions.assertEquals("a", SubnetUtil.getTagLevelByHost("192.168.1.1"));
+        Assertions.assertNull(SubnetUtil.getTagLevelByHost("192.169.1.1"));
+        Assertions.assertEquals("a", SubnetUtil.getTagLevelByHost("192.168.1.1"));
+
+        SubnetUtil.init("b: \n- 192.168.1.0/24\n- 192.169.0.0/16\n");
+        Assertions.assertEquals("b", SubnetUtil.getTagLevelByHost("192.168.1.1"));
+        Assertions.assertEquals("b", SubnetUtil.getTagLevelByHost("192.169.1.1"));
+        Assertions.assertNull(SubnetUtil.getTagLevelByHost("192.168.2.1"));
+    }
 }
@@ -45,7 +45,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
 public class XdsRouter<T> extends AbstractStateRouter<T> implements XdsRouteRuleListener, EdsEndpointListener {
 
@@ -169,11 +168,28 @@ public class XdsRouter<T> extends AbstractStateRouter<T> implements XdsRouteRule
         if (needToPrintMessage) {
             messageHolder.set(stringBuilder.toString());
         }
-        if (destinationSubset.getInvokers() == null) {
+        BitList<Invoker<T>> subsetInvokers = destinationSubset.getInvokers();
+        if (subsetInvokers == null) {
             return BitList.emptyList();
         }
 
-        return destinationSubset.getInvokers().and(invokers);
+        return retainSubset(invokers, subsetInvokers);
+    }
+
+    /**
+     * Narrow the invokers of this route call down to the subset. The subset list is shared by every call and is
+     * never modified; when both lists are backed by the same origin list no copy is made at all.
+     */
+    private BitList<Invoker<T>> retainSubset(BitList<Invoker<T>> invokers, BitList<Invoker<T>> subsetInvokers) {
+        if (invokers.getOriginList() == subsetInvokers.getOriginList()
+                && !invokers.hasMoreElementInTailList()
+                && !subsetInvokers.hasMoreElementInTailList()) {
+            return invokers.and(subsetInvokers);
+        }
+        // indexes of different origin lists do not line up, compare the invokers themselves
+        BitList<Invoker<T>> result = invokers.clone();
+        result.removeIf(invoker -> !subsetInvokers.contains(invoker));
+        return result;
     }
 
     private String computeMatchCluster(Invocation invocation, XdsRouteRule rule) {
@@ -264,17 +280,31 @@ public class XdsRouter<T> extends AbstractStateRouter<T> implements XdsRouteRule
 
     private void computeSubset(DestinationSubset<T> subset, BitList<Invoker<T>> invokers) {
         Set<Endpoint> endpoints = subset.getEndpoints();
-        List<Invoker<T>> filterInvokers = invokers.stream()
-                .filter(inv -> {
-                    String host = inv.getUrl().getHost();
-                    int port = inv.getUrl().getPort();
-                    Optional<Endpoint> any = endpoints.stream()
-                            .filter(end -> host.equals(end.getAddress()) && port == end.getPortValue())
-                            .findAny();
-                    return any.isPresent();
-                })
-                .collect(Collectors.toList());
-        subset.setInvokers(new BitList<>(filterInvokers));
+        // share the origin list of the notified invokers, so route calls can intersect by index
+        List<Invoker<T>> originList = invokers.getOriginList();
+        BitList<Invoker<T>> subsetInvokers = new BitList<>(originList, true);
+        for (int index = 0; index < originList.size(); index++) {
+            if (invokers.indexExist(index) && isEndpointMatch(originList.get(index), endpoints)) {
+                subsetInvokers.addIndex(index);
+            }
+        }
+        if (invokers.hasMoreElementInTailList()) {
+            for (Invoker<T> invoker : invokers.getTailList()) {
+                if (isEndpointMatch(invoker, endpoints)) {
+                    subsetInvokers.addToTailList(invoker);
+                }
+            }
+        }
+        subset.setInvokers(subsetInvokers);
+    }
+
+    private boolean isEndpointMatch(Invoker<T> invoker, Set<Endpoint> endpoints) {
+        String host = invoker.getUrl().getHost();
+        int port = invoker.getUrl().getPort();
+        Optional<Endpoint> any = endpoints.stream()
+                .filter(end -> host.equals(end.getAddress()) && port == end.getPortValue())
+                .findAny();
+        return any.isPresent();
     }
 
     @Override
@@ -231,6 +231,17 @@ public class XdsRouteTest {
         BitList<Invoker<Object>> routes = xdsRouter.route(invokers.clone(), null, invocation, false, null);
         assertEquals(1, routes.size());
         assertEquals(invoker1, routes.get(0));
+
+        // routing must not shrink the cached subset
+        BitList<Invoker<Object>> available = invokers.clone();
+        available.remove(invoker1);
+        assertEquals(0, xdsRouter.route(available, null, invocation, false, null).size());
+        routes = xdsRouter.route(invokers.clone(), null, invocation, false, null);
+        assertEquals(1, routes.size());
+        assertEquals(invoker1, routes.get(0));
+        routes = xdsRouter.route(new BitList<>(Arrays.asList(invoker1)), null, invocation, false, null);
+        assertEquals(1, routes.size());
+        assertEquals(invoker1, routes.get(0));
     }
 
     @Test